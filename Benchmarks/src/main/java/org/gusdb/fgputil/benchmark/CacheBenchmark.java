@@ -0,0 +1,82 @@
+package org.gusdb.fgputil.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.gusdb.fgputil.cache.CacheConfig;
+import org.gusdb.fgputil.cache.CacheConfig.Engine;
+import org.gusdb.fgputil.cache.InMemoryCache;
+import org.gusdb.fgputil.cache.ManagedMap;
+import org.gusdb.fgputil.cache.ValueFactory;
+import org.gusdb.fgputil.cache.ValueProductionException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures InMemoryCache and ManagedMap throughput with several threads
+ * reading (and occasionally writing) a shared instance.  Keys are drawn
+ * uniformly from a range twice the cache's capacity, so about half of cache
+ * reads miss and trigger a load and an eviction.
+ *
+ * @author rdoherty
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class CacheBenchmark {
+
+  private static final int CAPACITY = 10000;
+  private static final int KEY_RANGE = CAPACITY * 2;
+
+  private static final ValueFactory<Integer,String> FACTORY = key -> String.valueOf(key);
+
+  @Param({ "STRICT", "CONCURRENT" })
+  public Engine engine;
+
+  private InMemoryCache<Integer,String> _cache;
+  private ManagedMap<Integer,String> _map;
+
+  @Setup
+  public void setUp() throws ValueProductionException {
+    _cache = new InMemoryCache<>(new CacheConfig<Integer,String>()
+        .setCapacity(CAPACITY).setEngine(engine));
+    _map = new ManagedMap<>(new CacheConfig<Integer,String>()
+        .setCapacity(CAPACITY).setEngine(engine));
+    for (int key = 0; key < CAPACITY; key++) {
+      _cache.getValue(key, FACTORY);
+      _map.put(key, String.valueOf(key));
+    }
+  }
+
+  @Benchmark
+  public String cacheGetValue() throws ValueProductionException {
+    return _cache.getValue(ThreadLocalRandom.current().nextInt(KEY_RANGE), FACTORY);
+  }
+
+  @Benchmark
+  public String cacheGetValueHit() throws ValueProductionException {
+    return _cache.getValue(ThreadLocalRandom.current().nextInt(CAPACITY / 2), FACTORY);
+  }
+
+  // 90% reads, 10% writes
+  @Benchmark
+  public String managedMapReadWrite() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int key = random.nextInt(KEY_RANGE);
+    return random.nextInt(10) == 0 ? _map.put(key, "x") : _map.get(key);
+  }
+}
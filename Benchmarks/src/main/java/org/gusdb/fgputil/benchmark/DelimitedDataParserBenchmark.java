@@ -0,0 +1,47 @@
+package org.gusdb.fgputil.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.gusdb.fgputil.DelimitedDataParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures parsing of a twelve-column tab-delimited line.
+ *
+ * @author rdoherty
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DelimitedDataParserBenchmark {
+
+  private static final String HEADER =
+      "gene_id\tsource_id\torganism\tchromosome\tstart\tend\tstrand\tproduct\ttype\tlength\tgc\tscore";
+  private static final String LINE =
+      "1234567\tPF3D7_0100100\tPlasmodium falciparum 3D7\tPf3D7_01_v3\t29510\t37126\t+\t" +
+      "erythrocyte membrane protein 1, PfEMP1\tprotein_coding\t7617\t0.2881\t\t";
+
+  private final DelimitedDataParser _parser = new DelimitedDataParser(HEADER, "\t", false);
+
+  @Benchmark
+  public String[] parseLineToArray() {
+    return _parser.parseLineToArray(LINE);
+  }
+
+  @Benchmark
+  public Map<String,String> parseLine() {
+    return _parser.parseLine(LINE);
+  }
+}
@@ -0,0 +1,71 @@
+package org.gusdb.fgputil.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.gusdb.fgputil.events.Event;
+import org.gusdb.fgputil.events.EventListener;
+import org.gusdb.fgputil.events.Events;
+import org.gusdb.fgputil.events.ListenerStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the round trip of triggering an event with two subscribed
+ * listeners (one by code, one by type) and waiting for both to be notified.
+ *
+ * @author rdoherty
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventsBenchmark {
+
+  private static final String EVENT_CODE = "benchmark-event";
+
+  private static class BenchmarkEvent extends Event {}
+
+  private final LongAdder _notifications = new LongAdder();
+
+  @Setup
+  public void setUp() {
+    Events.init();
+    EventListener listener = event -> _notifications.increment();
+    Events.subscribe(listener, EVENT_CODE);
+    Events.subscribe(event -> _notifications.increment(), BenchmarkEvent.class);
+  }
+
+  @TearDown
+  public void tearDown() {
+    Events.shutDown();
+  }
+
+  @Benchmark
+  public ListenerStatus triggerByCode() {
+    return awaitListeners(Events.trigger(new Event(EVENT_CODE)));
+  }
+
+  @Benchmark
+  public ListenerStatus triggerByType() {
+    return awaitListeners(Events.trigger(new BenchmarkEvent()));
+  }
+
+  private static ListenerStatus awaitListeners(ListenerStatus status) {
+    while (!status.isFinished()) {
+      Thread.onSpinWait();
+    }
+    return status;
+  }
+}
@@ -0,0 +1,67 @@
+package org.gusdb.fgputil.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.gusdb.fgputil.json.JsonUtil;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures JsonUtil.serialize (sorted-key serialization) of a moderately
+ * nested object resembling a search configuration, against JSONObject's own
+ * unsorted toString() as a point of reference.
+ *
+ * @author rdoherty
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonSerializeBenchmark {
+
+  private JSONObject _json;
+
+  @Setup
+  public void setUp() {
+    JSONArray filters = new JSONArray();
+    for (int i = 0; i < 20; i++) {
+      filters.put(new JSONObject()
+          .put("name", "filter" + i)
+          .put("value", new JSONObject()
+              .put("min", i)
+              .put("max", i * 10.5)
+              .put("ids", new JSONArray().put("a" + i).put("b" + i).put("c" + i)))
+          .put("disabled", i % 3 == 0));
+    }
+    _json = new JSONObject()
+        .put("searchName", "GenesByTaxon")
+        .put("parameters", new JSONObject()
+            .put("organism", "Plasmodium falciparum 3D7")
+            .put("min_length", "100")
+            .put("description", "text with \"quotes\" and \\ backslashes"))
+        .put("filters", filters)
+        .put("wdkWeight", 10);
+  }
+
+  @Benchmark
+  public String serialize() {
+    return JsonUtil.serialize(_json);
+  }
+
+  @Benchmark
+  public String toStringReference() {
+    return _json.toString();
+  }
+}
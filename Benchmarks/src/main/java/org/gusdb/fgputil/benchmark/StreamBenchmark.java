@@ -0,0 +1,99 @@
+package org.gusdb.fgputil.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.gusdb.fgputil.db.runner.BasicArgumentBatch;
+import org.gusdb.fgputil.db.runner.SQLRunner;
+import org.gusdb.fgputil.db.stream.ResultSetInputStream;
+import org.gusdb.fgputil.db.stream.ResultSetToJsonConverter;
+import org.gusdb.fgputil.iterator.IteratingInputStream;
+import org.gusdb.fgputil.iterator.IteratingInputStream.DataProvider;
+import org.gusdb.fgputil.test.TestUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time to drain streams of records: an IteratingInputStream over
+ * in-memory records, and a ResultSetInputStream converting a 10,000-row HSQLDB
+ * table to JSON with ResultSetToJsonConverter.  Streams are read with an 8KB
+ * buffer, as a servlet writing a response would.
+ *
+ * @author rdoherty
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamBenchmark {
+
+  private static final int NUM_ROWS = 10000;
+  private static final String SELECT_ROWS = "select id, name, description, score from benchmark_rows";
+
+  private List<byte[]> _records;
+  private DataSource _ds;
+
+  @Setup
+  public void setUp() throws SQLException {
+    _records = new ArrayList<>();
+    for (int i = 0; i < NUM_ROWS; i++) {
+      _records.add(("{\"id\":" + i + ",\"name\":\"record " + i + "\"}").getBytes(StandardCharsets.UTF_8));
+    }
+    _ds = TestUtil.getTestDataSource("StreamBenchmark");
+    new SQLRunner(_ds, "drop table benchmark_rows if exists").executeStatement();
+    new SQLRunner(_ds, "create table benchmark_rows (id integer primary key, " +
+        "name varchar(50), description varchar(200), score double)").executeStatement();
+    BasicArgumentBatch batch = new BasicArgumentBatch();
+    batch.setBatchSize(1000);
+    for (int i = 0; i < NUM_ROWS; i++) {
+      batch.add(new Object[] { i, "row " + i, "description of row number " + i, i / 7.0 });
+    }
+    new SQLRunner(_ds, "insert into benchmark_rows values (?, ?, ?, ?)").executeUpdateBatch(batch);
+  }
+
+  @Benchmark
+  public long iteratingInputStream() throws IOException {
+    return drain(new IteratingInputStream(new DataProvider() {
+      @Override public byte[] getHeader() { return "[".getBytes(StandardCharsets.UTF_8); }
+      @Override public byte[] getRecordDelimiter() { return ",".getBytes(StandardCharsets.UTF_8); }
+      @Override public byte[] getFooter() { return "]".getBytes(StandardCharsets.UTF_8); }
+      @Override public Iterator<byte[]> getRecordIterator() { return _records.iterator(); }
+    }));
+  }
+
+  @Benchmark
+  public long resultSetToJson() throws IOException, SQLException {
+    return drain(ResultSetInputStream.getResultSetStream(SELECT_ROWS,
+        "benchmark-rows", _ds, 1000, new ResultSetToJsonConverter()));
+  }
+
+  private static long drain(InputStream in) throws IOException {
+    try (InputStream stream = in) {
+      byte[] buffer = new byte[8192];
+      long total = 0;
+      int numRead;
+      while ((numRead = stream.read(buffer)) != -1) {
+        total += numRead;
+      }
+      return total;
+    }
+  }
+}
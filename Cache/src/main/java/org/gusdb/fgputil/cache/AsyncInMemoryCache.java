@@ -0,0 +1,162 @@
+package org.gusdb.fgputil.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Cache of values produced asynchronously.  Keys are mapped to futures of
+ * values rather than values, so a request for a missing key starts a load
+ * (via an <code>AsyncValueFactory</code>) and returns immediately; concurrent
+ * requests for the same key share the load in flight, and no thread waits on
+ * a per-key lock while a value is produced.  Loads run on the cache's executor
+ * (or wherever the factory chooses).  Loads that fail or produce null are not
+ * cached, so the next request for the key starts a new load.
+ *
+ * Entries are held in an <code>InMemoryCache</code> of futures configured by
+ * the passed configuration, so capacity, eviction and expiry work as they do
+ * for synchronous caches, with lifetimes starting when loads start.  Since
+ * futures cannot be serialized, off-heap tiers and snapshots do not apply.
+ * Futures returned are copies, so completing or cancelling one does not
+ * affect the cache.
+ *
+ * @author rdoherty
+ *
+ * @param <S> type of cache key
+ * @param <T> type of cached value
+ */
+public class AsyncInMemoryCache<S,T> {
+
+  private final InMemoryCache<S, CompletableFuture<T>> _cache;
+  private final Executor _executor;
+
+  /**
+   * Creates an async cache with default settings, running loads on the
+   * common fork-join pool.
+   */
+  public AsyncInMemoryCache() {
+    this(new CacheConfig<>(), ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Creates an async cache with the passed configuration and executor.
+   *
+   * @param config configuration of cache of futures
+   * @param executor executor passed to value factories to run loads
+   */
+  public AsyncInMemoryCache(CacheConfig<S, CompletableFuture<T>> config, Executor executor) {
+    _cache = new InMemoryCache<>(config);
+    _executor = executor;
+  }
+
+  /**
+   * Retrieves a future for the item with the passed key.  If the item is not
+   * in the cache and not being loaded, a load is started with the passed
+   * factory.
+   *
+   * @param key key of the desired item
+   * @param factory factory for items of the type cached
+   * @return future completed with the item, or exceptionally with a
+   * ValueProductionException if it could not be created
+   */
+  public CompletableFuture<T> getValue(S key, AsyncValueFactory<S,T> factory) {
+    CompletableFuture<T> future = _cache.getIfPresent(key);
+    if (future == null) {
+      // only one caller's placeholder is cached; that caller starts the load
+      CompletableFuture<T> placeholder = new CompletableFuture<>();
+      future = _cache.updateValue(key, (k, current) -> current != null ? current : placeholder, false);
+      if (future == placeholder) {
+        load(key, placeholder, factory);
+      }
+    }
+    return future.copy();
+  }
+
+  /**
+   * Returns a future for the item with the passed key if it is cached or
+   * being loaded.
+   *
+   * @param key key of the desired item
+   * @return future for the item, or null if none is cached or loading
+   */
+  public CompletableFuture<T> getIfPresent(S key) {
+    CompletableFuture<T> future = _cache.getIfPresent(key);
+    return future == null ? null : future.copy();
+  }
+
+  /**
+   * Caches the passed item, replacing any cached or loading item for the key.
+   *
+   * @param key key of item
+   * @param value item to cache
+   */
+  public void put(S key, T value) {
+    _cache.updateValue(key, (k, current) -> CompletableFuture.completedFuture(value), true);
+  }
+
+  // starts the load of a value, completing the placeholder when done
+  private void load(S key, CompletableFuture<T> placeholder, AsyncValueFactory<S,T> factory) {
+    long start = _cache.currentTime();
+    CompletableFuture<T> load;
+    try {
+      load = factory.getNewValue(key, _executor);
+    }
+    catch (RuntimeException e) {
+      load = CompletableFuture.failedFuture(e);
+    }
+    load.whenComplete((value, error) -> {
+      boolean succeeded = (error == null && value != null);
+      _cache.recordLoad(_cache.currentTime() - start, succeeded);
+      if (succeeded) {
+        placeholder.complete(value);
+      }
+      else {
+        // remove before completing so requests made after completion load again
+        _cache.updateValue(key, (k, current) -> current == placeholder ? null : current, true);
+        placeholder.completeExceptionally(error == null ?
+            new ValueProductionException("Factory produced no value for key " + key) :
+            convertException(error));
+      }
+    });
+  }
+
+  // unwraps completion exceptions and wraps other exceptions (but not errors)
+  private static Throwable convertException(Throwable error) {
+    Throwable cause = (error instanceof CompletionException && error.getCause() != null ?
+        error.getCause() : error);
+    return (cause instanceof ValueProductionException || !(cause instanceof Exception) ?
+        cause : new ValueProductionException((Exception) cause));
+  }
+
+  /**
+   * Removes the entries behind the passed keys from the cache.  Loads in
+   * progress for the keys are not cancelled, but their results are discarded.
+   *
+   * @param ids IDs of items to expire
+   */
+  public void expireEntries(@SuppressWarnings("unchecked") S... ids) {
+    _cache.expireEntries(ids);
+  }
+
+  /**
+   * @return statistics snapshot of the underlying cache of futures
+   */
+  public CacheStats getStats() {
+    return _cache.getStats();
+  }
+
+  /**
+   * @return number of entries (loaded or loading) in the cache
+   */
+  public int getSize() {
+    return _cache.getSize();
+  }
+
+  /**
+   * Performs any pending maintenance; see <code>InMemoryCache.cleanUp()</code>.
+   */
+  public void cleanUp() {
+    _cache.cleanUp();
+  }
+}
@@ -0,0 +1,51 @@
+package org.gusdb.fgputil.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Creates objects stored in an <code>AsyncInMemoryCache</code>.  Unlike a
+ * <code>ValueFactory</code>, which produces a value on the calling thread, an
+ * async factory starts the production of a value and returns a future for it,
+ * so callers need not wait while, for example, a remote service responds.
+ * 
+ * @author rdoherty
+ *
+ * @param <S> type of cache key
+ * @param <T> type of cached value
+ */
+@FunctionalInterface
+public interface AsyncValueFactory<S,T> {
+
+  /**
+   * Starts creation of a new value to be stored in a cache.  This method is
+   * called when a requested value's key does not yet exist in the cache, and
+   * should return quickly; any blocking work should be done on the passed
+   * executor (or by a non-blocking client).  A future completed with null or
+   * completed exceptionally (ideally with a ValueProductionException) is not
+   * cached.
+   * 
+   * @param key key of the value to be created
+   * @param executor executor configured for the cache's loads
+   * @return future which will be completed with a new value for the passed key
+   */
+  public CompletableFuture<T> getNewValue(S key, Executor executor);
+
+  /**
+   * Adapts a synchronous value factory, calling it on the cache's executor.
+   * 
+   * @param factory synchronous value factory
+   * @return async value factory
+   */
+  public static <S,T> AsyncValueFactory<S,T> of(ValueFactory<S,T> factory) {
+    return (key, executor) -> CompletableFuture.supplyAsync(() -> {
+      try {
+        return factory.getNewValue(key);
+      }
+      catch (ValueProductionException e) {
+        throw new CompletionException(e);
+      }
+    }, executor);
+  }
+}
@@ -0,0 +1,40 @@
+package org.gusdb.fgputil.cache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Value factory able to create many values at once, e.g. with a single
+ * IN-query rather than one query per key.  Used by
+ * <code>InMemoryCache.getValues()</code> to load all missing values of a bulk
+ * lookup in one call.  Single values are created by requesting a bulk of one.
+ *
+ * @author rdoherty
+ *
+ * @param <S> type of cache key
+ * @param <T> type of cached value
+ */
+@FunctionalInterface
+public interface BulkValueFactory<S,T> extends ValueFactory<S,T> {
+
+  /**
+   * Creates new values for the passed keys, none of which exist in the cache.
+   * Keys for which no value can be found may be omitted from the returned map;
+   * such keys are neither cached nor returned to the caller.
+   *
+   * @param keys keys of the values to be created
+   * @return map from key to newly created value
+   * @throws ValueProductionException if values cannot be created
+   */
+  public Map<S,T> getNewValues(Collection<S> keys) throws ValueProductionException;
+
+  @Override
+  public default T getNewValue(S key) throws ValueProductionException {
+    T value = getNewValues(Collections.singleton(key)).get(key);
+    if (value == null) {
+      throw new ValueProductionException("No value could be created for key " + key);
+    }
+    return value;
+  }
+}
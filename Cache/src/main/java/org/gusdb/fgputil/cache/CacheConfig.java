@@ -0,0 +1,502 @@
+package org.gusdb.fgputil.cache;
+
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * Configuration for an InMemoryCache.  Setters return this object so a
+ * configuration can be built in a single chained expression, e.g.
+ *
+ * <pre>
+ *   new InMemoryCache&lt;&gt;(new CacheConfig&lt;String,Long&gt;()
+ *       .setCapacity(5000)
+ *       .setEngine(Engine.CONCURRENT));
+ * </pre>
+ *
+ * Any value not set retains its default, which matches the behavior of the
+ * no-arg InMemoryCache constructor.
+ *
+ * @author rdoherty
+ *
+ * @param <S> type of cache key
+ * @param <T> type of cached value
+ */
+public class CacheConfig<S,T> {
+
+  /**
+   * Determines how a cache records accesses to support its eviction order.
+   */
+  public enum Engine {
+
+    /**
+     * Every access is passed to the eviction policy immediately under a
+     * cache-wide lock, so with the default policy eviction order is exact LRU,
+     * and trimming happens as soon as capacity is exceeded.
+     * This is the default and preserves the historical behavior of the cache.
+     */
+    STRICT,
+
+    /**
+     * Accesses are recorded in lossy, striped buffers and applied to the
+     * eviction order in batches by whichever thread wins a non-blocking
+     * attempt to acquire the cache-wide lock.  Cache hits never block on
+     * a cache-wide lock, so throughput scales with the number of cores;
+     * in exchange, the eviction policy sees an approximation of the access
+     * history and the size of the cache may exceed its capacity briefly
+     * until buffers are drained.
+     */
+    CONCURRENT;
+  }
+
+  /**
+   * Default interval at which snapshots are written, if a snapshot file is set
+   */
+  public static final long DEFAULT_SNAPSHOT_INTERVAL_MILLIS = 10 * 60 * 1000;
+
+  private String _name = null;
+  private int _capacity = InMemoryCache.DEFAULT_CAPACITY;
+  private int _numToTrimOnCapacity = InMemoryCache.INCREMENTAL_EVICTION;
+  private ValueCloner<T> _cloner = null;
+  private Engine _engine = Engine.STRICT;
+  private LongFunction<EvictionPolicy<S>> _evictionPolicy = LruPolicy::new;
+  private long _maximumWeight = 0;
+  private Weigher<S,T> _weigher = null;
+  private Tagger<S,T> _tagger = null;
+  private Expiry<S,T> _expiry = null;
+  private LongSupplier _ticker = System::nanoTime;
+  private boolean _asyncRefresh = false;
+  private long _refreshAfterWriteNanos = 0;
+  private Executor _refreshExecutor = null;
+  private long _failureBackoffInitialNanos = 0;
+  private long _failureBackoffMaximumNanos = 0;
+  private long _offHeapMaximumBytes = 0;
+  private Path _offHeapMappedFile = null;
+  private ValueCodec<S> _keyCodec = ValueCodec.serializing();
+  private ValueCodec<T> _valueCodec = ValueCodec.serializing();
+  private Path _snapshotFile = null;
+  private long _snapshotIntervalMillis = DEFAULT_SNAPSHOT_INTERVAL_MILLIS;
+
+  /**
+   * Creates a configuration with default values.
+   */
+  public CacheConfig() {}
+
+  /**
+   * Creates a copy of the passed configuration, so that it can be adjusted
+   * without affecting the original.
+   *
+   * @param config configuration to copy
+   */
+  public CacheConfig(CacheConfig<S,T> config) {
+    _name = config._name;
+    _capacity = config._capacity;
+    _numToTrimOnCapacity = config._numToTrimOnCapacity;
+    _cloner = config._cloner;
+    _engine = config._engine;
+    _evictionPolicy = config._evictionPolicy;
+    _maximumWeight = config._maximumWeight;
+    _weigher = config._weigher;
+    _tagger = config._tagger;
+    _expiry = config._expiry;
+    _ticker = config._ticker;
+    _asyncRefresh = config._asyncRefresh;
+    _refreshAfterWriteNanos = config._refreshAfterWriteNanos;
+    _refreshExecutor = config._refreshExecutor;
+    _failureBackoffInitialNanos = config._failureBackoffInitialNanos;
+    _failureBackoffMaximumNanos = config._failureBackoffMaximumNanos;
+    _offHeapMaximumBytes = config._offHeapMaximumBytes;
+    _offHeapMappedFile = config._offHeapMappedFile;
+    _keyCodec = config._keyCodec;
+    _valueCodec = config._valueCodec;
+    _snapshotFile = config._snapshotFile;
+    _snapshotIntervalMillis = config._snapshotIntervalMillis;
+  }
+
+  /**
+   * Names the cache.  Named caches are registered so that their statistics
+   * can be retrieved with <code>CacheStats.getNamedCacheStats()</code>.
+   *
+   * @param name name of the cache
+   * @return this config
+   */
+  public CacheConfig<S,T> setName(String name) {
+    _name = name;
+    return this;
+  }
+
+  public String getName() {
+    return _name;
+  }
+
+  /**
+   * @param capacity maximum number of objects that can be cached
+   * @return this config
+   */
+  public CacheConfig<S,T> setCapacity(int capacity) {
+    _capacity = capacity;
+    return this;
+  }
+
+  public int getCapacity() {
+    return _capacity;
+  }
+
+  /**
+   * Sets the number of entries trimmed at once when capacity is exceeded.  By
+   * default (<code>InMemoryCache.INCREMENTAL_EVICTION</code>), only the excess
+   * is evicted, which bounds the work done by any single operation.  Larger
+   * values reproduce the older chunked trimming behavior.
+   *
+   * @param numToTrimOnCapacity number of objects to trim when capacity reached
+   * @return this config
+   */
+  public CacheConfig<S,T> setNumToTrimOnCapacity(int numToTrimOnCapacity) {
+    _numToTrimOnCapacity = numToTrimOnCapacity;
+    return this;
+  }
+
+  public int getNumToTrimOnCapacity() {
+    return _numToTrimOnCapacity;
+  }
+
+  /**
+   * @param cloner cloner used to return cache-safe values to callers; if null,
+   * cached values are returned as-is
+   * @return this config
+   */
+  public CacheConfig<S,T> setCloner(ValueCloner<T> cloner) {
+    _cloner = cloner;
+    return this;
+  }
+
+  public ValueCloner<T> getCloner() {
+    return _cloner;
+  }
+
+  /**
+   * @param engine engine used to record accesses and order evictions
+   * @return this config
+   */
+  public CacheConfig<S,T> setEngine(Engine engine) {
+    _engine = engine;
+    return this;
+  }
+
+  public Engine getEngine() {
+    return _engine;
+  }
+
+  /**
+   * Sets the policy used to choose which entries are evicted when the cache is
+   * over capacity.  The default is <code>LruPolicy::new</code>; caches subject
+   * to scan-like bursts of one-off keys may prefer <code>WindowTinyLfuPolicy::new</code>.
+   *
+   * @param evictionPolicy function creating a policy given the cache's
+   * capacity (or maximum weight, if set)
+   * @return this config
+   */
+  public CacheConfig<S,T> setEvictionPolicy(LongFunction<EvictionPolicy<S>> evictionPolicy) {
+    _evictionPolicy = evictionPolicy;
+    return this;
+  }
+
+  public LongFunction<EvictionPolicy<S>> getEvictionPolicy() {
+    return _evictionPolicy;
+  }
+
+  /**
+   * Bounds the cache by the total weight of its entries rather than by their
+   * number.  When a positive maximum weight is set, the capacity (entry count)
+   * is not enforced; entries are evicted whenever the sum of their weights, as
+   * calculated by the weigher, exceeds this maximum.  If no weigher is set, an
+   * <code>ObjectSizeWeigher</code> is used and the maximum is in bytes.
+   *
+   * @param maximumWeight maximum total weight of cached entries, or 0 to bound by count
+   * @return this config
+   */
+  public CacheConfig<S,T> setMaximumWeight(long maximumWeight) {
+    _maximumWeight = maximumWeight;
+    return this;
+  }
+
+  public long getMaximumWeight() {
+    return _maximumWeight;
+  }
+
+  /**
+   * @param weigher weigher used to calculate entry weights; only used if a
+   * maximum weight is set
+   * @return this config
+   */
+  public CacheConfig<S,T> setWeigher(Weigher<S,T> weigher) {
+    _weigher = weigher;
+    return this;
+  }
+
+  public Weigher<S,T> getWeigher() {
+    return _weigher;
+  }
+
+  /**
+   * Sets a tagger, which assigns tags to entries as they are loaded so that
+   * entries can later be invalidated by tag.
+   *
+   * @param tagger assigns tags to entries, or null to disable tagging
+   * @return this config
+   */
+  public CacheConfig<S,T> setTagger(Tagger<S,T> tagger) {
+    _tagger = tagger;
+    return this;
+  }
+
+  public Tagger<S,T> getTagger() {
+    return _tagger;
+  }
+
+  /**
+   * Expires each entry a fixed duration after its value was created or last
+   * updated.  Replaces any previously set expiry.
+   *
+   * @param duration duration an entry lives after being written
+   * @param unit unit of duration
+   * @return this config
+   */
+  public CacheConfig<S,T> setExpireAfterWrite(long duration, TimeUnit unit) {
+    return setExpiry(Expiry.afterWrite(duration, unit));
+  }
+
+  /**
+   * Expires each entry a fixed duration after its value was created, last
+   * updated, or last read.  Replaces any previously set expiry.
+   *
+   * @param duration duration an entry lives after being accessed
+   * @param unit unit of duration
+   * @return this config
+   */
+  public CacheConfig<S,T> setExpireAfterAccess(long duration, TimeUnit unit) {
+    return setExpiry(Expiry.afterAccess(duration, unit));
+  }
+
+  /**
+   * Sets a custom expiry, e.g. one assigning each entry its own time-to-live
+   * based on its value.  By default (null), entries never expire.
+   *
+   * @param expiry expiry determining entry lifetimes, or null for none
+   * @return this config
+   */
+  public CacheConfig<S,T> setExpiry(Expiry<S,T> expiry) {
+    _expiry = expiry;
+    return this;
+  }
+
+  public Expiry<S,T> getExpiry() {
+    return _expiry;
+  }
+
+  /**
+   * Sets the time source used for expiration.  The default is
+   * <code>System::nanoTime</code>; tests may supply a fake clock.
+   *
+   * @param ticker source of the current time in nanoseconds
+   * @return this config
+   */
+  public CacheConfig<S,T> setTicker(LongSupplier ticker) {
+    _ticker = ticker;
+    return this;
+  }
+
+  public LongSupplier getTicker() {
+    return _ticker;
+  }
+
+  /**
+   * Enables stale-while-revalidate behavior.  By default, when a value
+   * factory's <code>valueNeedsUpdating</code> returns true, the requesting
+   * thread updates the value synchronously, and other readers of the key wait
+   * for it.  With asynchronous refresh, the current value is returned
+   * immediately and a single update per key is performed in the background.
+   *
+   * @param asyncRefresh whether to update stale values asynchronously
+   * @return this config
+   */
+  public CacheConfig<S,T> setAsyncRefresh(boolean asyncRefresh) {
+    _asyncRefresh = asyncRefresh;
+    return this;
+  }
+
+  public boolean isAsyncRefresh() {
+    return _asyncRefresh;
+  }
+
+  /**
+   * Refreshes entries in the background once the passed duration has elapsed
+   * since their value was written.  The refresh is triggered by the first
+   * read after that time, which still returns the current value; a new value
+   * is produced with the value factory's <code>getNewValue</code>.  When used
+   * with a longer expire-after-write, frequently read entries are reloaded
+   * before they expire and so never cause a blocking load.
+   *
+   * @param duration duration after a write at which a read triggers refresh,
+   * or 0 to disable
+   * @param unit unit of duration
+   * @return this config
+   */
+  public CacheConfig<S,T> setRefreshAfterWrite(long duration, TimeUnit unit) {
+    _refreshAfterWriteNanos = unit.toNanos(duration);
+    return this;
+  }
+
+  public long getRefreshAfterWriteNanos() {
+    return _refreshAfterWriteNanos;
+  }
+
+  /**
+   * @param refreshExecutor executor on which asynchronous refreshes are run; if
+   * null, a small shared pool of daemon threads is used
+   * @return this config
+   */
+  public CacheConfig<S,T> setRefreshExecutor(Executor refreshExecutor) {
+    _refreshExecutor = refreshExecutor;
+    return this;
+  }
+
+  public Executor getRefreshExecutor() {
+    return _refreshExecutor;
+  }
+
+  /**
+   * Enables negative caching of value production failures.  By default, a key
+   * whose value cannot be created is retried by the next request for it.  With
+   * a failure backoff, the failure is cached and rethrown to requests for the
+   * key until the backoff delay elapses; the delay starts at the initial value
+   * and doubles with each consecutive failure, up to the maximum.  A failing
+   * key then costs one load attempt per backoff window rather than one per
+   * request.
+   *
+   * @param initialDelay delay after a first failure before the key is retried,
+   * or 0 to disable negative caching
+   * @param maximumDelay maximum delay between retries
+   * @param unit unit of delays
+   * @return this config
+   */
+  public CacheConfig<S,T> setFailureBackoff(long initialDelay, long maximumDelay, TimeUnit unit) {
+    _failureBackoffInitialNanos = unit.toNanos(initialDelay);
+    _failureBackoffMaximumNanos = unit.toNanos(maximumDelay);
+    return this;
+  }
+
+  public long getFailureBackoffInitialNanos() {
+    return _failureBackoffInitialNanos;
+  }
+
+  public long getFailureBackoffMaximumNanos() {
+    return _failureBackoffMaximumNanos;
+  }
+
+  /**
+   * Adds a second cache tier outside the Java heap.  Values evicted to keep
+   * the cache within its capacity are encoded by the value codec and kept
+   * in off-heap memory until that memory's budget is exhausted; a request for
+   * an evicted key then restores the value from off-heap memory instead of
+   * calling the value factory.  Values removed by expiration or
+   * <code>expireEntries()</code> are discarded from both tiers.
+   *
+   * This suits large values which are expensive to produce and do not change
+   * once produced, e.g. SQL results.  Encoding happens on a maintenance
+   * thread, not the thread whose request caused the eviction.
+   *
+   * @param maximumBytes byte budget of the off-heap tier, or 0 to disable it
+   * @return this config
+   */
+  public CacheConfig<S,T> setOffHeapTier(long maximumBytes) {
+    _offHeapMaximumBytes = maximumBytes;
+    return this;
+  }
+
+  public long getOffHeapMaximumBytes() {
+    return _offHeapMaximumBytes;
+  }
+
+  /**
+   * @param mappedFile file memory-mapped to hold the off-heap tier; if null
+   * (the default), direct buffers are used.  The file's contents are replaced,
+   * and the file is deleted when the JVM exits.
+   * @return this config
+   */
+  public CacheConfig<S,T> setOffHeapMappedFile(Path mappedFile) {
+    _offHeapMappedFile = mappedFile;
+    return this;
+  }
+
+  public Path getOffHeapMappedFile() {
+    return _offHeapMappedFile;
+  }
+
+  /**
+   * @param valueCodec codec converting values to and from the bytes stored
+   * off-heap or in snapshots; defaults to <code>ValueCodec.serializing()</code>
+   * @return this config
+   */
+  public CacheConfig<S,T> setValueCodec(ValueCodec<T> valueCodec) {
+    _valueCodec = valueCodec;
+    return this;
+  }
+
+  public ValueCodec<T> getValueCodec() {
+    return _valueCodec;
+  }
+
+  /**
+   * @param keyCodec codec converting keys to and from the bytes stored in
+   * snapshots; defaults to <code>ValueCodec.serializing()</code>
+   * @return this config
+   */
+  public CacheConfig<S,T> setKeyCodec(ValueCodec<S> keyCodec) {
+    _keyCodec = keyCodec;
+    return this;
+  }
+
+  public ValueCodec<S> getKeyCodec() {
+    return _keyCodec;
+  }
+
+  /**
+   * Enables warm starts.  The cache's contents are written to the passed file
+   * periodically and when the JVM shuts down.  If the file exists when the
+   * cache is created, it is memory-mapped and its entries are restored
+   * lazily: each is decoded on its key's first request, then passed through
+   * the requesting value factory's <code>valueNeedsUpdating</code> check like
+   * any cached value, so a restarted application starts hot without serving
+   * values its factories consider out of date.
+   *
+   * @param snapshotFile file to which snapshots are written and from which
+   * they are restored, or null to disable snapshots
+   * @return this config
+   */
+  public CacheConfig<S,T> setSnapshotFile(Path snapshotFile) {
+    _snapshotFile = snapshotFile;
+    return this;
+  }
+
+  public Path getSnapshotFile() {
+    return _snapshotFile;
+  }
+
+  /**
+   * @param interval interval at which snapshots are written, or 0 to write
+   * them only at shutdown (default is 10 minutes)
+   * @param unit unit of interval
+   * @return this config
+   */
+  public CacheConfig<S,T> setSnapshotInterval(long interval, TimeUnit unit) {
+    _snapshotIntervalMillis = unit.toMillis(interval);
+    return this;
+  }
+
+  public long getSnapshotIntervalMillis() {
+    return _snapshotIntervalMillis;
+  }
+}
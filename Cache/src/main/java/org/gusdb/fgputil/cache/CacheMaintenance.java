@@ -0,0 +1,158 @@
+package org.gusdb.fgputil.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Provides a small, shared pool of daemon threads on which caches perform
+ * maintenance work (e.g. eviction and expiration) that should not be charged to the thread
+ * that happened to trigger it.  Threads are daemons so an application never
+ * needs to shut this pool down.
+ *
+ * A separate pool is provided for asynchronous refreshes, which call value
+ * factories (often a database) and so must not delay maintenance.  Snapshot
+ * writes, which encode and write every entry of a cache, likewise run on
+ * their own low-priority thread.
+ *
+ * @author rdoherty
+ */
+class CacheMaintenance {
+
+  private static final Logger LOG = Logger.getLogger(CacheMaintenance.class);
+
+  private static final int NUM_THREADS = 1;
+
+  private static final int NUM_REFRESH_THREADS = 4;
+
+  // idle refresh threads exit after this many seconds
+  private static final long REFRESH_THREAD_KEEP_ALIVE_SECS = 60;
+
+  private static final ScheduledExecutorService EXECUTOR = createExecutor();
+
+  private static final Executor REFRESH_EXECUTOR = createRefreshExecutor();
+
+  private static final ScheduledExecutorService SNAPSHOT_EXECUTOR = createSnapshotExecutor();
+
+  // tasks run by a single shutdown hook, registered when the first task is added
+  private static class ShutdownTasks {
+    static final List<Runnable> TASKS = new CopyOnWriteArrayList<>();
+    static {
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        for (Runnable task : TASKS) {
+          wrap(task).run();
+        }
+      }, "cache-shutdown"));
+    }
+  }
+
+  private static ScheduledExecutorService createExecutor() {
+    ScheduledThreadPoolExecutor exec = new ScheduledThreadPoolExecutor(
+        NUM_THREADS, daemonThreadFactory("cache-maintenance-"));
+    exec.setRemoveOnCancelPolicy(true);
+    return exec;
+  }
+
+  private static Executor createRefreshExecutor() {
+    ThreadPoolExecutor exec = new ThreadPoolExecutor(NUM_REFRESH_THREADS, NUM_REFRESH_THREADS,
+        REFRESH_THREAD_KEEP_ALIVE_SECS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+        daemonThreadFactory("cache-refresh-"));
+    exec.allowCoreThreadTimeOut(true);
+    return exec;
+  }
+
+  private static ScheduledExecutorService createSnapshotExecutor() {
+    ScheduledThreadPoolExecutor exec = new ScheduledThreadPoolExecutor(
+        1, daemonThreadFactory("cache-snapshot-", Thread.MIN_PRIORITY));
+    exec.setRemoveOnCancelPolicy(true);
+    return exec;
+  }
+
+  static ThreadFactory daemonThreadFactory(String namePrefix) {
+    return daemonThreadFactory(namePrefix, Thread.NORM_PRIORITY);
+  }
+
+  static ThreadFactory daemonThreadFactory(String namePrefix, int priority) {
+    AtomicInteger threadCount = new AtomicInteger(0);
+    return runnable -> {
+      Thread thread = new Thread(runnable, namePrefix + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      thread.setPriority(priority);
+      return thread;
+    };
+  }
+
+  /**
+   * @return shared executor on which caches refresh values asynchronously by default
+   */
+  static Executor getRefreshExecutor() {
+    return REFRESH_EXECUTOR;
+  }
+
+  /**
+   * Runs the passed task on a maintenance thread as soon as possible.
+   *
+   * @param task maintenance task
+   */
+  static void execute(Runnable task) {
+    EXECUTOR.execute(wrap(task));
+  }
+
+  /**
+   * Runs the passed task on a maintenance thread repeatedly, with the passed
+   * delay between the end of one run and the start of the next.
+   *
+   * @param task maintenance task
+   * @param delay delay between runs
+   * @param unit unit of delay
+   * @return future which can be used to cancel the task
+   */
+  static ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long delay, TimeUnit unit) {
+    return EXECUTOR.scheduleWithFixedDelay(wrap(task), delay, delay, unit);
+  }
+
+  /**
+   * Runs the passed snapshot task repeatedly on the snapshot thread, with the
+   * passed delay between the end of one run and the start of the next, so
+   * that long snapshot writes never delay maintenance of other caches.
+   *
+   * @param task snapshot task
+   * @param delay delay between runs
+   * @param unit unit of delay
+   * @return future which can be used to cancel the task
+   */
+  static ScheduledFuture<?> scheduleSnapshot(Runnable task, long delay, TimeUnit unit) {
+    return SNAPSHOT_EXECUTOR.scheduleWithFixedDelay(wrap(task), delay, delay, unit);
+  }
+
+  /**
+   * Runs the passed task when the JVM shuts down.
+   *
+   * @param task shutdown task
+   */
+  static void runAtShutdown(Runnable task) {
+    ShutdownTasks.TASKS.add(task);
+  }
+
+  // exceptions are logged rather than lost in the executor
+  private static Runnable wrap(Runnable task) {
+    return () -> {
+      try {
+        task.run();
+      }
+      catch (Exception e) {
+        LOG.error("Cache maintenance task failed", e);
+      }
+    };
+  }
+}
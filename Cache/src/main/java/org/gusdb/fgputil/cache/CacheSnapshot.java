@@ -0,0 +1,351 @@
+package org.gusdb.fgputil.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Reads and writes snapshots of cache contents used to warm-start caches.
+ *
+ * A snapshot file is a header (magic number, format version, and the wall
+ * clock time the snapshot was taken) followed by entries, each consisting of
+ * an int-length-prefixed encoded key, the remaining lifetime of the entry in
+ * milliseconds (or -1 if it does not expire), the entry's tags (a count
+ * followed by each tag as int-length-prefixed UTF-8), and an
+ * int-length-prefixed encoded value.  An entry whose key length is -1 ends
+ * the file.  Tags are kept so entries can be invalidated by tag before they
+ * are restored.
+ *
+ * An opened snapshot memory-maps the file and decodes only its keys; values
+ * are decoded as they are taken, so opening a large snapshot is cheap and
+ * values never requested are never deserialized.  Snapshots are limited to
+ * 2GB.
+ *
+ * @author rdoherty
+ *
+ * @param <S> type of cache key
+ * @param <T> type of cached value
+ */
+class CacheSnapshot<S,T> {
+
+  private static final Logger LOG = Logger.getLogger(CacheSnapshot.class);
+
+  private static final int MAGIC_NUMBER = 0x46475043; // "FGPC"
+  private static final int FORMAT_VERSION = 2;
+
+  // marks entries which never expire
+  static final long NO_EXPIRATION = -1;
+
+  /**
+   * Value restored from a snapshot, with its remaining lifetime
+   */
+  static class RestoredValue<T> {
+    final T _value;
+    final long _remainingMillis;
+    RestoredValue(T value, long remainingMillis) {
+      _value = value;
+      _remainingMillis = remainingMillis;
+    }
+  }
+
+  /**
+   * Writes a snapshot to a temporary file, then atomically replaces the
+   * snapshot file with it on commit, so readers never see a partial snapshot.
+   */
+  static class Writer<S,T> implements AutoCloseable {
+
+    private final Path _file;
+    private final Path _tempFile;
+    private final ValueCodec<S> _keyCodec;
+    private final ValueCodec<T> _valueCodec;
+    private final DataOutputStream _out;
+    private int _numEntries = 0;
+    private boolean _committed = false;
+
+    Writer(Path file, ValueCodec<S> keyCodec, ValueCodec<T> valueCodec) throws IOException {
+      _file = file;
+      _tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+      _keyCodec = keyCodec;
+      _valueCodec = valueCodec;
+      _out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(_tempFile)));
+      _out.writeInt(MAGIC_NUMBER);
+      _out.writeInt(FORMAT_VERSION);
+      _out.writeLong(System.currentTimeMillis());
+    }
+
+    /**
+     * Writes an entry.  Entries which cannot be encoded are skipped.
+     *
+     * @return true if written
+     */
+    boolean write(S key, T value, long remainingMillis, Set<String> tags) throws IOException {
+      byte[] keyBytes, valueBytes;
+      try {
+        keyBytes = _keyCodec.encode(key);
+        valueBytes = _valueCodec.encode(value);
+      }
+      catch (Exception e) {
+        LOG.debug("Cache entry with ID " + key + " cannot be encoded; skipping", e);
+        return false;
+      }
+      writeRaw(keyBytes, remainingMillis, tags, valueBytes);
+      return true;
+    }
+
+    /**
+     * Writes an already encoded entry.
+     */
+    void writeRaw(byte[] keyBytes, long remainingMillis, Set<String> tags, byte[] valueBytes) throws IOException {
+      _out.writeInt(keyBytes.length);
+      _out.write(keyBytes);
+      _out.writeLong(remainingMillis);
+      _out.writeInt(tags.size());
+      for (String tag : tags) {
+        byte[] tagBytes = tag.getBytes(StandardCharsets.UTF_8);
+        _out.writeInt(tagBytes.length);
+        _out.write(tagBytes);
+      }
+      _out.writeInt(valueBytes.length);
+      _out.write(valueBytes);
+      _numEntries++;
+    }
+
+    /**
+     * @return number of entries written
+     */
+    int commit() throws IOException {
+      _out.writeInt(-1);
+      _out.close();
+      Files.move(_tempFile, _file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      _committed = true;
+      return _numEntries;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!_committed) {
+        _out.close();
+        Files.deleteIfExists(_tempFile);
+      }
+    }
+  }
+
+  // location of an entry's key and value within the mapped file, its lifetime and tags
+  private static class IndexEntry {
+    final int _keyOffset;
+    final int _keyLength;
+    final int _offset;
+    final int _length;
+    final long _remainingMillis;
+    final Set<String> _tags;
+    IndexEntry(int keyOffset, int keyLength, int offset, int length, long remainingMillis, Set<String> tags) {
+      _keyOffset = keyOffset;
+      _keyLength = keyLength;
+      _offset = offset;
+      _length = length;
+      _remainingMillis = remainingMillis;
+      _tags = tags;
+    }
+  }
+
+  private final ByteBuffer _buffer;
+  private final ValueCodec<T> _valueCodec;
+  private final long _snapshotTime;
+  private final Map<S, IndexEntry> _index = new ConcurrentHashMap<>();
+
+  /**
+   * Opens the passed snapshot file, reading its keys.
+   *
+   * @param file snapshot file
+   * @param keyCodec codec used to write keys
+   * @param valueCodec codec used to write values
+   * @throws IOException if file cannot be read or is not a valid snapshot
+   */
+  CacheSnapshot(Path file, ValueCodec<S> keyCodec, ValueCodec<T> valueCodec) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      _buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+    }
+    _valueCodec = valueCodec;
+    try {
+      if (_buffer.getInt() != MAGIC_NUMBER || _buffer.getInt() != FORMAT_VERSION) {
+        throw new IOException("File " + file + " is not a cache snapshot of version " + FORMAT_VERSION);
+      }
+      _snapshotTime = _buffer.getLong();
+      int keyLength;
+      while ((keyLength = _buffer.getInt()) >= 0) {
+        int keyOffset = _buffer.position();
+        byte[] keyBytes = new byte[keyLength];
+        _buffer.get(keyBytes);
+        long remainingMillis = _buffer.getLong();
+        Set<String> tags = readTags();
+        int valueLength = _buffer.getInt();
+        int valueOffset = _buffer.position();
+        _buffer.position(valueOffset + valueLength);
+        _index.put(keyCodec.decode(keyBytes), new IndexEntry(keyOffset, keyLength, valueOffset, valueLength, remainingMillis, tags));
+      }
+    }
+    catch (IOException e) {
+      throw e;
+    }
+    catch (Exception e) {
+      // truncated file or undecodable key
+      throw new IOException("Unable to read cache snapshot " + file, e);
+    }
+  }
+
+  /**
+   * Removes and decodes the entry for the passed key.  Entries whose lifetime
+   * elapsed since the snapshot was taken, or which cannot be decoded, are
+   * discarded.
+   *
+   * @param key key of entry
+   * @return restored value, or null if none is available
+   */
+  RestoredValue<T> take(S key) {
+    IndexEntry entry = _index.remove(key);
+    if (entry == null) {
+      return null;
+    }
+    long remainingMillis = getRemainingMillis(entry);
+    if (remainingMillis == 0) {
+      return null;
+    }
+    try {
+      return new RestoredValue<>(_valueCodec.decode(read(entry._offset, entry._length)), remainingMillis);
+    }
+    catch (Exception e) {
+      LOG.warn("Unable to decode snapshot value with ID " + key + "; it will be reloaded", e);
+      return null;
+    }
+  }
+
+  /**
+   * Copies entries not yet taken or discarded to the passed writer without
+   * decoding them, so that a new snapshot written soon after a restart does
+   * not lose entries that have not been requested yet.
+   *
+   * @param writer writer of the new snapshot
+   * @param exclude keys which should not be copied (e.g. because the cache
+   * holds a newer value for them)
+   * @throws IOException if unable to write
+   */
+  void copyRemainingTo(Writer<S,T> writer, Predicate<S> exclude) throws IOException {
+    for (Entry<S, IndexEntry> next : _index.entrySet()) {
+      IndexEntry entry = next.getValue();
+      long remainingMillis = getRemainingMillis(entry);
+      if (remainingMillis != 0 && !exclude.test(next.getKey())) {
+        writer.writeRaw(read(entry._keyOffset, entry._keyLength), remainingMillis, entry._tags, read(entry._offset, entry._length));
+      }
+    }
+  }
+
+  // returns remaining lifetime of the entry now, NO_EXPIRATION, or 0 if expired
+  private long getRemainingMillis(IndexEntry entry) {
+    if (entry._remainingMillis == NO_EXPIRATION) {
+      return NO_EXPIRATION;
+    }
+    return Math.max(0, entry._remainingMillis - (System.currentTimeMillis() - _snapshotTime));
+  }
+
+  private Set<String> readTags() {
+    int numTags = _buffer.getInt();
+    if (numTags == 0) {
+      return Collections.emptySet();
+    }
+    Set<String> tags = new HashSet<>();
+    for (int i = 0; i < numTags; i++) {
+      byte[] tagBytes = new byte[_buffer.getInt()];
+      _buffer.get(tagBytes);
+      tags.add(new String(tagBytes, StandardCharsets.UTF_8));
+    }
+    return tags;
+  }
+
+  private byte[] read(int offset, int length) {
+    byte[] bytes = new byte[length];
+    ByteBuffer view = _buffer.duplicate();
+    view.position(offset);
+    view.get(bytes);
+    return bytes;
+  }
+
+  /**
+   * Discards the entry for the passed key, if present.
+   *
+   * @param key key of entry
+   */
+  void discard(S key) {
+    _index.remove(key);
+  }
+
+  /**
+   * Discards entries carrying any of the passed tags.
+   *
+   * @param tags tags of entries to discard
+   * @return number of entries discarded
+   */
+  int discardTagged(Set<String> tags) {
+    int numDiscarded = 0;
+    for (Iterator<IndexEntry> entries = _index.values().iterator(); entries.hasNext(); ) {
+      if (!Collections.disjoint(entries.next()._tags, tags)) {
+        entries.remove();
+        numDiscarded++;
+      }
+    }
+    return numDiscarded;
+  }
+
+  /**
+   * Discards entries whose keys and decoded values match the passed predicate,
+   * along with entries whose values cannot be decoded.
+   *
+   * @param predicate predicate selecting entries to discard
+   * @return number of entries discarded
+   */
+  int discardIf(BiPredicate<S,T> predicate) {
+    int numDiscarded = 0;
+    for (Iterator<Entry<S, IndexEntry>> entries = _index.entrySet().iterator(); entries.hasNext(); ) {
+      Entry<S, IndexEntry> next = entries.next();
+      boolean discard;
+      try {
+        discard = predicate.test(next.getKey(),
+            _valueCodec.decode(read(next.getValue()._offset, next.getValue()._length)));
+      }
+      catch (Exception e) {
+        LOG.warn("Unable to decode snapshot value with ID " + next.getKey() + "; discarding", e);
+        discard = true;
+      }
+      if (discard) {
+        entries.remove();
+        numDiscarded++;
+      }
+    }
+    return numDiscarded;
+  }
+
+  /**
+   * @return number of entries not yet taken or discarded
+   */
+  int size() {
+    return _index.size();
+  }
+}
@@ -0,0 +1,199 @@
+package org.gusdb.fgputil.cache;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.gusdb.fgputil.json.ToJson;
+import org.json.JSONObject;
+
+/**
+ * Immutable snapshot of a cache's statistics, taken by
+ * <code>InMemoryCache.getStats()</code>.  Counts are cumulative since the
+ * cache was created; durations are in nanoseconds (milliseconds in JSON).
+ *
+ * Caches given a name in their configuration are also registered here so that
+ * statistics for all live named caches can be retrieved in one call, e.g. for
+ * a dashboard.
+ *
+ * @author rdoherty
+ */
+public class CacheStats implements ToJson {
+
+  private static final Map<String, WeakReference<InMemoryCache<?,?>>> NAMED_CACHES = new ConcurrentHashMap<>();
+
+  /**
+   * Registers a named cache.  A cache registered under the name of an
+   * existing cache replaces it.  Caches are held weakly and so need never be
+   * unregistered.
+   *
+   * @param name name of cache
+   * @param cache cache to register
+   */
+  static void register(String name, InMemoryCache<?,?> cache) {
+    NAMED_CACHES.put(name, new WeakReference<>(cache));
+  }
+
+  /**
+   * @return snapshots of all live named caches, keyed and ordered by name
+   */
+  public static Map<String, CacheStats> getNamedCacheStats() {
+    Map<String, CacheStats> stats = new TreeMap<>();
+    for (Entry<String, WeakReference<InMemoryCache<?,?>>> entry : NAMED_CACHES.entrySet()) {
+      InMemoryCache<?,?> cache = entry.getValue().get();
+      if (cache == null) {
+        NAMED_CACHES.remove(entry.getKey(), entry.getValue());
+      }
+      else {
+        stats.put(entry.getKey(), cache.getStats());
+      }
+    }
+    return stats;
+  }
+
+  /**
+   * @return JSON object containing a snapshot of each live named cache, keyed by name
+   */
+  public static JSONObject getNamedCacheStatsJson() {
+    return ToJson.mapToJson(getNamedCacheStats());
+  }
+
+  private final String _name;
+  private final int _size;
+  private final long _weightedSize;
+  private final long _hitCount;
+  private final long _missCount;
+  private final long _loadSuccessCount;
+  private final long _loadFailureCount;
+  private final long _totalLoadTime;
+  private final long _loadTime50th;
+  private final long _loadTime90th;
+  private final long _loadTime99th;
+  private final long _loadTimeMax;
+  private final Map<RemovalCause, Long> _removalCounts;
+  private final long _lockWaitCount;
+  private final long _lockWaitTime;
+
+  CacheStats(String name, int size, long weightedSize, long hitCount, long missCount,
+      long loadSuccessCount, long loadFailureCount, long totalLoadTime, long loadTime50th,
+      long loadTime90th, long loadTime99th, long loadTimeMax, Map<RemovalCause, Long> removalCounts,
+      long lockWaitCount, long lockWaitTime) {
+    _name = name;
+    _size = size;
+    _weightedSize = weightedSize;
+    _hitCount = hitCount;
+    _missCount = missCount;
+    _loadSuccessCount = loadSuccessCount;
+    _loadFailureCount = loadFailureCount;
+    _totalLoadTime = totalLoadTime;
+    _loadTime50th = loadTime50th;
+    _loadTime90th = loadTime90th;
+    _loadTime99th = loadTime99th;
+    _loadTimeMax = loadTimeMax;
+    _removalCounts = Collections.unmodifiableMap(new EnumMap<>(removalCounts));
+    _lockWaitCount = lockWaitCount;
+    _lockWaitTime = lockWaitTime;
+  }
+
+  /** @return name of the cache, or null if unnamed */
+  public String getName() { return _name; }
+  /** @return number of entries in the cache */
+  public int getSize() { return _size; }
+  /** @return total weight of entries in the cache (0 if not weighted) */
+  public long getWeightedSize() { return _weightedSize; }
+  /** @return number of requests served a cached value */
+  public long getHitCount() { return _hitCount; }
+  /** @return number of requests not served a cached value */
+  public long getMissCount() { return _missCount; }
+  /** @return number of successful value factory calls */
+  public long getLoadSuccessCount() { return _loadSuccessCount; }
+  /** @return number of value factory calls which threw an exception */
+  public long getLoadFailureCount() { return _loadFailureCount; }
+  /** @return total time spent in value factory calls */
+  public long getTotalLoadTime() { return _totalLoadTime; }
+  /** @return estimated median duration of value factory calls */
+  public long getLoadTime50th() { return _loadTime50th; }
+  /** @return estimated 90th percentile duration of value factory calls */
+  public long getLoadTime90th() { return _loadTime90th; }
+  /** @return estimated 99th percentile duration of value factory calls */
+  public long getLoadTime99th() { return _loadTime99th; }
+  /** @return longest duration of a value factory call */
+  public long getLoadTimeMax() { return _loadTimeMax; }
+  /** @return number of entries removed, by cause */
+  public Map<RemovalCause, Long> getRemovalCounts() { return _removalCounts; }
+  /** @return number of times a thread had to wait for a cache lock */
+  public long getLockWaitCount() { return _lockWaitCount; }
+  /** @return total time threads spent waiting for cache locks */
+  public long getLockWaitTime() { return _lockWaitTime; }
+
+  /**
+   * @return total number of requests
+   */
+  public long getRequestCount() {
+    return _hitCount + _missCount;
+  }
+
+  /**
+   * @return ratio of hits to requests, or 1 if there have been no requests
+   */
+  public double getHitRate() {
+    long requests = getRequestCount();
+    return requests == 0 ? 1 : (double)_hitCount / requests;
+  }
+
+  /**
+   * @return mean duration of value factory calls, or 0 if there have been none
+   */
+  public double getAverageLoadTime() {
+    long loads = _loadSuccessCount + _loadFailureCount;
+    return loads == 0 ? 0 : (double)_totalLoadTime / loads;
+  }
+
+  /**
+   * @return total number of entries removed for any cause
+   */
+  public long getRemovalCount() {
+    return _removalCounts.values().stream().mapToLong(Long::longValue).sum();
+  }
+
+  @Override
+  public JSONObject toJson() {
+    JSONObject removals = new JSONObject();
+    for (Entry<RemovalCause, Long> entry : _removalCounts.entrySet()) {
+      removals.put(entry.getKey().name().toLowerCase(), entry.getValue());
+    }
+    return new JSONObject()
+      .put("name", _name)
+      .put("size", _size)
+      .put("weightedSize", _weightedSize)
+      .put("requests", getRequestCount())
+      .put("hits", _hitCount)
+      .put("misses", _missCount)
+      .put("hitRate", getHitRate())
+      .put("loadSuccesses", _loadSuccessCount)
+      .put("loadFailures", _loadFailureCount)
+      .put("loadTimeMillis", new JSONObject()
+        .put("total", toMillis(_totalLoadTime))
+        .put("mean", toMillis(getAverageLoadTime()))
+        .put("p50", toMillis(_loadTime50th))
+        .put("p90", toMillis(_loadTime90th))
+        .put("p99", toMillis(_loadTime99th))
+        .put("max", toMillis(_loadTimeMax)))
+      .put("removals", removals)
+      .put("lockWaits", _lockWaitCount)
+      .put("lockWaitTimeMillis", toMillis(_lockWaitTime));
+  }
+
+  private static double toMillis(double nanos) {
+    return nanos / 1000000;
+  }
+
+  @Override
+  public String toString() {
+    return toJson().toString(2);
+  }
+}
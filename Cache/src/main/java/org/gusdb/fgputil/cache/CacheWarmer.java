@@ -0,0 +1,235 @@
+package org.gusdb.fgputil.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Preloads a known set of keys (e.g. the hot keys of a previous run, or keys
+ * named in configuration) into a cache before it serves requests.  Keys are
+ * loaded concurrently by a bounded number of threads created for the warm-up;
+ * if the value factory is a <code>BulkValueFactory</code>, keys are loaded in
+ * batches.  Progress is reported periodically to an optional listener, and a
+ * time budget bounds how long <code>warmUp()</code> blocks, so a service can
+ * mark itself ready once its caches are warm (or once it has waited long
+ * enough).
+ *
+ * Typical usage:
+ * <pre>
+ * WarmUpProgress result = new CacheWarmer&lt;&gt;(cache, factory)
+ *     .setParallelism(8)
+ *     .setTimeBudget(2, TimeUnit.MINUTES)
+ *     .setProgressListener(progress -&gt; LOG.info(progress))
+ *     .warmUp(hotKeys);
+ * </pre>
+ *
+ * Failures to load individual keys are counted and logged but do not stop
+ * the warm-up.
+ *
+ * @author rdoherty
+ *
+ * @param <S> type of cache key
+ * @param <T> type of cached value
+ */
+public class CacheWarmer<S,T> {
+
+  private static final Logger LOG = Logger.getLogger(CacheWarmer.class);
+
+  public static final int DEFAULT_PARALLELISM = 4;
+  public static final int DEFAULT_BATCH_SIZE = 100;
+
+  // number of progress reports made over a warm-up (plus the final one)
+  private static final int NUM_PROGRESS_REPORTS = 20;
+
+  /**
+   * Snapshot of the progress of a warm-up
+   */
+  public static class WarmUpProgress {
+
+    private final int _total;
+    private final int _loaded;
+    private final int _failed;
+    private final long _elapsedMillis;
+    private final boolean _finished;
+
+    WarmUpProgress(int total, int loaded, int failed, long elapsedMillis, boolean finished) {
+      _total = total;
+      _loaded = loaded;
+      _failed = failed;
+      _elapsedMillis = elapsedMillis;
+      _finished = finished;
+    }
+
+    /** @return number of keys to be warmed */
+    public int getTotal() { return _total; }
+
+    /** @return number of keys whose values are now cached */
+    public int getLoaded() { return _loaded; }
+
+    /** @return number of keys whose values could not be produced */
+    public int getFailed() { return _failed; }
+
+    /** @return time since warm-up began */
+    public long getElapsedMillis() { return _elapsedMillis; }
+
+    /** @return true if warm-up has ended (whether or not all keys were attempted) */
+    public boolean isFinished() { return _finished; }
+
+    /** @return true if every key was attempted within the time budget */
+    public boolean isComplete() { return _loaded + _failed == _total; }
+
+    @Override
+    public String toString() {
+      return "Cache warm-up " + (_finished ? (isComplete() ? "complete" : "stopped") : "in progress") +
+          ": " + _loaded + " of " + _total + " keys loaded, " + _failed + " failed, in " + _elapsedMillis + "ms";
+    }
+  }
+
+  private final InMemoryCache<S,T> _cache;
+  private final ValueFactory<S,T> _factory;
+  private int _parallelism = DEFAULT_PARALLELISM;
+  private int _batchSize = DEFAULT_BATCH_SIZE;
+  private long _timeBudgetMillis = 0;
+  private Consumer<WarmUpProgress> _progressListener = null;
+
+  /**
+   * @param cache cache to warm
+   * @param factory factory used to produce values (bulk factories load in batches)
+   */
+  public CacheWarmer(InMemoryCache<S,T> cache, ValueFactory<S,T> factory) {
+    _cache = cache;
+    _factory = factory;
+  }
+
+  /**
+   * @param parallelism number of threads loading keys (default is 4)
+   * @return this warmer
+   */
+  public CacheWarmer<S,T> setParallelism(int parallelism) {
+    _parallelism = Math.max(1, parallelism);
+    return this;
+  }
+
+  /**
+   * @param batchSize number of keys loaded per call to a bulk value factory (default is 100)
+   * @return this warmer
+   */
+  public CacheWarmer<S,T> setBatchSize(int batchSize) {
+    _batchSize = Math.max(1, batchSize);
+    return this;
+  }
+
+  /**
+   * Sets the time after which warm-up stops.  Loads in progress at that time
+   * complete in the background, but no more are started.
+   *
+   * @param timeBudget maximum duration of warm-up, or 0 for no limit (the default)
+   * @param unit unit of time budget
+   * @return this warmer
+   */
+  public CacheWarmer<S,T> setTimeBudget(long timeBudget, TimeUnit unit) {
+    _timeBudgetMillis = unit.toMillis(Math.max(0, timeBudget));
+    return this;
+  }
+
+  /**
+   * @param progressListener listener called periodically with progress, and
+   * once more when warm-up ends; called on warm-up threads
+   * @return this warmer
+   */
+  public CacheWarmer<S,T> setProgressListener(Consumer<WarmUpProgress> progressListener) {
+    _progressListener = progressListener;
+    return this;
+  }
+
+  /**
+   * Loads the values of the passed keys into the cache, blocking until all
+   * keys have been attempted or the time budget has elapsed.
+   *
+   * @param keys keys to load
+   * @return final progress of the warm-up
+   * @throws InterruptedException if interrupted while waiting for warm-up
+   */
+  public WarmUpProgress warmUp(Collection<S> keys) throws InterruptedException {
+    List<S> keyList = new ArrayList<>(keys);
+    int total = keyList.size();
+    long start = System.currentTimeMillis();
+    long deadline = (_timeBudgetMillis == 0 ? Long.MAX_VALUE : start + _timeBudgetMillis);
+    int batchSize = (_factory instanceof BulkValueFactory ? _batchSize : 1);
+    int reportInterval = Math.max(1, total / NUM_PROGRESS_REPORTS);
+
+    AtomicInteger nextIndex = new AtomicInteger(0);
+    AtomicInteger loaded = new AtomicInteger(0);
+    AtomicInteger failed = new AtomicInteger(0);
+    AtomicInteger reported = new AtomicInteger(0);
+
+    Runnable worker = () -> {
+      int from;
+      while (System.currentTimeMillis() < deadline &&
+             (from = nextIndex.getAndAdd(batchSize)) < total) {
+        List<S> batch = keyList.subList(from, Math.min(from + batchSize, total));
+        int numLoaded = load(batch);
+        loaded.addAndGet(numLoaded);
+        failed.addAndGet(batch.size() - numLoaded);
+        // report when the number of keys attempted crosses a report interval
+        int attempted = loaded.get() + failed.get();
+        int previous = reported.get();
+        if (_progressListener != null && attempted / reportInterval > previous / reportInterval &&
+            reported.compareAndSet(previous, attempted)) {
+          _progressListener.accept(new WarmUpProgress(total, loaded.get(), failed.get(),
+              System.currentTimeMillis() - start, false));
+        }
+      }
+    };
+
+    int numThreads = Math.min(_parallelism, Math.max(1, (total + batchSize - 1) / batchSize));
+    ExecutorService exec = Executors.newFixedThreadPool(numThreads,
+        CacheMaintenance.daemonThreadFactory("cache-warmup-"));
+    try {
+      for (int i = 0; i < numThreads; i++) {
+        exec.execute(worker);
+      }
+      exec.shutdown();
+      if (deadline == Long.MAX_VALUE) {
+        exec.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      }
+      else {
+        exec.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+      }
+    }
+    finally {
+      // threads still loading finish in the background, then exit
+      exec.shutdown();
+    }
+
+    WarmUpProgress result = new WarmUpProgress(total, loaded.get(), failed.get(),
+        System.currentTimeMillis() - start, true);
+    LOG.info(result);
+    if (_progressListener != null) {
+      _progressListener.accept(result);
+    }
+    return result;
+  }
+
+  // loads a batch of keys, returning the number whose values are now cached
+  private int load(List<S> batch) {
+    try {
+      if (batch.size() > 1) {
+        return _cache.getValues(batch, (BulkValueFactory<S,T>)_factory).size();
+      }
+      _cache.getValue(batch.get(0), _factory);
+      return 1;
+    }
+    catch (ValueProductionException | RuntimeException e) {
+      LOG.warn("Unable to warm cache with " + batch.size() + " key(s) starting with " + batch.get(0), e);
+      return 0;
+    }
+  }
+}
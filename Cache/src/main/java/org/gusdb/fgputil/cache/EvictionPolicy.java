@@ -0,0 +1,72 @@
+package org.gusdb.fgputil.cache;
+
+/**
+ * Decides which entry an InMemoryCache evicts when it exceeds its capacity.
+ * The cache notifies its policy of every insertion, access, and removal of a
+ * key, and asks it for a victim whenever it needs to shed an entry.
+ *
+ * Each key carries a weight.  Caches bounded by entry count give every key a
+ * weight of 1; caches bounded by a maximum weight insert keys with a weight of
+ * 0 (their values have not been produced yet) and report the weight of each
+ * value once it has been loaded.  Policies that partition the cache, such as
+ * <code>WindowTinyLfuPolicy</code>, should size those partitions by weight.
+ *
+ * Policies are only ever called by one thread at a time (the cache calls them
+ * under its eviction lock) and so need not be thread-safe.  Under the
+ * concurrent engine, accesses may be dropped or delivered late, and accesses
+ * may arrive for keys the policy does not (or no longer) holds; implementations
+ * must tolerate both.
+ *
+ * @author rdoherty
+ *
+ * @param <K> type of cache key
+ */
+public interface EvictionPolicy<K> {
+
+  /**
+   * Called when a key is added to the cache.
+   *
+   * @param key key added
+   * @param weight weight of the key's entry
+   */
+  public void recordInsertion(K key, long weight);
+
+  /**
+   * Called when the weight of a key's entry changes, typically because its
+   * value was loaded or updated.  Only called by caches bounded by weight.
+   *
+   * @param key key whose weight changed
+   * @param weight new weight of the key's entry
+   */
+  public void recordUpdate(K key, long weight);
+
+  /**
+   * Called when a key is read from the cache.  The key may not be held by this
+   * policy (e.g. a read of an entry that was evicted before the read was
+   * delivered); frequency-based policies may still wish to count it.
+   *
+   * @param key key read
+   */
+  public void recordAccess(K key);
+
+  /**
+   * Called when a key is removed from the cache for a reason other than
+   * eviction by this policy (e.g. explicit expiration or a failed load).
+   *
+   * @param key key removed
+   */
+  public void recordRemoval(K key);
+
+  /**
+   * Selects a key to evict, removes it from this policy, and returns it.
+   *
+   * @return key to be evicted from the cache, or null if this policy holds no keys
+   */
+  public K evict();
+
+  /**
+   * @return number of keys currently held by this policy
+   */
+  public int size();
+
+}
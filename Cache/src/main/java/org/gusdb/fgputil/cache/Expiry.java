@@ -0,0 +1,109 @@
+package org.gusdb.fgputil.cache;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calculates how long a cache entry may live.  Each method returns a
+ * duration in nanoseconds after which the entry will be expired; returning
+ * <code>Long.MAX_VALUE</code> means the entry never expires.  Expired entries
+ * are never returned by the cache; they are reloaded on next access and are
+ * reclaimed proactively in the background.
+ *
+ * Implement only <code>expireAfterCreate</code> for a per-entry (variable)
+ * time-to-live, or use the factory methods for the common fixed policies.
+ *
+ * @author rdoherty
+ *
+ * @param <S> type of cache key
+ * @param <T> type of cached value
+ */
+@FunctionalInterface
+public interface Expiry<S,T> {
+
+  /**
+   * Returns an expiry that expires entries a fixed duration after their value
+   * was created or last updated.
+   *
+   * @param duration duration an entry lives after being written
+   * @param unit unit of duration
+   * @return expiry policy
+   */
+  public static <S,T> Expiry<S,T> afterWrite(long duration, TimeUnit unit) {
+    long nanos = unit.toNanos(duration);
+    return (key, value, currentTime) -> nanos;
+  }
+
+  /**
+   * Returns an expiry that expires entries a fixed duration after their value
+   * was created, last updated, or last read.
+   *
+   * @param duration duration an entry lives after being accessed
+   * @param unit unit of duration
+   * @return expiry policy
+   */
+  public static <S,T> Expiry<S,T> afterAccess(long duration, TimeUnit unit) {
+    long nanos = unit.toNanos(duration);
+    return new Expiry<S,T>() {
+      @Override
+      public long expireAfterCreate(S key, T value, long currentTime) {
+        return nanos;
+      }
+      @Override
+      public long expireAfterRead(S key, T value, long currentTime, long currentDuration) {
+        return nanos;
+      }
+      @Override
+      public boolean isAccessBased() {
+        return true;
+      }
+    };
+  }
+
+  /**
+   * Returns the lifetime of a newly created value.
+   *
+   * @param key key of the entry
+   * @param value newly created value
+   * @param currentTime current time in nanoseconds (per the cache's ticker)
+   * @return duration in nanoseconds until the entry expires
+   */
+  public long expireAfterCreate(S key, T value, long currentTime);
+
+  /**
+   * Returns the lifetime of a value just updated by its value factory.  By
+   * default, updated values are given the same lifetime as newly created ones.
+   *
+   * @param key key of the entry
+   * @param value updated value
+   * @param currentTime current time in nanoseconds (per the cache's ticker)
+   * @param currentDuration remaining lifetime of the entry before the update
+   * @return duration in nanoseconds until the entry expires
+   */
+  public default long expireAfterUpdate(S key, T value, long currentTime, long currentDuration) {
+    return expireAfterCreate(key, value, currentTime);
+  }
+
+  /**
+   * Returns the lifetime of a value just read from the cache.  This is only
+   * called if <code>isAccessBased()</code> returns true; by default, reads do
+   * not change an entry's lifetime.
+   *
+   * @param key key of the entry
+   * @param value value read
+   * @param currentTime current time in nanoseconds (per the cache's ticker)
+   * @param currentDuration remaining lifetime of the entry
+   * @return duration in nanoseconds until the entry expires
+   */
+  public default long expireAfterRead(S key, T value, long currentTime, long currentDuration) {
+    return currentDuration;
+  }
+
+  /**
+   * @return true if reads may extend an entry's lifetime (i.e. if
+   * <code>expireAfterRead</code> should be called on every cache hit)
+   */
+  public default boolean isAccessBased() {
+    return false;
+  }
+
+}
@@ -0,0 +1,112 @@
+package org.gusdb.fgputil.cache;
+
+/**
+ * Count-min sketch estimating how often keys have been seen recently.  Each
+ * key maps to four 4-bit counters (saturating at 15) spread over a table of
+ * longs; the estimate is the minimum of the four.  Once the number of
+ * increments reaches a sample size proportional to the cache capacity, all
+ * counters are halved so the sketch favors recent history (aging).
+ *
+ * This class is not thread-safe; it is used under a cache's eviction lock.
+ *
+ * @author rdoherty
+ *
+ * @param <K> type of key counted
+ */
+class FrequencySketch<K> {
+
+  // seeds for the four hash functions
+  private static final long[] SEEDS = {
+      0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+  // masks off the high bit of every 4-bit counter after a right shift
+  private static final long RESET_MASK = 0x7777777777777777L;
+
+  // number of increments between agings, per unit of capacity
+  private static final int SAMPLE_FACTOR = 10;
+
+  private final long[] _table;
+  private final int _tableMask;
+  private final int _sampleSize;
+  private int _size = 0;
+
+  /**
+   * @param capacity capacity of the cache being tracked
+   */
+  FrequencySketch(int capacity) {
+    int tableSize = ceilingPowerOfTwo(Math.max(capacity, 8));
+    _table = new long[tableSize];
+    _tableMask = tableSize - 1;
+    _sampleSize = (int)Math.min((long)SAMPLE_FACTOR * Math.max(capacity, 1), Integer.MAX_VALUE);
+  }
+
+  /**
+   * @param key key to look up
+   * @return estimated number of times the key has been seen (at most 15)
+   */
+  int frequency(K key) {
+    int hash = spread(key.hashCode());
+    int start = (hash & 3) << 2;
+    int frequency = Integer.MAX_VALUE;
+    for (int i = 0; i < 4; i++) {
+      int index = indexOf(hash, i);
+      int count = (int)((_table[index] >>> ((start + i) << 2)) & 0xfL);
+      frequency = Math.min(frequency, count);
+    }
+    return frequency;
+  }
+
+  /**
+   * Increments the estimated frequency of the passed key, aging all counters
+   * if the sample size has been reached.
+   *
+   * @param key key seen
+   */
+  void increment(K key) {
+    int hash = spread(key.hashCode());
+    int start = (hash & 3) << 2;
+    boolean added = false;
+    for (int i = 0; i < 4; i++) {
+      added |= incrementAt(indexOf(hash, i), start + i);
+    }
+    if (added && ++_size == _sampleSize) {
+      reset();
+    }
+  }
+
+  // increments the counter at the passed table index and counter offset unless saturated
+  private boolean incrementAt(int index, int counter) {
+    int offset = counter << 2;
+    long mask = (0xfL << offset);
+    if ((_table[index] & mask) != mask) {
+      _table[index] += (1L << offset);
+      return true;
+    }
+    return false;
+  }
+
+  // halves every counter
+  private void reset() {
+    for (int i = 0; i < _table.length; i++) {
+      _table[i] = (_table[i] >>> 1) & RESET_MASK;
+    }
+    _size /= 2;
+  }
+
+  private int indexOf(int hash, int depth) {
+    long h = (hash + SEEDS[depth]) * SEEDS[depth];
+    h += (h >>> 32);
+    return ((int)h) & _tableMask;
+  }
+
+  // protects against poor hashCode implementations
+  private static int spread(int hash) {
+    hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+    hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+    return (hash >>> 16) ^ hash;
+  }
+
+  private static int ceilingPowerOfTwo(int value) {
+    return value >= (1 << 30) ? (1 << 30) : Integer.highestOneBit(value - 1) << 1;
+  }
+}
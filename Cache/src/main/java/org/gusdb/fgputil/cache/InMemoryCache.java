@@ -1,20 +1,85 @@
 package org.gusdb.fgputil.cache;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 
 import org.apache.log4j.Logger;
+import org.gusdb.fgputil.cache.CacheConfig.Engine;
+import org.gusdb.fgputil.cache.CacheSnapshot.RestoredValue;
+import org.gusdb.fgputil.functional.FunctionalInterfaces.SupplierWithException;
 
 /**
  * Implements an efficient cache of objects mapped by key.  This class is
  * thread-safe and can be used in a static, application-wide way to cache
  * homogeneous objects.
  * 
+ * Values are held in a concurrent map; production of a value for a given key
+ * is serialized by a per-key lock so only one thread loads a missing value.
+ * The order in which entries are trimmed is maintained separately under a
+ * cache-wide eviction lock.  How accesses reach that order is determined by
+ * the configured engine (see <code>CacheConfig.Engine</code>).
+ * 
+ * If an expiry is configured, expired values are never returned; they are
+ * reloaded on next access, and are also reclaimed proactively by a timer
+ * wheel advanced during maintenance and about once a second in the background.
+ * 
+ * Stale values (per the value factory, or per a refresh-after-write interval)
+ * may be refreshed asynchronously, in which case readers are served the
+ * current value while a single refresh per key runs on a background executor.
+ * 
+ * Hits, misses, loads, removals, and lock contention are counted and can be
+ * read as a snapshot via <code>getStats()</code>; caches given a name are
+ * also listed by <code>CacheStats.getNamedCacheStats()</code>.
+ * 
+ * An optional off-heap tier keeps values evicted for capacity in memory
+ * outside the Java heap, from which they are promoted back on request.
+ * 
+ * If a failure backoff is configured, failures to create a value are cached
+ * and rethrown until an exponentially growing retry delay has elapsed.
+ * 
+ * If a snapshot file is configured, the cache's contents are written to it
+ * periodically and at shutdown, and a cache created when the file exists
+ * restores values from it lazily instead of calling the value factory.
+ * Restored values are still subject to the factory's
+ * <code>valueNeedsUpdating()</code> check.
+ * 
+ * If a tagger is configured, entries are indexed by the tags it assigns each
+ * value, so all entries with a tag can be invalidated without scanning the
+ * cache (see <code>invalidateByTag()</code> and <code>TagInvalidationBridge</code>).
+ * 
  * @param S type of unique keys of values cached
  * @param T type of values cached
  * 
@@ -31,31 +96,135 @@ public class InMemoryCache<S,T> {
   public static final int DEFAULT_CAPACITY = 1000;
 
   /**
-   * Default number of entries trimmed from cache when capacity is exceeded.
+   * Default number of entries trimmed from cache when capacity is exceeded
+   * by a cache configured to trim in chunks.  Caches created without an
+   * explicit trim size evict incrementally instead.
    */
   public static final int DEFAULT_NUM_TO_TRIM_ON_CAPACITY = 700;
 
+  /**
+   * Trim size signifying incremental eviction: each time capacity is exceeded,
+   * only enough entries to return to capacity are evicted.
+   */
+  public static final int INCREMENTAL_EVICTION = 0;
+
+  // maximum number of entries evicted by a caller thread per operation; any
+  //   remaining excess is evicted on a maintenance thread
+  private static final int MAX_EVICTIONS_PER_OPERATION = 16;
+
+  // maximum number of entries evicted by a maintenance thread per lock hold
+  private static final int MAX_EVICTIONS_PER_MAINTENANCE_BATCH = 1000;
+
+  // interval at which caches with an expiry reclaim expired entries in the background
+  private static final long EXPIRATION_INTERVAL_MILLIS = 1000;
+
+  // longest lifetime representable without overflowing time comparisons (~146 years)
+  private static final long MAXIMUM_EXPIRY = Long.MAX_VALUE >> 1;
+
   private static class ValueContainer<T> {
-    Lock lock = new ReentrantLock();
-    T value = null;
+    final Lock lock = new ReentrantLock();
+    volatile T value = null;
+    // set once this container has been removed from the cache
+    volatile boolean retired = false;
+    // weight last reported to the eviction policy; only touched under _evictionLock
+    long weight = 0;
+    // ticker time at which value expires; only meaningful once a value is loaded
+    volatile long expirationTime = 0;
+    // ticker time at which value was last written; only maintained if refreshing after write
+    volatile long writeTime = 0;
+    // set while an asynchronous refresh of this container is pending
+    final AtomicBoolean refreshing = new AtomicBoolean(false);
+    // most recent creation failure, cached until retryTime; only touched under lock
+    ValueProductionException failure = null;
+    int numFailures = 0;
+    long retryTime = 0;
+    // tags under which this container is indexed; only maintained if tagging
+    volatile Set<String> tags = Collections.emptySet();
   }
-  
-  private final Map<S, ValueContainer<T>> _cache = new LinkedHashMap<>();
-  private final Lock _cacheLock = new ReentrantLock();
+
+  // background task (e.g. reclaiming expired entries); holds its cache weakly so
+  //   an unreferenced cache can still be collected, at which point the task ends
+  private static class MaintenanceTask implements Runnable {
+    private final WeakReference<InMemoryCache<?,?>> _cacheRef;
+    private final Consumer<InMemoryCache<?,?>> _action;
+    private volatile ScheduledFuture<?> _future;
+    MaintenanceTask(InMemoryCache<?,?> cache, Consumer<InMemoryCache<?,?>> action) {
+      _cacheRef = new WeakReference<>(cache);
+      _action = action;
+    }
+    @Override
+    public void run() {
+      InMemoryCache<?,?> cache = _cacheRef.get();
+      if (cache != null) {
+        _action.accept(cache);
+      }
+      else if (_future != null) {
+        _future.cancel(false);
+      }
+    }
+  }
+
+  private final ConcurrentHashMap<S, ValueContainer<T>> _cache = new ConcurrentHashMap<>();
+  private final String _name;
+  private final StatsCounter _stats = new StatsCounter();
   private final int _capacity;
   private final int _numToTrimOnCapacity;
   private final ValueCloner<T> _cloner;
-  private Date _lastTrimDate = null;
+  private final Engine _engine;
+  private final long _maximumWeight;
+  private final Weigher<S,T> _weigher;
+  private final Expiry<S,T> _expiry;
+  private final LongSupplier _ticker;
+  private final boolean _asyncRefresh;
+  private final long _refreshAfterWriteNanos;
+  private final Executor _refreshExecutor;
+  private final long _failureBackoffInitialNanos;
+  private final long _failureBackoffMaximumNanos;
+
+  // index from tag to the entries whose values were assigned the tag
+  private final Tagger<S,T> _tagger;
+  private final ConcurrentHashMap<String, ConcurrentHashMap<S, ValueContainer<T>>> _tagIndex = new ConcurrentHashMap<>();
+
+  // second tier for evicted values; writes are queued to preserve their order
+  private final OffHeapStore<S> _offHeap;
+  private final ValueCodec<T> _valueCodec;
+  private final Queue<Runnable> _offHeapWrites = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean _offHeapWritesScheduled = new AtomicBoolean(false);
+  private final Lock _offHeapWriteLock = new ReentrantLock();
+
+  // file to which contents are saved, and the snapshot (if any) being restored from
+  private final Path _snapshotFile;
+  private final ValueCodec<S> _keyCodec;
+  private volatile CacheSnapshot<S,T> _snapshot = null;
+  private volatile Date _lastTrimDate = null;
+  // entries of the current chunk not yet trimmed; guarded by eviction lock
+  private int _pendingTrim = 0;
+
+  // entries known to the eviction policy and the policy itself; only touched under _evictionLock
+  private final Map<S, ValueContainer<T>> _resident = new HashMap<>();
+  private final EvictionPolicy<S> _policy;
+  private final Lock _evictionLock = new ReentrantLock();
+  private volatile long _totalWeight = 0;
+  private final TimerWheel<S> _timerWheel;
+
+  // buffers used by the concurrent engine to defer eviction order updates
+  private final ReadBuffer<S> _readBuffer;
+  private final Queue<Runnable> _writeBuffer;
+  private final AtomicBoolean _drainRequested = new AtomicBoolean(false);
+  private final AtomicBoolean _maintenanceScheduled = new AtomicBoolean(false);
 
   /**
    * Creates a cache with default settings.
    */
   public InMemoryCache() {
-    this(DEFAULT_CAPACITY, DEFAULT_NUM_TO_TRIM_ON_CAPACITY, null);
+    this(new CacheConfig<S,T>());
   }
 
   /**
-   * Creates a cache with custom capacity and trimming characteristics.
+   * Creates a cache with custom capacity and trimming characteristics.  Passing
+   * <code>INCREMENTAL_EVICTION</code> as the trim size evicts one entry at a
+   * time rather than in chunks.  The thread which exceeds capacity trims only
+   * a few entries of a chunk; the rest are trimmed on a maintenance thread.
    * 
    * @param capacity maximum number of objects that can be cached
    * @param numToTrimOnCapacity number of objects to trim when capacity reached
@@ -76,7 +245,7 @@ public class InMemoryCache<S,T> {
    * @param cloner custom cloner
    */
   public InMemoryCache(ValueCloner<T> cloner) {
-    this(DEFAULT_CAPACITY, DEFAULT_NUM_TO_TRIM_ON_CAPACITY, cloner);
+    this(new CacheConfig<S,T>().setCloner(cloner));
   }
 
   /**
@@ -93,20 +262,112 @@ public class InMemoryCache<S,T> {
    * @param cloner custom cloner
    */
   public InMemoryCache(int capacity, int numToTrimOnCapacity, ValueCloner<T> cloner) {
+    this(new CacheConfig<S,T>()
+        .setCapacity(capacity)
+        .setNumToTrimOnCapacity(numToTrimOnCapacity)
+        .setCloner(cloner));
+  }
+
+  /**
+   * Creates a cache with the passed configuration.
+   * 
+   * @param config cache configuration
+   */
+  public InMemoryCache(CacheConfig<S,T> config) {
+
+    // named caches are registered so their statistics can be found
+    _name = config.getName();
+
+    // weighted caches are bounded by total weight instead of entry count
+    _maximumWeight = Math.max(0, config.getMaximumWeight());
+    _weigher = !isWeighted() ? null :
+        config.getWeigher() != null ? config.getWeigher() : new ObjectSizeWeigher<>();
 
     // can store 1 entry but not fewer
-    _capacity = Math.max(1, capacity);
+    _capacity = isWeighted() ? Integer.MAX_VALUE : Math.max(1, config.getCapacity());
 
-    // don't trim more than the max number of entries, but trim at least 1
-    _numToTrimOnCapacity = Math.max(1, Math.min(capacity, numToTrimOnCapacity));
+    // don't trim more than the max number of entries; non-positive values mean incremental eviction
+    _numToTrimOnCapacity = Math.max(INCREMENTAL_EVICTION, Math.min(_capacity, config.getNumToTrimOnCapacity()));
 
     // cloner used to return cache-safe objects to callers
+    ValueCloner<T> cloner = config.getCloner();
     _cloner = (cloner != null ? cloner : cachedItem -> cachedItem);
+
+    // policy deciding which entries to evict when over capacity
+    _policy = config.getEvictionPolicy().apply(isWeighted() ? _maximumWeight : _capacity);
+
+    // concurrent engine defers eviction order updates to buffers
+    _engine = config.getEngine();
+    boolean isConcurrent = (_engine == Engine.CONCURRENT);
+    _readBuffer = isConcurrent ? new ReadBuffer<>() : null;
+    _writeBuffer = isConcurrent ? new ConcurrentLinkedQueue<>() : null;
+
+    // entries with an expiry are scheduled on a timer wheel and reclaimed in the background
+    _expiry = config.getExpiry();
+    _ticker = config.getTicker();
+    _timerWheel = (_expiry == null ? null : new TimerWheel<>(_ticker.getAsLong()));
+    // stale values may be refreshed in the background
+    _asyncRefresh = config.isAsyncRefresh();
+    _refreshAfterWriteNanos = Math.max(0, config.getRefreshAfterWriteNanos());
+    Executor refreshExecutor = config.getRefreshExecutor();
+    _refreshExecutor = (refreshExecutor != null ? refreshExecutor : CacheMaintenance.getRefreshExecutor());
+
+    // creation failures may be cached for a time to protect value sources
+    _failureBackoffInitialNanos = Math.max(0, config.getFailureBackoffInitialNanos());
+    _failureBackoffMaximumNanos = Math.max(_failureBackoffInitialNanos, config.getFailureBackoffMaximumNanos());
+
+    // entries may be indexed by tag for invalidation
+    _tagger = config.getTagger();
+
+    // values evicted for capacity may be kept off-heap
+    try {
+      _offHeap = (config.getOffHeapMaximumBytes() <= 0 ? null :
+          new OffHeapStore<>(config.getOffHeapMaximumBytes(), config.getOffHeapMappedFile()));
+      _valueCodec = config.getValueCodec();
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException("Unable to create off-heap cache tier", e);
+    }
+
+    // contents may be restored from a previous run's snapshot and saved for the next
+    _snapshotFile = config.getSnapshotFile();
+    _keyCodec = config.getKeyCodec();
+    if (_snapshotFile != null) {
+      if (Files.exists(_snapshotFile)) {
+        try {
+          _snapshot = new CacheSnapshot<>(_snapshotFile, _keyCodec, _valueCodec);
+          LOG.info("Opened cache snapshot " + _snapshotFile + " containing " + _snapshot.size() + " entries");
+        }
+        catch (IOException e) {
+          LOG.warn("Unable to open cache snapshot " + _snapshotFile + "; cache will start empty", e);
+        }
+      }
+      if (config.getSnapshotIntervalMillis() > 0) {
+        // snapshot writes scan the whole cache, so run apart from maintenance
+        MaintenanceTask task = new MaintenanceTask(this, InMemoryCache::writeSnapshotQuietly);
+        task._future = CacheMaintenance.scheduleSnapshot(task,
+            config.getSnapshotIntervalMillis(), TimeUnit.MILLISECONDS);
+      }
+      CacheMaintenance.runAtShutdown(new MaintenanceTask(this, InMemoryCache::writeSnapshotQuietly));
+    }
+
+    if (_expiry != null) {
+      schedule(new MaintenanceTask(this, InMemoryCache::cleanUp), EXPIRATION_INTERVAL_MILLIS);
+    }
+
+    if (_name != null) {
+      CacheStats.register(_name, this);
+    }
+  }
+
+  private static void schedule(MaintenanceTask task, long intervalMillis) {
+    task._future = CacheMaintenance.scheduleWithFixedDelay(task, intervalMillis, TimeUnit.MILLISECONDS);
   }
 
   /**
    * Returns the maximum size of the cache (i.e. number of entries).  Actual memory
-   * size will vary based on the size of the items stored and their keys.
+   * size will vary based on the size of the items stored and their keys.  Caches
+   * bounded by weight return <code>Integer.MAX_VALUE</code>.
    * 
    * @return maximum size of the cache
    */
@@ -115,8 +376,50 @@ public class InMemoryCache<S,T> {
   }
 
   /**
-   * Returns the number of entries to be trimmed off the cache (least recently
-   * accessed trimmed first) when the capacity is reached.
+   * @return name of this cache, or null if unnamed
+   */
+  public String getName() {
+    return _name;
+  }
+
+  /**
+   * Returns a snapshot of this cache's statistics.  Counts are cumulative since
+   * the cache was created.
+   * 
+   * @return statistics snapshot
+   */
+  public CacheStats getStats() {
+    return _stats.snapshot(_name, getSize(), getWeightedSize());
+  }
+
+  /**
+   * @return number of bytes occupied by values in the off-heap tier (0 if none)
+   */
+  public long getOffHeapBytes() {
+    return _offHeap == null ? 0 : _offHeap.getUsedBytes();
+  }
+
+  /**
+   * @return maximum total weight of entries, or 0 if this cache is bounded by entry count
+   */
+  public long getMaximumWeight() {
+    return _maximumWeight;
+  }
+
+  /**
+   * Returns the total weight of entries currently in the cache, as calculated
+   * by its weigher.  Always 0 for caches bounded by entry count.
+   * 
+   * @return total weight of cached entries
+   */
+  public long getWeightedSize() {
+    return _totalWeight;
+  }
+
+  /**
+   * Returns the number of entries to be trimmed off the cache (in the order
+   * chosen by the eviction policy) when the capacity is reached, or
+   * <code>INCREMENTAL_EVICTION</code> if only the excess is evicted.
    * 
    * @return number of entries trimmed from cache if capacity is reached
    */
@@ -125,8 +428,22 @@ public class InMemoryCache<S,T> {
   }
 
   /**
-   * Returns date of last capacity trim (individual items may be marked invalid
-   * for other reasons at other times).
+   * @return engine used by this cache to record accesses and order evictions
+   */
+  public Engine getEngine() {
+    return _engine;
+  }
+
+  /**
+   * @return expiry determining entry lifetimes, or null if entries never expire
+   */
+  public Expiry<S,T> getExpiry() {
+    return _expiry;
+  }
+
+  /**
+   * Returns date of last capacity trim or eviction (individual items may be
+   * marked invalid for other reasons at other times).
    * 
    * @return date of last capacity trim
    */
@@ -137,7 +454,9 @@ public class InMemoryCache<S,T> {
   /**
    * Retrieves an item from the cache with the passed key.  If the item is not
    * in the cache (not yet fetched, expired, or trimmed), it will be fetched
-   * with the passed ValueFactory.
+   * with the passed ValueFactory.  If the item is stale and this cache
+   * refreshes asynchronously, the stale item is returned and a refresh is
+   * scheduled.
    * 
    * @param key key of the desired item
    * @param factory factory for items of the type cached
@@ -145,62 +464,510 @@ public class InMemoryCache<S,T> {
    * @throws ValueProductionException if unable to create/update the item
    */
   public T getValue(S key, ValueFactory<S,T> factory) throws ValueProductionException {
-    ValueContainer<T> container = getValueContainerById(key);
-    T result = null;
+
+    // fast path: value present and current (or refreshable in the background); no locks are needed
+    T present = getPresentValue(key, factory);
+    if (present != null) {
+      return _cloner.createCachesafeClone(present);
+    }
+
+    while (true) {
+      ValueContainer<T> container = getValueContainerById(key);
+      try {
+        acquire(container.lock);
+
+        // container may have been trimmed or expired while we waited; start over
+        if (container.retired) {
+          continue;
+        }
+
+        // expired values are discarded and loaded again as if never cached
+        if (container.value != null && isExpired(container)) {
+          removeContainer(key, container, RemovalCause.EXPIRED);
+          continue;
+        }
+
+        // if creation recently failed, fail again without retrying until the backoff elapses
+        if (container.value == null && container.failure != null &&
+            container.retryTime - _ticker.getAsLong() > 0) {
+          _stats.recordMisses(1);
+          throw container.failure;
+        }
+
+        // if no value exists in the cache for this key and it cannot be
+        //   restored from off-heap or a snapshot, create it
+        if (container.value == null && !restore(key, container)) {
+          _stats.recordMisses(1);
+          try {
+            setValue(key, container, timeLoad(() -> factory.getNewValue(key)), true);
+          }
+          catch (Exception e) {
+            throw onCreationFailure(key, container, e);
+          }
+        }
+
+        // otherwise check to see if value needs updating before returning
+        else {
+          _stats.recordHits(1);
+          if (factory.valueNeedsUpdating(container.value)) {
+            if (_asyncRefresh) {
+              refreshAsync(key, container, factory, false);
+            }
+            else {
+              try {
+                T previousValue = container.value;
+                setValue(key, container, timeLoad(() -> factory.getUpdatedValue(key, previousValue)), false);
+              }
+              catch (Exception e) {
+                // if update fails, make a note in the log, but leave the old version
+                //   in the cache and throw exception
+                LOG.warn("ItemFetcher of type " + factory.getClass().getName() +
+                    " failed to update " + container.value.getClass().getName() +
+                    " with ID " + key, e.getCause());
+                throw convertException(e);
+              }
+            }
+          }
+        }
+
+        // move entry to the "back" of the eviction order to keep least
+        //   recently used items in front
+        afterRead(key, container);
+        return _cloner.createCachesafeClone(container.value);
+      }
+      finally {
+        container.lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Retrieves the items with the passed keys from the cache.  Items present in
+   * the cache are returned as by <code>getValue()</code>; all items not present
+   * are created with a single call to the factory's <code>getNewValues()</code>
+   * method.  As with single lookups, only one thread at a time loads a given
+   * key: keys already being loaded by another thread are awaited rather than
+   * loaded again, and items which need synchronous updating are updated
+   * individually.
+   * 
+   * @param keys keys of the desired items
+   * @param factory factory for items of the type cached
+   * @return map from key to item, in the iteration order of the passed keys;
+   * keys for which the factory produced no item are omitted
+   * @throws ValueProductionException if unable to create/update the items
+   */
+  public Map<S,T> getValues(Collection<S> keys, BulkValueFactory<S,T> factory) throws ValueProductionException {
+
+    // serve what we can from the fast path; collect the rest
+    Map<S,T> values = new HashMap<>();
+    Collection<S> misses = new LinkedHashSet<>();
+    for (S key : keys) {
+      if (values.containsKey(key) || misses.contains(key)) {
+        continue;
+      }
+      T present = getPresentValue(key, factory);
+      if (present != null) {
+        values.put(key, _cloner.createCachesafeClone(present));
+      }
+      else {
+        misses.add(key);
+      }
+    }
+
+    // claim an empty container for each miss we can lock without waiting;
+    //   never blocking while holding locks keeps concurrent bulk loads deadlock-free
+    Map<S, ValueContainer<T>> claimed = new LinkedHashMap<>();
+    List<S> individualKeys = new ArrayList<>();
     try {
-      container.lock.lock();
+      for (S key : misses) {
+        ValueContainer<T> container = getValueContainerById(key);
+        if (!container.lock.tryLock()) {
+          // another thread is loading or updating this key
+          individualKeys.add(key);
+        }
+        else if (!container.retired && container.value == null &&
+            (container.failure == null || container.retryTime - _ticker.getAsLong() <= 0)) {
+          claimed.put(key, container);
+        }
+        else {
+          // value appeared (or container went away) after our lookup; handle singly
+          container.lock.unlock();
+          individualKeys.add(key);
+        }
+      }
 
-      // if no value exists in the cache for this key, create it
-      if (container.value == null) {
+      // restore claimed keys held off-heap or in a snapshot; load the rest in one call
+      Map<S, ValueContainer<T>> toLoad = new LinkedHashMap<>();
+      for (Entry<S, ValueContainer<T>> entry : claimed.entrySet()) {
+        S key = entry.getKey();
+        ValueContainer<T> container = entry.getValue();
+        if (!restore(key, container)) {
+          toLoad.put(key, container);
+        }
+        else if (factory.valueNeedsUpdating(container.value)) {
+          // restored but stale; update as a single lookup would
+          individualKeys.add(key);
+        }
+        else {
+          _stats.recordHits(1);
+          afterRead(key, container);
+          values.put(key, _cloner.createCachesafeClone(container.value));
+        }
+      }
+      if (!toLoad.isEmpty()) {
+        _stats.recordMisses(toLoad.size());
+        Map<S,T> loaded;
         try {
-          container.value = factory.getNewValue(key);
+          List<S> keysToLoad = new ArrayList<>(toLoad.keySet());
+          loaded = timeLoad(() -> factory.getNewValues(keysToLoad));
         }
         catch (Exception e) {
-          // if creation fails, remove the container for the next attempt
-          try {
-            _cacheLock.lock();
-            _cache.remove(key);
+          ValueProductionException failure = convertException(e);
+          for (Entry<S, ValueContainer<T>> entry : toLoad.entrySet()) {
+            onCreationFailure(entry.getKey(), entry.getValue(), failure);
           }
-          finally {
-            _cacheLock.unlock();
+          throw failure;
+        }
+        for (Entry<S, ValueContainer<T>> entry : toLoad.entrySet()) {
+          S key = entry.getKey();
+          ValueContainer<T> container = entry.getValue();
+          T value = loaded.get(key);
+          if (value == null) {
+            removeContainer(key, container, null);
+          }
+          else {
+            setValue(key, container, value, true);
+            afterRead(key, container);
+            values.put(key, _cloner.createCachesafeClone(value));
           }
-          throw convertException(e);
         }
       }
+    }
+    finally {
+      for (ValueContainer<T> container : claimed.values()) {
+        container.lock.unlock();
+      }
+    }
+
+    // wait for contended keys (or update stale ones) as single lookups would
+    for (S key : individualKeys) {
+      values.put(key, getValue(key, factory));
+    }
+
+    // return values in the requested order
+    Map<S,T> result = new LinkedHashMap<>();
+    for (S key : keys) {
+      T value = values.get(key);
+      if (value != null) {
+        result.put(key, value);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the item with the passed key if it is cached, without loading it.
+   * If the item is present in the heap tier this call takes no locks (when
+   * using the concurrent engine).
+   * 
+   * @param key key of the desired item
+   * @return cached item, or null if not cached
+   */
+  public T getIfPresent(S key) {
+    ValueContainer<T> container = _cache.get(key);
+    T value = (container == null ? null : container.value);
+    if (value != null && !isExpired(container)) {
+      afterRead(key, container);
+      _stats.recordHits(1);
+      return _cloner.createCachesafeClone(value);
+    }
+    if (_offHeap != null || _snapshot != null) {
+      // value may be restorable from a lower tier
+      value = updateValue(key, (k, current) -> current, false);
+    }
+    if (value == null) {
+      _stats.recordMisses(1);
+      return null;
+    }
+    _stats.recordHits(1);
+    return value;
+  }
+
+  /**
+   * Atomically replaces the item with the passed key with the result of the
+   * passed function, which is given the current item (or null if none is
+   * cached) and may return null to remove the item.  No other update of the
+   * key can occur while the function runs; reads are not blocked.
+   * 
+   * @param key key of the item to update
+   * @param remapping function producing the new item from the current one
+   * @param returnPrevious whether to return the previous item instead of the new one
+   * @return previous item or (a cache-safe clone of) the new item, per
+   * <code>returnPrevious</code>; null if none
+   */
+  T updateValue(S key, BiFunction<? super S, ? super T, ? extends T> remapping, boolean returnPrevious) {
+    while (true) {
+      ValueContainer<T> container = getValueContainerById(key);
+      try {
+        acquire(container.lock);
+
+        // container may have been trimmed or expired while we waited; start over
+        if (container.retired) {
+          continue;
+        }
+        if (container.value != null && isExpired(container)) {
+          removeContainer(key, container, RemovalCause.EXPIRED);
+          continue;
+        }
+        if (container.value == null) {
+          restore(key, container);
+        }
 
-      // otherwise check to see if value needs updating before returning
-      else if (factory.valueNeedsUpdating(container.value)) {
+        T previous = container.value;
+        T value;
         try {
-          container.value = factory.getUpdatedValue(key, container.value);
+          value = remapping.apply(key, previous);
         }
-        catch (Exception e) {
-          // if update fails, make a note in the log, but leave the old version
-          //   in the cache and throw exception
-          LOG.warn("ItemFetcher of type " + factory.getClass().getName() +
-              " failed to update " + container.value.getClass().getName() +
-              " with ID " + key, e.getCause());
-          throw convertException(e);
+        catch (RuntimeException e) {
+          if (previous == null) {
+            removeContainer(key, container, null);
+          }
+          throw e;
+        }
+        if (value == null) {
+          // if no value existed, only the empty container placed above is removed
+          removeContainer(key, container, previous == null ? null : RemovalCause.EXPLICIT);
+        }
+        else {
+          if (value != previous) {
+            setValue(key, container, value, previous == null);
+          }
+          afterRead(key, container);
+        }
+        return returnPrevious ? previous :
+          value == null ? null : _cloner.createCachesafeClone(value);
+      }
+      finally {
+        container.lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Returns a weakly consistent iterator over cached entries: it never throws
+   * <code>ConcurrentModificationException</code>, and reflects each entry
+   * present in the heap tier for the whole iteration, while entries added or
+   * removed during iteration may or may not be returned.  Values are
+   * cache-safe clones; iteration does not count as access for eviction.
+   * 
+   * @return iterator over cached entries
+   */
+  Iterator<Entry<S,T>> entryIterator() {
+    Iterator<Entry<S, ValueContainer<T>>> containers = _cache.entrySet().iterator();
+    return new Iterator<Entry<S,T>>() {
+
+      private Entry<S,T> _next = null;
+
+      @Override
+      public boolean hasNext() {
+        while (_next == null && containers.hasNext()) {
+          Entry<S, ValueContainer<T>> candidate = containers.next();
+          ValueContainer<T> container = candidate.getValue();
+          T value = container.value;
+          // skip entries still loading or already expired
+          if (value != null && !isExpired(container)) {
+            _next = new SimpleImmutableEntry<>(candidate.getKey(), _cloner.createCachesafeClone(value));
+          }
         }
+        return _next != null;
       }
 
-      // push entry to the "back" of the linked hash map to
-      //   keep least frequently used items in front
+      @Override
+      public Entry<S,T> next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        Entry<S,T> next = _next;
+        _next = null;
+        return next;
+      }
+    };
+  }
+
+  // Returns the cached value for the key if it can be served without loading
+  //   or waiting (scheduling a background refresh if needed), or null if not.
+  private T getPresentValue(S key, ValueFactory<S,T> factory) {
+    ValueContainer<T> existing = _cache.get(key);
+    if (existing != null) {
+      T value = existing.value;
+      if (value != null && !isExpired(existing)) {
+        boolean needsUpdating = factory.valueNeedsUpdating(value);
+        if (!needsUpdating || _asyncRefresh) {
+          if (needsUpdating || isRefreshDue(existing)) {
+            refreshAsync(key, existing, factory, !needsUpdating);
+          }
+          afterRead(key, existing);
+          _stats.recordHits(1);
+          return value;
+        }
+      }
+    }
+    return null;
+  }
+
+  // Restores the value for the passed key from the off-heap tier or the startup
+  //   snapshot into the passed container.  Returns true if restored.  Assumes
+  //   container lock is held.
+  private boolean restore(S key, ValueContainer<T> container) {
+    return promote(key, container) || restoreFromSnapshot(key, container);
+  }
+
+  // Restores the value for the passed key from the off-heap tier, if present
+  //   and not expired, into the passed container.  Returns true if restored.
+  //   Assumes container lock is held.
+  private boolean promote(S key, ValueContainer<T> container) {
+    if (_offHeap == null) {
+      return false;
+    }
+    OffHeapStore.StoredValue stored = _offHeap.remove(key);
+    if (stored == null || (_expiry != null && stored._expirationTime - _ticker.getAsLong() <= 0)) {
+      return false;
+    }
+    try {
+      publishValue(key, container, _valueCodec.decode(stored._bytes), stored._expirationTime);
+      return true;
+    }
+    catch (Exception e) {
+      LOG.warn("Unable to decode off-heap value with ID " + key + "; it will be reloaded", e);
+      return false;
+    }
+  }
+
+  // Restores the value for the passed key from the startup snapshot, if present
+  //   and not expired, into the passed container.  Returns true if restored.
+  //   Assumes container lock is held.
+  private boolean restoreFromSnapshot(S key, ValueContainer<T> container) {
+    CacheSnapshot<S,T> snapshot = _snapshot;
+    if (snapshot == null) {
+      return false;
+    }
+    RestoredValue<T> restored = snapshot.take(key);
+    if (snapshot.size() == 0) {
+      // every entry has been restored or discarded; release the mapped file
+      _snapshot = null;
+    }
+    if (restored == null) {
+      return false;
+    }
+    long expirationTime = 0;
+    if (_expiry != null) {
+      long now = _ticker.getAsLong();
+      long duration = (restored._remainingMillis == CacheSnapshot.NO_EXPIRATION ?
+          _expiry.expireAfterCreate(key, restored._value, now) :
+          TimeUnit.MILLISECONDS.toNanos(restored._remainingMillis));
+      expirationTime = toExpirationTime(now, duration);
+    }
+    publishValue(key, container, restored._value, expirationTime);
+    return true;
+  }
+
+  // queues an off-heap write and ensures the queue is processed on a maintenance thread
+  private void queueOffHeapWrite(Runnable write) {
+    _offHeapWrites.add(write);
+    if (_offHeapWritesScheduled.compareAndSet(false, true)) {
+      CacheMaintenance.execute(() -> {
+        _offHeapWritesScheduled.set(false);
+        processOffHeapWrites();
+      });
+    }
+  }
+
+  // applies queued off-heap writes in order; only one thread applies them at a time
+  private void processOffHeapWrites() {
+    while (!_offHeapWrites.isEmpty() && _offHeapWriteLock.tryLock()) {
       try {
-        _cacheLock.lock();
-        _cache.remove(key);
-        // value may have been removed while we were creating it; assume this
-        //   new version is up-to-date enough and reinsert
-        _cache.put(key, container);
+        applyOffHeapWrites();
       }
       finally {
-        _cacheLock.unlock();
+        _offHeapWriteLock.unlock();
       }
-      result = _cloner.createCachesafeClone(container.value);
     }
-    finally {
-      container.lock.unlock();
+  }
+
+  // assumes off-heap write lock is held
+  private void applyOffHeapWrites() {
+    Runnable write;
+    while ((write = _offHeapWrites.poll()) != null) {
+      write.run();
+    }
+  }
+
+  // encodes and stores a value evicted from the heap tier, keeping its tags
+  private void demote(S key, T value, long expirationTime, Set<String> tags) {
+    try {
+      _offHeap.put(key, _valueCodec.encode(value), expirationTime, tags);
+    }
+    catch (Exception e) {
+      LOG.debug("Value with ID " + key + " will not be kept off-heap", e);
+    }
+  }
+
+  // calls the passed value factory method, recording its duration and outcome
+  private <R> R timeLoad(SupplierWithException<R> load) throws Exception {
+    long start = _ticker.getAsLong();
+    try {
+      R result = load.get();
+      _stats.recordLoadSuccess(_ticker.getAsLong() - start);
+      return result;
+    }
+    catch (Exception e) {
+      _stats.recordLoadFailure(_ticker.getAsLong() - start);
+      throw e;
+    }
+  }
+
+  // current time per this cache's ticker; for loads timed outside this class
+  long currentTime() {
+    return _ticker.getAsLong();
+  }
+
+  // records the outcome of a load performed outside this class (e.g. asynchronously)
+  void recordLoad(long loadTimeNanos, boolean succeeded) {
+    if (succeeded) {
+      _stats.recordLoadSuccess(loadTimeNanos);
+    }
+    else {
+      _stats.recordLoadFailure(loadTimeNanos);
+    }
+  }
+
+  // acquires the passed lock, recording the time spent waiting if it was held
+  private void acquire(Lock lock) {
+    if (!lock.tryLock()) {
+      long start = System.nanoTime();
+      lock.lock();
+      _stats.recordLockWait(System.nanoTime() - start);
     }
-    return result;
+  }
+
+  // Handles failure to create a value.  Without a failure backoff, the container
+  //   is removed so the next request retries; with one, the failure is kept in
+  //   the container until the next retry time.  Assumes container lock is held.
+  private ValueProductionException onCreationFailure(S key, ValueContainer<T> container, Exception e) {
+    ValueProductionException failure = convertException(e);
+    if (_failureBackoffInitialNanos == 0) {
+      removeContainer(key, container, null);
+      return failure;
+    }
+    // initial delay doubles with each consecutive failure, up to the maximum
+    int doublings = Math.min(container.numFailures, Long.numberOfLeadingZeros(_failureBackoffInitialNanos) - 1);
+    long delay = Math.min(_failureBackoffInitialNanos << doublings, _failureBackoffMaximumNanos);
+    container.failure = failure;
+    container.numFailures++;
+    container.retryTime = _ticker.getAsLong() + delay;
+    LOG.warn("Failed to create value with ID " + key + " (" + container.numFailures +
+        " consecutive failures); will not retry for " + (delay / 1000000) + "ms", e);
+    return failure;
   }
 
   private ValueProductionException convertException(Exception e) {
@@ -208,40 +975,425 @@ public class InMemoryCache<S,T> {
         (ValueProductionException) e : new ValueProductionException(e));
   }
 
-  // Returns an empty value container placed in the map at the given key
+  // Returns the value container for the given key, placing an empty one in the map if absent
   private ValueContainer<T> getValueContainerById(S key) {
     ValueContainer<T> container = _cache.get(key);
     if (container == null) {
+      ValueContainer<T> newContainer = new ValueContainer<T>();
+      // check again in case value added by another thread since our lookup
+      container = _cache.putIfAbsent(key, newContainer);
+      if (container == null) {
+        container = newContainer;
+        ValueContainer<T> added = newContainer;
+        afterWrite(() -> {
+          // skip if removed before the eviction order caught up
+          if (!added.retired) {
+            ValueContainer<T> replaced = _resident.put(key, added);
+            if (replaced == null) {
+              _policy.recordInsertion(key, isWeighted() ? 0 : 1);
+            }
+            else {
+              // replaced a removed container whose removal is still pending
+              _totalWeight -= replaced.weight;
+              if (isWeighted()) {
+                _policy.recordUpdate(key, 0);
+              }
+              _policy.recordAccess(key);
+            }
+          }
+        });
+      }
+    }
+    return container;
+  }
+
+  // Removes the passed container from the cache if it is still mapped to the key.
+  //   The cause is recorded in statistics unless null (i.e. value never existed).
+  private void removeContainer(S key, ValueContainer<T> container, RemovalCause cause) {
+    if (_cache.remove(key, container)) {
+      container.retired = true;
+      untag(key, container);
+      if (cause != null) {
+        _stats.recordRemoval(cause);
+        if (_offHeap != null) {
+          queueOffHeapWrite(() -> _offHeap.invalidate(key));
+        }
+      }
+      afterWrite(() -> {
+        if (_resident.remove(key, container)) {
+          _totalWeight -= container.weight;
+          _policy.recordRemoval(key);
+          if (_timerWheel != null) {
+            _timerWheel.deschedule(key);
+          }
+        }
+      });
+    }
+  }
+
+  // Indexes the passed container under the tags of its new value, removing it
+  //   from tags no longer assigned.  Assumes container lock is held.
+  private void retag(S key, ValueContainer<T> container, T value) {
+    Collection<String> assigned = _tagger.getTags(key, value);
+    Set<String> tags = (assigned == null || assigned.isEmpty() ? Collections.emptySet() :
+        Collections.unmodifiableSet(new LinkedHashSet<>(assigned)));
+    for (String tag : container.tags) {
+      if (!tags.contains(tag)) {
+        unindex(tag, key, container);
+      }
+    }
+    for (String tag : tags) {
+      _tagIndex.computeIfAbsent(tag, t -> new ConcurrentHashMap<>()).put(key, container);
+    }
+    container.tags = tags;
+    // a concurrent eviction may have missed the new tags; removals set retired
+    //   before reading tags, so one of the two threads cleans up
+    if (container.retired) {
+      untag(key, container);
+    }
+  }
+
+  // removes a retired container from the tag index
+  private void untag(S key, ValueContainer<T> container) {
+    for (String tag : container.tags) {
+      unindex(tag, key, container);
+    }
+  }
+
+  private void unindex(String tag, S key, ValueContainer<T> container) {
+    _tagIndex.computeIfPresent(tag, (t, entries) -> {
+      entries.remove(key, container);
+      return entries.isEmpty() ? null : entries;
+    });
+  }
+
+  private boolean isWeighted() {
+    return _maximumWeight > 0;
+  }
+
+  private boolean isExpired(ValueContainer<T> container) {
+    return _expiry != null && container.expirationTime - _ticker.getAsLong() <= 0;
+  }
+
+  private boolean isRefreshDue(ValueContainer<T> container) {
+    return _refreshAfterWriteNanos > 0 &&
+        _ticker.getAsLong() - container.writeTime >= _refreshAfterWriteNanos;
+  }
+
+  // Updates the passed container's value on the refresh executor unless a
+  //   refresh of it is already pending.  If reload is true, the value is
+  //   reloaded because it is due for refresh after write; otherwise it is
+  //   updated because the factory deemed it stale.  A failed refresh leaves
+  //   the current value in place.
+  private void refreshAsync(S key, ValueContainer<T> container, ValueFactory<S,T> factory, boolean reload) {
+    if (!container.refreshing.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      _refreshExecutor.execute(() -> {
+        try {
+          container.lock.lock();
+          // skip if removed, or already refreshed by another thread
+          T previousValue = container.value;
+          if (!container.retired && previousValue != null &&
+              (reload ? isRefreshDue(container) : factory.valueNeedsUpdating(previousValue))) {
+            setValue(key, container, timeLoad(() -> reload ? factory.getNewValue(key) :
+                factory.getUpdatedValue(key, previousValue)), false);
+          }
+        }
+        catch (Exception e) {
+          LOG.warn("ItemFetcher of type " + factory.getClass().getName() +
+              " failed to refresh value with ID " + key + "; current value retained", e);
+        }
+        finally {
+          container.lock.unlock();
+          container.refreshing.set(false);
+        }
+      });
+    }
+    catch (RejectedExecutionException e) {
+      container.refreshing.set(false);
+      LOG.warn("Unable to schedule refresh of value with ID " + key, e);
+    }
+  }
+
+  private static long toExpirationTime(long currentTime, long duration) {
+    return currentTime + Math.min(Math.max(0, duration), MAXIMUM_EXPIRY);
+  }
+
+  // Stores a newly loaded or updated value and reports its weight and lifetime
+  //   to the eviction policy and timer wheel.  The lifetime is set before the
+  //   value is published so no reader sees a value with a stale lifetime.
+  //   Assumes container lock is held.
+  private void setValue(S key, ValueContainer<T> container, T value, boolean created) {
+    long expirationTime = 0;
+    if (_expiry != null) {
+      long now = _ticker.getAsLong();
+      long duration = created ?
+          _expiry.expireAfterCreate(key, value, now) :
+          _expiry.expireAfterUpdate(key, value, now, container.expirationTime - now);
+      expirationTime = toExpirationTime(now, duration);
+    }
+    publishValue(key, container, value, expirationTime);
+  }
+
+  // publishes a value with a known expiration time; see setValue()
+  private void publishValue(S key, ValueContainer<T> container, T value, long expirationTime) {
+    container.expirationTime = expirationTime;
+    if (_refreshAfterWriteNanos > 0) {
+      container.writeTime = _ticker.getAsLong();
+    }
+    container.value = value;
+    container.failure = null;
+    container.numFailures = 0;
+    if (_tagger != null) {
+      retag(key, container, value);
+    }
+    if (isWeighted() || _expiry != null) {
+      long weight = isWeighted() ? Math.max(0, _weigher.weigh(key, container.value)) : 0;
+      afterWrite(() -> {
+        if (_resident.get(key) == container) {
+          if (isWeighted()) {
+            _totalWeight += weight - container.weight;
+            container.weight = weight;
+            _policy.recordUpdate(key, weight);
+          }
+          if (_timerWheel != null) {
+            _timerWheel.schedule(key, container.expirationTime);
+          }
+        }
+      });
+    }
+  }
+
+  private boolean isOverCapacity() {
+    return _resident.size() > _capacity || (isWeighted() && _totalWeight > _maximumWeight);
+  }
+
+  // Records a read of the passed key in the eviction order and extends its
+  //   lifetime if expiry is access-based.  The timer wheel is not touched; it
+  //   reschedules entries whose lifetime was extended when their old time comes.
+  private void afterRead(S key, ValueContainer<T> container) {
+    if (_expiry != null && _expiry.isAccessBased()) {
+      long now = _ticker.getAsLong();
+      container.expirationTime = toExpirationTime(now, _expiry.expireAfterRead(
+          key, container.value, now, container.expirationTime - now));
+    }
+    if (_readBuffer == null) {
+      try {
+        acquire(_evictionLock);
+        _policy.recordAccess(key);
+      }
+      finally {
+        _evictionLock.unlock();
+      }
+    }
+    else if (_readBuffer.offer(key)) {
+      scheduleDrain();
+    }
+  }
+
+  // applies a structural change to the eviction order and trims if necessary
+  private void afterWrite(Runnable orderUpdate) {
+    if (_writeBuffer == null) {
       try {
-        _cacheLock.lock();
-        // check again to see if value added while waiting for cache access
-        container = _cache.get(key);
-        if (container == null) {
-          // empty value container
-          container = new ValueContainer<T>();
-          _cache.put(key, container);
-          checkCapacity();
+        acquire(_evictionLock);
+        orderUpdate.run();
+        if (drainBuffers(MAX_EVICTIONS_PER_OPERATION)) {
+          scheduleMaintenance();
         }
       }
       finally {
-        _cacheLock.unlock();
+        _evictionLock.unlock();
       }
     }
-    return container;
+    else {
+      _writeBuffer.add(orderUpdate);
+      scheduleDrain();
+    }
+  }
+
+  // Drains the concurrent engine's buffers if the eviction lock is free.  If it
+  //   is not, the holder will see the request flag after releasing and drain again.
+  private void scheduleDrain() {
+    _drainRequested.set(true);
+    while (_drainRequested.get() && _evictionLock.tryLock()) {
+      boolean overCapacity;
+      try {
+        _drainRequested.set(false);
+        overCapacity = drainBuffers(MAX_EVICTIONS_PER_OPERATION);
+      }
+      finally {
+        _evictionLock.unlock();
+      }
+      if (overCapacity) {
+        scheduleMaintenance();
+      }
+    }
+  }
+
+  // Applies any buffered updates, reclaims expired entries, and evicts if over
+  //   capacity.  Assumes eviction lock is held; returns true if still over capacity.
+  private boolean drainBuffers(int maxEvictions) {
+    if (_readBuffer != null) {
+      _readBuffer.drainTo(_policy::recordAccess);
+      Runnable orderUpdate;
+      while ((orderUpdate = _writeBuffer.poll()) != null) {
+        orderUpdate.run();
+      }
+    }
+    if (_timerWheel != null) {
+      long now = _ticker.getAsLong();
+      _timerWheel.advance(now, key -> expireIfDue(key, now));
+    }
+    return evictEntries(maxEvictions);
+  }
+
+  // Removes the entry for a key whose timer has fired, unless its lifetime has
+  //   been extended since it was scheduled.  Assumes eviction lock is held.
+  private void expireIfDue(S key, long now) {
+    ValueContainer<T> container = _resident.get(key);
+    if (container == null || container.value == null) {
+      // not loaded yet; the load will schedule it
+      return;
+    }
+    if (container.expirationTime - now > 0) {
+      _timerWheel.schedule(key, container.expirationTime);
+      return;
+    }
+    _resident.remove(key);
+    _totalWeight -= container.weight;
+    _policy.recordRemoval(key);
+    if (_cache.remove(key, container)) {
+      container.retired = true;
+      untag(key, container);
+      _stats.recordRemoval(RemovalCause.EXPIRED);
+      if (_offHeap != null) {
+        queueOffHeapWrite(() -> _offHeap.invalidate(key));
+      }
+    }
+  }
+
+  // Evicts entries chosen by the eviction policy if over capacity (or a chunk
+  //   is being trimmed), but no more than the passed maximum.  Assumes eviction
+  //   lock is held; returns true if eviction remains to be done after this call.
+  private boolean evictEntries(int maxEvictions) {
+    // chunked trimming removes a fixed number of entries once capacity is exceeded;
+    //   like any excess, what the caller does not trim is left to maintenance
+    boolean chunked = (_numToTrimOnCapacity != INCREMENTAL_EVICTION);
+    if (chunked && _pendingTrim == 0 && isOverCapacity()) {
+      _pendingTrim = Math.max(_resident.size() - _capacity, Math.min(_numToTrimOnCapacity, _resident.size()));
+      LOG.debug("Capacity reached, will trim " + _pendingTrim + " cached items.");
+    }
+    if (!isOverCapacity() && _pendingTrim == 0) {
+      return false;
+    }
+    int numEvicted = 0;
+    while (numEvicted < maxEvictions && (_pendingTrim > 0 || isOverCapacity())) {
+      S victim = _policy.evict();
+      if (victim == null) {
+        _pendingTrim = 0;
+        break;
+      }
+      if (_pendingTrim > 0) {
+        _pendingTrim--;
+      }
+      ValueContainer<T> container = _resident.remove(victim);
+      if (_timerWheel != null) {
+        _timerWheel.deschedule(victim);
+      }
+      if (container != null) {
+        _totalWeight -= container.weight;
+        if (_cache.remove(victim, container)) {
+          container.retired = true;
+          untag(victim, container);
+          _stats.recordRemoval(RemovalCause.SIZE);
+          T value = container.value;
+          if (_offHeap != null && value != null) {
+            long expirationTime = container.expirationTime;
+            Set<String> tags = container.tags;
+            queueOffHeapWrite(() -> demote(victim, value, expirationTime, tags));
+          }
+        }
+      }
+      numEvicted++;
+    }
+    _lastTrimDate = new Date();
+    return _pendingTrim > 0 || isOverCapacity();
+  }
+
+  // Returns once the cache is within capacity, waiting for the eviction lock if
+  //   need be, so writes can keep capacity strict on the concurrent engine while
+  //   reads stay lock-free.  Only an excess is evicted here; the rest of a
+  //   trimmed chunk is left to maintenance.
+  void enforceCapacity() {
+    if (!isWeighted() && _cache.size() <= _capacity) {
+      return;
+    }
+    boolean remaining;
+    try {
+      _evictionLock.lock();
+      _drainRequested.set(false);
+      do {
+        remaining = drainBuffers(MAX_EVICTIONS_PER_OPERATION);
+      }
+      while (isOverCapacity());
+    }
+    finally {
+      _evictionLock.unlock();
+    }
+    if (remaining) {
+      scheduleMaintenance();
+    }
+  }
+
+  // evicts any remaining excess on a maintenance thread, in bounded batches so
+  //   the eviction lock is never held for long
+  private void scheduleMaintenance() {
+    if (_maintenanceScheduled.compareAndSet(false, true)) {
+      CacheMaintenance.execute(() -> {
+        _maintenanceScheduled.set(false);
+        boolean overCapacity = true;
+        while (overCapacity) {
+          try {
+            _evictionLock.lock();
+            overCapacity = drainBuffers(MAX_EVICTIONS_PER_MAINTENANCE_BATCH);
+          }
+          finally {
+            _evictionLock.unlock();
+          }
+        }
+      });
+    }
   }
 
-  // assumes cache is locked
-  private void checkCapacity() {
-    if (_cache.size() > _capacity) {
-      // we know least recently accessed entries appear first in map iteration
-      List<S> allKeys = new ArrayList<>(_cache.keySet());
-      int numToTrim = Math.min(_numToTrimOnCapacity, _cache.size());
-      LOG.debug("Capacity reached, will trim " + numToTrim + " cached items.");
-      _lastTrimDate = new Date();
-      for (int i = 0; i < numToTrim; i++) {
-        S id = allKeys.get(i);
-        LOG.debug("Trimming item with ID " + id);
-        _cache.remove(id);
+  /**
+   * Performs any pending maintenance (buffered eviction order updates,
+   * reclamation of expired entries, capacity trimming, and off-heap writes).
+   * Maintenance is normally performed as a side effect of cache access or on
+   * a background thread, so calling this method is never required for
+   * correctness.
+   */
+  public void cleanUp() {
+    boolean overCapacity = true;
+    while (overCapacity) {
+      try {
+        _evictionLock.lock();
+        _drainRequested.set(false);
+        overCapacity = drainBuffers(MAX_EVICTIONS_PER_MAINTENANCE_BATCH);
+      }
+      finally {
+        _evictionLock.unlock();
+      }
+    }
+    if (_offHeap != null) {
+      // wait for any writes in progress on a maintenance thread, then apply the rest
+      try {
+        _offHeapWriteLock.lock();
+        applyOffHeapWrites();
+      }
+      finally {
+        _offHeapWriteLock.unlock();
       }
     }
   }
@@ -252,15 +1404,170 @@ public class InMemoryCache<S,T> {
    * @param ids IDs of items to expire
    */
   public void expireEntries(@SuppressWarnings("unchecked") S... ids) {
+    for (S id : ids) {
+      LOG.debug("Expiring item with ID " + id);
+      ValueContainer<T> container = _cache.get(id);
+      if (container != null) {
+        removeContainer(id, container, RemovalCause.EXPLICIT);
+      }
+      else if (_offHeap != null) {
+        // value may have been evicted to the off-heap tier
+        queueOffHeapWrite(() -> _offHeap.invalidate(id));
+      }
+      CacheSnapshot<S,T> snapshot = _snapshot;
+      if (snapshot != null) {
+        snapshot.discard(id);
+      }
+    }
+  }
+
+  /**
+   * Removes all entries whose values were assigned any of the passed tags by
+   * this cache's tagger.  Entries are found through the tag index, so the cost
+   * is proportional to the number of entries removed.  Entries kept off-heap
+   * or in an unconsumed startup snapshot retain their tags, and matching
+   * entries are removed from those tiers as well.
+   * 
+   * @param tags tags of entries to remove
+   * @return number of entries removed from the heap tier
+   */
+  public int invalidateByTag(String... tags) {
+    if (_tagger == null || tags.length == 0) {
+      return 0;
+    }
+    int numRemoved = 0;
+    for (String tag : tags) {
+      Map<S, ValueContainer<T>> entries = _tagIndex.get(tag);
+      if (entries != null) {
+        for (Entry<S, ValueContainer<T>> entry : entries.entrySet()) {
+          if (invalidate(entry.getKey(), entry.getValue())) {
+            numRemoved++;
+          }
+        }
+      }
+    }
+    Set<String> tagSet = new HashSet<>(Arrays.asList(tags));
+    if (_offHeap != null) {
+      queueOffHeapWrite(() -> _offHeap.invalidateByTags(tagSet));
+    }
+    CacheSnapshot<S,T> snapshot = _snapshot;
+    if (snapshot != null) {
+      snapshot.discardTagged(tagSet);
+    }
+    return numRemoved;
+  }
+
+  /**
+   * Removes all entries whose key and value match the passed predicate.  This
+   * requires a scan of the cache, including the off-heap tier and any
+   * unconsumed startup snapshot, whose values are decoded to be tested
+   * (entries which cannot be decoded are removed); prefer
+   * <code>invalidateByTag()</code> where possible.
+   * 
+   * @param predicate predicate selecting entries to remove
+   * @return number of entries removed from the heap tier
+   */
+  public int invalidateIf(BiPredicate<? super S, ? super T> predicate) {
+    int numRemoved = 0;
+    for (Entry<S, ValueContainer<T>> entry : _cache.entrySet()) {
+      T value = entry.getValue().value;
+      if (value != null && predicate.test(entry.getKey(), value) &&
+          invalidate(entry.getKey(), entry.getValue())) {
+        numRemoved++;
+      }
+    }
+    if (_offHeap != null) {
+      try {
+        _offHeapWriteLock.lock();
+        applyOffHeapWrites();
+        _offHeap.removeIf((key, bytes) -> {
+          try {
+            return predicate.test(key, _valueCodec.decode(bytes));
+          }
+          catch (Exception e) {
+            LOG.warn("Unable to decode off-heap value with ID " + key + "; discarding", e);
+            return true;
+          }
+        });
+      }
+      finally {
+        _offHeapWriteLock.unlock();
+      }
+    }
+    CacheSnapshot<S,T> snapshot = _snapshot;
+    if (snapshot != null) {
+      snapshot.discardIf(predicate::test);
+    }
+    return numRemoved;
+  }
+
+  // Removes the passed container under its lock, so that a load or update in
+  //   progress completes first.  Returns true if removed.
+  private boolean invalidate(S key, ValueContainer<T> container) {
     try {
-      _cacheLock.lock();
-      for (S id : ids) {
-        LOG.debug("Expiring item with ID " + id);
-        _cache.remove(id);
+      acquire(container.lock);
+      if (container.retired || container.value == null) {
+        return false;
       }
+      removeContainer(key, container, RemovalCause.EXPLICIT);
+      return true;
     }
     finally {
-      _cacheLock.unlock();
+      container.lock.unlock();
+    }
+  }
+
+  /**
+   * Writes the cache's current values to its snapshot file, along with any
+   * entries of the snapshot it started from that have not yet been requested.
+   * Values which cannot be encoded are skipped.  This is done periodically
+   * and at shutdown, but may also be called directly (e.g. after warming up).
+   * 
+   * @return number of entries written
+   * @throws IOException if unable to write the snapshot
+   * @throws IllegalStateException if no snapshot file is configured
+   */
+  public synchronized int writeSnapshot() throws IOException {
+    if (_snapshotFile == null) {
+      throw new IllegalStateException("No snapshot file is configured for this cache.");
+    }
+    long now = _ticker.getAsLong();
+    try (CacheSnapshot.Writer<S,T> writer = new CacheSnapshot.Writer<>(_snapshotFile, _keyCodec, _valueCodec)) {
+      for (Entry<S, ValueContainer<T>> entry : _cache.entrySet()) {
+        ValueContainer<T> container = entry.getValue();
+        T value = container.value;
+        if (value == null || container.retired) {
+          continue;
+        }
+        long remainingMillis = CacheSnapshot.NO_EXPIRATION;
+        if (_expiry != null) {
+          long remaining = container.expirationTime - now;
+          if (remaining <= 0) {
+            continue;
+          }
+          remainingMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining));
+        }
+        writer.write(entry.getKey(), value, remainingMillis, container.tags);
+      }
+      CacheSnapshot<S,T> snapshot = _snapshot;
+      if (snapshot != null) {
+        snapshot.copyRemainingTo(writer, key -> {
+          ValueContainer<T> container = _cache.get(key);
+          return container != null && container.value != null;
+        });
+      }
+      return writer.commit();
+    }
+  }
+
+  // writes a snapshot from a background or shutdown task, logging any failure
+  private void writeSnapshotQuietly() {
+    try {
+      int numWritten = writeSnapshot();
+      LOG.debug("Wrote " + numWritten + " entries to cache snapshot " + _snapshotFile);
+    }
+    catch (Exception e) {
+      LOG.warn("Unable to write cache snapshot " + _snapshotFile, e);
     }
   }
 
@@ -273,4 +1580,3 @@ public class InMemoryCache<S,T> {
     return _cache.size();
   }
 }
-
@@ -0,0 +1,63 @@
+package org.gusdb.fgputil.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Least recently used eviction policy.  This is the default policy of
+ * InMemoryCache and evicts the key whose last access is oldest.
+ *
+ * @author rdoherty
+ *
+ * @param <K> type of cache key
+ */
+public class LruPolicy<K> implements EvictionPolicy<K> {
+
+  // access-ordered; least recently used keys appear first in iteration
+  private final LinkedHashMap<K,Boolean> _order = new LinkedHashMap<>(16, 0.75f, true);
+
+  /**
+   * Creates an LRU policy.  The maximum is accepted only so this constructor
+   * can serve as a policy factory; LRU ordering does not depend on it.
+   *
+   * @param maximum capacity or maximum weight of the cache using this policy
+   */
+  public LruPolicy(long maximum) { }
+
+  @Override
+  public void recordInsertion(K key, long weight) {
+    _order.put(key, Boolean.TRUE);
+  }
+
+  @Override
+  public void recordUpdate(K key, long weight) {
+    // weight does not affect LRU order
+  }
+
+  @Override
+  public void recordAccess(K key) {
+    // moves key to the back of the order if present
+    _order.get(key);
+  }
+
+  @Override
+  public void recordRemoval(K key) {
+    _order.remove(key);
+  }
+
+  @Override
+  public K evict() {
+    Iterator<K> keys = _order.keySet().iterator();
+    if (!keys.hasNext()) {
+      return null;
+    }
+    K victim = keys.next();
+    keys.remove();
+    return victim;
+  }
+
+  @Override
+  public int size() {
+    return _order.size();
+  }
+}
@@ -1,48 +1,64 @@
 package org.gusdb.fgputil.cache;
 
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import org.gusdb.fgputil.cache.CacheConfig.Engine;
+
 
 /**
- * Represents an InMemoryCache whose key/value pairs must be explicitly added.  Implements the Map
- * interface for familiarity but iteration through entries is not supported.  Entries in the ManagedMap
- * are purged using trimming characteristics passed to constructor, or default if none are passed.
- * 
+ * Represents an InMemoryCache whose key/value pairs must be explicitly added.  Implements the
+ * ConcurrentMap interface: reads take no locks, updates of a key (including compute and merge
+ * operations) are atomic, and iteration is weakly consistent, as with ConcurrentHashMap.  Entries
+ * in the ManagedMap are purged using trimming characteristics passed to constructor, or default if
+ * none are passed.  Maps created without a configuration use the concurrent engine, but each
+ * write returns only once the map is back within its capacity.  Maps configured with the strict
+ * engine instead record every read under a map-wide lock.
+ *
+ * Like ConcurrentHashMap, null keys and values are not permitted.
+ *
  * @author rdoherty
  *
  * @param <S> type of key
  * @param <T> type of value
  */
-public class ManagedMap<S,T> extends InMemoryCache<S,T> implements Map<S,T> {
-
-  // factory used to insert a new item into the cache
-  private ValueFactory<S,T> getValueFactory(T value){
-    return key -> value;
-  }
-
-  // factory used to create items not found; if item is not found, we throw exception
-  private ValueFactory<S,T> getNotFoundFactory() {
-    return key -> {
-      throw new ValueProductionException("Key not found in managed map.");
-    };
-  }
+public class ManagedMap<S,T> extends InMemoryCache<S,T> implements ConcurrentMap<S,T> {
 
   /**
    * Creates a managed map with default settings.
    */
   public ManagedMap() {
-    super();
+    this(new CacheConfig<S,T>().setEngine(Engine.CONCURRENT));
   }
 
   /**
    * Creates a managed map with custom capacity and trimming characteristics.
-   * 
+   *
    * @param capacity maximum number of objects that can be cached
    * @param numToTrimOnCapacity number of objects to trim when capacity reached
    */
   public ManagedMap(int capacity, int numToTrimOnCapacity) {
-    super(capacity, numToTrimOnCapacity);
+    this(new CacheConfig<S,T>()
+        .setEngine(Engine.CONCURRENT)
+        .setCapacity(capacity)
+        .setNumToTrimOnCapacity(numToTrimOnCapacity));
+  }
+
+  /**
+   * Creates a managed map with the passed cache configuration.
+   *
+   * @param config cache configuration
+   */
+  public ManagedMap(CacheConfig<S,T> config) {
+    super(config);
   }
 
   /**
@@ -65,81 +81,125 @@ public class ManagedMap<S,T> extends InMemoryCache<S,T> implements Map<S,T> {
    * @param key possible key to value in the map
    * @return true if the passed key represents a value in the map, else false
    */
-  @SuppressWarnings("unchecked")
   @Override
   public boolean containsKey(Object key) {
-    try {
-      getValue((S)key, getNotFoundFactory());
-      return true;
-    }
-    catch (ValueProductionException e) {
-      return false;
-    }
+    return get(key) != null;
   }
 
   /**
    * Returns the value associated with the passed key
-   * 
+   *
    * @param key possible key to value in the map
    * @return the value associated with the passed key, or null if that key does not exist
    */
   @SuppressWarnings("unchecked")
   @Override
   public T get(Object key) {
-    synchronized(this) {
-      try {
-        return getValue((S)key, getNotFoundFactory());
-      }
-      catch (ValueProductionException e) {
-        return null;
-      }
-    }
+    return getIfPresent((S)Objects.requireNonNull(key));
   }
 
   /**
    * Puts a new entry into the managed map
-   * 
+   *
    * @param key new key
    * @param value new item
    * @return previous value associated with the passed key if one exists, else null
    */
   @Override
   public T put(S key, T value) {
-    synchronized(this) {
-      try {
-        T oldValue = get(key);
-        if (oldValue != null) {
-          remove(key);
-        }
-        getValue(key, getValueFactory(value));
-        return value;
-      }
-      catch (ValueProductionException e) {
-        // this should never happen
-        throw new RuntimeException(e);
-      }
-    }
+    Objects.requireNonNull(value);
+    return write(key, (k, current) -> value, true);
+  }
+
+  /**
+   * Puts a new entry into the managed map if none exists for the passed key
+   *
+   * @param key new key
+   * @param value new item
+   * @return value already associated with the passed key if one exists, else null
+   */
+  @Override
+  public T putIfAbsent(S key, T value) {
+    Objects.requireNonNull(value);
+    return write(key, (k, current) -> current != null ? current : value, true);
   }
 
   /**
    * Removes the entry associated with the passed key
-   * 
+   *
    * @param key possible key to item in the map
    * @return previous value associated with the passed key if one exists, else null
    */
   @SuppressWarnings("unchecked")
   @Override
   public T remove(Object key) {
-    synchronized(this) {
-      T oldValue = get(key);
-      expireEntries((S)key);
-      return oldValue;
+    return write((S)Objects.requireNonNull(key), (k, current) -> null, true);
+  }
+
+  /**
+   * Removes the entry associated with the passed key if it maps to the passed value
+   *
+   * @param key possible key to item in the map
+   * @param value expected value
+   * @return true if the entry was removed, else false
+   */
+  @SuppressWarnings("unchecked")
+  @Override
+  public boolean remove(Object key, Object value) {
+    if (key == null || value == null) {
+      return false;
     }
+    T previous = write((S)key, (k, current) -> value.equals(current) ? null : current, true);
+    return value.equals(previous);
+  }
+
+  @Override
+  public boolean replace(S key, T oldValue, T newValue) {
+    Objects.requireNonNull(oldValue);
+    Objects.requireNonNull(newValue);
+    T previous = write(key, (k, current) -> oldValue.equals(current) ? newValue : current, true);
+    return oldValue.equals(previous);
+  }
+
+  @Override
+  public T replace(S key, T value) {
+    Objects.requireNonNull(value);
+    return write(key, (k, current) -> current == null ? null : value, true);
+  }
+
+  @Override
+  public T computeIfAbsent(S key, Function<? super S, ? extends T> mappingFunction) {
+    Objects.requireNonNull(mappingFunction);
+    // avoid taking the key's lock when the value is already present
+    T present = get(key);
+    return present != null ? present : write(key, (k, current) ->
+        current != null ? current : mappingFunction.apply(k), false);
+  }
+
+  @Override
+  public T computeIfPresent(S key, BiFunction<? super S, ? super T, ? extends T> remappingFunction) {
+    Objects.requireNonNull(remappingFunction);
+    return write(key, (k, current) ->
+        current == null ? null : remappingFunction.apply(k, current), false);
+  }
+
+  @Override
+  public T compute(S key, BiFunction<? super S, ? super T, ? extends T> remappingFunction) {
+    Objects.requireNonNull(remappingFunction);
+    return write(key, remappingFunction, false);
+  }
+
+  @Override
+  public T merge(S key, T value, BiFunction<? super T, ? super T, ? extends T> remappingFunction) {
+    Objects.requireNonNull(value);
+    Objects.requireNonNull(remappingFunction);
+    return write(key, (k, current) ->
+        current == null ? value : remappingFunction.apply(current, value), false);
   }
 
   /**
    * Puts all entries in the passed map into this one
-   * 
+   *
    * @param map of values
    */
   @Override
@@ -150,44 +210,189 @@ public class ManagedMap<S,T> extends InMemoryCache<S,T> implements Map<S,T> {
   }
 
   /**
-   * Unsupported due to InMemoryCache limitations
+   * Removes all entries present when called; entries added concurrently may remain
    */
   @Override
   public void clear() {
-    // TODO: implement - no reason this can't be done relatively easily
-    throw new UnsupportedOperationException();
+    for (Iterator<S> keys = keySet().iterator(); keys.hasNext(); ) {
+      keys.next();
+      keys.remove();
+    }
   }
 
   /**
-   * Unsupported due to InMemoryCache limitations
+   * Scans the map for the passed value; runs in time linear to the size of the map
    */
   @Override
   public boolean containsValue(Object value) {
-    throw new UnsupportedOperationException();
+    Objects.requireNonNull(value);
+    return values().contains(value);
   }
 
   /**
-   * Unsupported due to InMemoryCache limitations
+   * @return weakly consistent view of the keys in this map
    */
   @Override
   public Set<S> keySet() {
-    throw new UnsupportedOperationException();
+    return new AbstractSet<S>() {
+      @Override
+      public Iterator<S> iterator() {
+        Iterator<Entry<S,T>> entries = entrySet().iterator();
+        return new Iterator<S>() {
+          @Override public boolean hasNext() { return entries.hasNext(); }
+          @Override public S next() { return entries.next().getKey(); }
+          @Override public void remove() { entries.remove(); }
+        };
+      }
+      @Override
+      public boolean contains(Object key) {
+        return containsKey(key);
+      }
+      @Override
+      public boolean remove(Object key) {
+        return ManagedMap.this.remove(key) != null;
+      }
+      @Override
+      public int size() {
+        return ManagedMap.this.size();
+      }
+    };
   }
 
   /**
-   * Unsupported due to InMemoryCache limitations
+   * @return weakly consistent view of the values in this map
    */
   @Override
   public Collection<T> values() {
-    throw new UnsupportedOperationException();
+    return new AbstractCollection<T>() {
+      @Override
+      public Iterator<T> iterator() {
+        Iterator<Entry<S,T>> entries = entrySet().iterator();
+        return new Iterator<T>() {
+          @Override public boolean hasNext() { return entries.hasNext(); }
+          @Override public T next() { return entries.next().getValue(); }
+          @Override public void remove() { entries.remove(); }
+        };
+      }
+      @Override
+      public int size() {
+        return ManagedMap.this.size();
+      }
+    };
   }
 
   /**
-   * Unsupported due to InMemoryCache limitations
+   * Returns a weakly consistent view of the entries in this map.  Iteration never
+   * throws ConcurrentModificationException; removing an entry through an iterator
+   * removes it from the map only if it still maps to the value returned, and
+   * setting an entry's value writes through to the map.
+   *
+   * @return view of the entries in this map
    */
   @Override
-  public Set<java.util.Map.Entry<S, T>> entrySet() {
-    throw new UnsupportedOperationException();
+  public Set<Entry<S,T>> entrySet() {
+    return new AbstractSet<Entry<S,T>>() {
+      @Override
+      public Iterator<Entry<S,T>> iterator() {
+        Iterator<Entry<S,T>> entries = entryIterator();
+        return new Iterator<Entry<S,T>>() {
+
+          private Entry<S,T> _last = null;
+
+          @Override
+          public boolean hasNext() {
+            return entries.hasNext();
+          }
+
+          @Override
+          public Entry<S,T> next() {
+            _last = new WriteThroughEntry(entries.next());
+            return _last;
+          }
+
+          @Override
+          public void remove() {
+            if (_last == null) {
+              throw new IllegalStateException();
+            }
+            ManagedMap.this.remove(_last.getKey(), _last.getValue());
+            _last = null;
+          }
+        };
+      }
+      @Override
+      public boolean contains(Object o) {
+        if (!(o instanceof Entry)) {
+          return false;
+        }
+        Entry<?,?> entry = (Entry<?,?>)o;
+        T value = entry.getKey() == null ? null : get(entry.getKey());
+        return value != null && value.equals(entry.getValue());
+      }
+      @Override
+      public boolean remove(Object o) {
+        return o instanceof Entry && ManagedMap.this.remove(((Entry<?,?>)o).getKey(), ((Entry<?,?>)o).getValue());
+      }
+      @Override
+      public int size() {
+        return ManagedMap.this.size();
+      }
+    };
   }
 
+  // entry returned by entry set iterators; setting its value puts it into the map
+  private class WriteThroughEntry implements Entry<S,T> {
+
+    private final S _key;
+    private T _value;
+
+    WriteThroughEntry(Entry<S,T> entry) {
+      _key = entry.getKey();
+      _value = entry.getValue();
+    }
+
+    @Override
+    public S getKey() {
+      return _key;
+    }
+
+    @Override
+    public T getValue() {
+      return _value;
+    }
+
+    @Override
+    public T setValue(T value) {
+      T previous = _value;
+      put(_key, value);
+      _value = value;
+      return previous;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Entry)) {
+        return false;
+      }
+      Entry<?,?> entry = (Entry<?,?>)o;
+      return _key.equals(entry.getKey()) && _value.equals(entry.getValue());
+    }
+
+    @Override
+    public int hashCode() {
+      return _key.hashCode() ^ _value.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return _key + "=" + _value;
+    }
+  }
+
+  // updates the passed key, then trims the map back to capacity if necessary
+  private T write(S key, BiFunction<? super S, ? super T, ? extends T> remapping, boolean returnPrevious) {
+    T result = updateValue(key, remapping, returnPrevious);
+    enforceCapacity();
+    return result;
+  }
 }
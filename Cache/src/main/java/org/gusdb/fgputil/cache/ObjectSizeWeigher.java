@@ -0,0 +1,186 @@
+package org.gusdb.fgputil.cache;
+
+import static org.gusdb.fgputil.runtime.JvmUtil.OBJECT_HEADER_SIZE;
+import static org.gusdb.fgputil.runtime.JvmUtil.OBJECT_SIZE_PADDING_FACTOR;
+import static org.gusdb.fgputil.runtime.JvmUtil.REFERENCE_SIZE;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Weigher which estimates the number of bytes of heap retained by an entry's
+ * key and value, using the object header, reference, and padding sizes in
+ * <code>JvmUtil</code>.  The object graph is walked by reflection; objects
+ * reached more than once are counted once.  Where reflection into a class is
+ * not permitted (e.g. JDK internals), the class's shallow size is still
+ * counted, and strings, collections, and maps are measured through their
+ * public APIs.
+ *
+ * Estimates are approximate (e.g. they ignore JVM field packing and
+ * compressed oops) but are proportionate, which is what a weight needs to be.
+ * The walk stops after <code>MAX_OBJECTS_VISITED</code> objects so that an
+ * unexpectedly large graph cannot stall a load.
+ *
+ * @author rdoherty
+ *
+ * @param <S> type of cache key
+ * @param <T> type of cached value
+ */
+public class ObjectSizeWeigher<S,T> implements Weigher<S,T> {
+
+  /**
+   * Maximum number of objects visited when weighing a single entry
+   */
+  public static final int MAX_OBJECTS_VISITED = 100000;
+
+  // approximate cost of a cache entry itself (map node, container, lock)
+  private static final long ENTRY_OVERHEAD = align(OBJECT_HEADER_SIZE + 4 * REFERENCE_SIZE) * 3;
+
+  // approximate per-element cost of a collection's internal structure (e.g. a hash node)
+  private static final long ELEMENT_OVERHEAD = align(OBJECT_HEADER_SIZE + 3 * REFERENCE_SIZE + Integer.BYTES);
+
+  // shallow size and followable reference fields of a class
+  private static class ClassLayout {
+    final long _shallowSize;
+    final List<Field> _referenceFields;
+    ClassLayout(long shallowSize, List<Field> referenceFields) {
+      _shallowSize = shallowSize;
+      _referenceFields = referenceFields;
+    }
+  }
+
+  private static final ClassValue<ClassLayout> LAYOUTS = new ClassValue<ClassLayout>() {
+    @Override
+    protected ClassLayout computeValue(Class<?> type) {
+      return computeLayout(type);
+    }
+  };
+
+  @Override
+  public long weigh(S key, T value) {
+    return ENTRY_OVERHEAD + estimateSize(key, value);
+  }
+
+  /**
+   * Estimates the combined number of bytes retained by the passed objects.
+   * Objects reachable from more than one of them are counted once.
+   *
+   * @param objects objects to measure
+   * @return estimated size in bytes
+   */
+  public static long estimateSize(Object... objects) {
+    Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+    Deque<Object> toVisit = new ArrayDeque<>();
+    for (Object obj : objects) {
+      if (obj != null) toVisit.push(obj);
+    }
+    long size = 0;
+    while (!toVisit.isEmpty() && visited.size() < MAX_OBJECTS_VISITED) {
+      Object obj = toVisit.pop();
+      if (!visited.add(obj) || isShared(obj)) {
+        continue;
+      }
+      size += sizeOf(obj, toVisit);
+    }
+    return size;
+  }
+
+  // returns the size of this object alone, queueing objects it references
+  private static long sizeOf(Object obj, Deque<Object> toVisit) {
+    Class<?> type = obj.getClass();
+    if (type.isArray()) {
+      int length = Array.getLength(obj);
+      Class<?> componentType = type.getComponentType();
+      if (!componentType.isPrimitive()) {
+        for (Object element : (Object[])obj) {
+          if (element != null) toVisit.push(element);
+        }
+      }
+      return align(OBJECT_HEADER_SIZE + Integer.BYTES + (long)length * fieldSize(componentType));
+    }
+    long size = LAYOUTS.get(type)._shallowSize;
+    if (obj instanceof String) {
+      // backing array; one byte per char unless non-Latin1 chars are present
+      String str = (String)obj;
+      int bytesPerChar = str.chars().anyMatch(c -> c > 0xFF) ? 2 : 1;
+      return size + align(OBJECT_HEADER_SIZE + Integer.BYTES + (long)str.length() * bytesPerChar);
+    }
+    if (obj instanceof Collection && isJdkClass(type)) {
+      Collection<?> collection = (Collection<?>)obj;
+      for (Object element : collection) {
+        if (element != null) toVisit.push(element);
+      }
+      return size + collection.size() * ELEMENT_OVERHEAD;
+    }
+    if (obj instanceof Map && isJdkClass(type)) {
+      Map<?,?> map = (Map<?,?>)obj;
+      for (Map.Entry<?,?> entry : map.entrySet()) {
+        if (entry.getKey() != null) toVisit.push(entry.getKey());
+        if (entry.getValue() != null) toVisit.push(entry.getValue());
+      }
+      return size + map.size() * ELEMENT_OVERHEAD;
+    }
+    for (Field field : LAYOUTS.get(type)._referenceFields) {
+      try {
+        Object child = field.get(obj);
+        if (child != null) toVisit.push(child);
+      }
+      catch (IllegalAccessException e) {
+        // cannot follow this reference; its shallow cost is already counted
+      }
+    }
+    return size;
+  }
+
+  // objects effectively owned by the JVM or application rather than by a cache entry
+  private static boolean isShared(Object obj) {
+    return obj instanceof Class || obj instanceof Enum || obj instanceof ClassLoader || obj instanceof Thread;
+  }
+
+  private static ClassLayout computeLayout(Class<?> type) {
+    long fieldsSize = 0;
+    List<Field> referenceFields = new ArrayList<>();
+    for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+      // JDK internals are not opened to reflection; count their fields but do not follow them
+      boolean followable = !isJdkClass(c);
+      for (Field field : c.getDeclaredFields()) {
+        if (Modifier.isStatic(field.getModifiers())) {
+          continue;
+        }
+        fieldsSize += fieldSize(field.getType());
+        if (followable && !field.getType().isPrimitive() && field.trySetAccessible()) {
+          referenceFields.add(field);
+        }
+      }
+    }
+    return new ClassLayout(align(OBJECT_HEADER_SIZE + fieldsSize), referenceFields);
+  }
+
+  private static boolean isJdkClass(Class<?> type) {
+    String name = type.getName();
+    return name.startsWith("java.") || name.startsWith("javax.") ||
+        name.startsWith("sun.") || name.startsWith("jdk.");
+  }
+
+  private static long fieldSize(Class<?> type) {
+    if (!type.isPrimitive()) return REFERENCE_SIZE;
+    if (type == long.class || type == double.class) return 8;
+    if (type == int.class || type == float.class) return 4;
+    if (type == short.class || type == char.class) return 2;
+    return 1; // boolean, byte
+  }
+
+  private static long align(long size) {
+    return (size + OBJECT_SIZE_PADDING_FACTOR - 1) / OBJECT_SIZE_PADDING_FACTOR * OBJECT_SIZE_PADDING_FACTOR;
+  }
+}
@@ -0,0 +1,308 @@
+package org.gusdb.fgputil.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiPredicate;
+
+/**
+ * Byte store outside the Java heap, used as a second cache tier for values
+ * evicted from an InMemoryCache.  Memory is divided into fixed-size blocks
+ * within large segments, which are either direct buffers or regions of a
+ * memory-mapped file; an entry occupies as many blocks as its bytes need, so
+ * storing and removing entries never fragments or reallocates the segments.
+ * Segments are allocated as the store fills, up to its byte budget; when the
+ * budget is exhausted, least recently stored or read entries are discarded.
+ * Entries keep the tags their values had in the heap tier, indexed so that
+ * tagged entries can be discarded without touching the rest.
+ *
+ * Since the content lives outside the heap, it adds no garbage collection
+ * pressure no matter how large the store grows.  Memory is released when the
+ * store is garbage collected (a mapped file is deleted on JVM exit).  All
+ * methods are synchronized; callers should encode and decode values outside
+ * of calls.
+ *
+ * @author rdoherty
+ *
+ * @param <K> type of key
+ */
+class OffHeapStore<K> {
+
+  // size of a block; entries waste on average half a block
+  static final int BLOCK_SIZE = 1024;
+
+  // blocks per segment; segments are 64MB, well under ByteBuffer's 2GB limit
+  private static final int BLOCKS_PER_SEGMENT = 65536;
+
+  /**
+   * Bytes and remaining lifetime of a stored entry
+   */
+  static class StoredValue {
+    final byte[] _bytes;
+    final long _expirationTime;
+    StoredValue(byte[] bytes, long expirationTime) {
+      _bytes = bytes;
+      _expirationTime = expirationTime;
+    }
+  }
+
+  private static class Entry {
+    final int[] _blocks;
+    final int _length;
+    final long _expirationTime;
+    final Set<String> _tags;
+    Entry(int[] blocks, int length, long expirationTime, Set<String> tags) {
+      _blocks = blocks;
+      _length = length;
+      _expirationTime = expirationTime;
+      _tags = tags;
+    }
+  }
+
+  private final int _maxBlocks;
+  private final FileChannel _mappedFile;
+  private final List<ByteBuffer> _segments = new ArrayList<>();
+  private final Map<K, Entry> _entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final Map<String, Set<K>> _tagIndex = new HashMap<>();
+  private int[] _freeBlocks = new int[16];
+  private int _numFreeBlocks = 0;
+  private int _numAllocatedBlocks = 0;
+
+  /**
+   * Creates a store.
+   *
+   * @param maximumBytes byte budget of the store
+   * @param mappedFile file to memory-map, or null to use direct buffers
+   * @throws IOException if mapped file cannot be opened
+   */
+  OffHeapStore(long maximumBytes, Path mappedFile) throws IOException {
+    _maxBlocks = (int)Math.max(1, Math.min(Integer.MAX_VALUE, maximumBytes / BLOCK_SIZE));
+    _mappedFile = (mappedFile == null ? null : FileChannel.open(mappedFile,
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+    if (_mappedFile != null) {
+      // contents are only meaningful to this process
+      _mappedFile.truncate(0);
+      mappedFile.toFile().deleteOnExit();
+    }
+  }
+
+  /**
+   * Stores the passed bytes under the passed key, replacing any previous
+   * entry and discarding older entries if space is needed.  Entries larger
+   * than the whole budget are not stored.
+   *
+   * @param key key of entry
+   * @param bytes bytes to store
+   * @param expirationTime time at which entry expires (returned with entry)
+   * @return true if stored
+   * @throws IOException if a memory-mapped segment cannot be created
+   */
+  synchronized boolean put(K key, byte[] bytes, long expirationTime) throws IOException {
+    return put(key, bytes, expirationTime, Collections.emptySet());
+  }
+
+  /**
+   * Stores the passed bytes under the passed key with the passed tags; see
+   * <code>put(K, byte[], long)</code>.
+   *
+   * @param key key of entry
+   * @param bytes bytes to store
+   * @param expirationTime time at which entry expires (returned with entry)
+   * @param tags tags of the entry's value
+   * @return true if stored
+   * @throws IOException if a memory-mapped segment cannot be created
+   */
+  synchronized boolean put(K key, byte[] bytes, long expirationTime, Set<String> tags) throws IOException {
+    invalidate(key);
+    int numBlocks = (bytes.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    if (numBlocks > _maxBlocks) {
+      return false;
+    }
+    while (getAvailableBlocks() < numBlocks) {
+      Iterator<Map.Entry<K, Entry>> eldest = _entries.entrySet().iterator();
+      Map.Entry<K, Entry> discarded = eldest.next();
+      eldest.remove();
+      release(discarded.getKey(), discarded.getValue());
+    }
+    int[] blocks = new int[numBlocks];
+    for (int i = 0; i < numBlocks; i++) {
+      blocks[i] = allocateBlock();
+      int offset = i * BLOCK_SIZE;
+      ByteBuffer block = getBlock(blocks[i]);
+      block.put(bytes, offset, Math.min(BLOCK_SIZE, bytes.length - offset));
+    }
+    _entries.put(key, new Entry(blocks, bytes.length, expirationTime, tags));
+    for (String tag : tags) {
+      _tagIndex.computeIfAbsent(tag, t -> new HashSet<>()).add(key);
+    }
+    return true;
+  }
+
+  /**
+   * Removes and returns the entry for the passed key.
+   *
+   * @param key key of entry
+   * @return stored value, or null if none exists
+   */
+  synchronized StoredValue remove(K key) {
+    Entry entry = _entries.remove(key);
+    if (entry == null) {
+      return null;
+    }
+    byte[] bytes = read(entry);
+    release(key, entry);
+    return new StoredValue(bytes, entry._expirationTime);
+  }
+
+  /**
+   * Discards the entry for the passed key, if present.
+   *
+   * @param key key of entry
+   */
+  synchronized void invalidate(K key) {
+    Entry entry = _entries.remove(key);
+    if (entry != null) {
+      release(key, entry);
+    }
+  }
+
+  /**
+   * Discards the entries having any of the passed tags.
+   *
+   * @param tags tags of entries to discard
+   * @return number of entries discarded
+   */
+  synchronized int invalidateByTags(Set<String> tags) {
+    int numDiscarded = 0;
+    for (String tag : tags) {
+      Set<K> keys = _tagIndex.get(tag);
+      if (keys != null) {
+        for (K key : new ArrayList<>(keys)) {
+          invalidate(key);
+          numDiscarded++;
+        }
+      }
+    }
+    return numDiscarded;
+  }
+
+  /**
+   * Discards the entries whose keys and bytes match the passed predicate.
+   * The store is locked for the whole scan, so this should be used only
+   * where a full scan is expected anyway.
+   *
+   * @param predicate predicate selecting entries to discard
+   * @return number of entries discarded
+   */
+  synchronized int removeIf(BiPredicate<K, byte[]> predicate) {
+    int numDiscarded = 0;
+    for (Iterator<Map.Entry<K, Entry>> entries = _entries.entrySet().iterator(); entries.hasNext(); ) {
+      Map.Entry<K, Entry> next = entries.next();
+      if (predicate.test(next.getKey(), read(next.getValue()))) {
+        entries.remove();
+        release(next.getKey(), next.getValue());
+        numDiscarded++;
+      }
+    }
+    return numDiscarded;
+  }
+
+  /**
+   * Discards all entries.
+   */
+  synchronized void clear() {
+    for (Entry entry : _entries.values()) {
+      freeBlocks(entry);
+    }
+    _entries.clear();
+    _tagIndex.clear();
+  }
+
+  /**
+   * @return number of entries stored
+   */
+  synchronized int size() {
+    return _entries.size();
+  }
+
+  /**
+   * @return number of bytes currently occupied by entries (in whole blocks)
+   */
+  synchronized long getUsedBytes() {
+    return (long)(_numAllocatedBlocks - _numFreeBlocks) * BLOCK_SIZE;
+  }
+
+  private int getAvailableBlocks() {
+    return _maxBlocks - _numAllocatedBlocks + _numFreeBlocks;
+  }
+
+  private int allocateBlock() throws IOException {
+    if (_numFreeBlocks > 0) {
+      return _freeBlocks[--_numFreeBlocks];
+    }
+    int block = _numAllocatedBlocks++;
+    if (block / BLOCKS_PER_SEGMENT == _segments.size()) {
+      _segments.add(createSegment(_segments.size()));
+    }
+    return block;
+  }
+
+  private byte[] read(Entry entry) {
+    byte[] bytes = new byte[entry._length];
+    for (int i = 0; i < entry._blocks.length; i++) {
+      int offset = i * BLOCK_SIZE;
+      getBlock(entry._blocks[i]).get(bytes, offset, Math.min(BLOCK_SIZE, bytes.length - offset));
+    }
+    return bytes;
+  }
+
+  // frees the blocks of an entry removed from the entry map, and unindexes its tags
+  private void release(K key, Entry entry) {
+    freeBlocks(entry);
+    for (String tag : entry._tags) {
+      Set<K> keys = _tagIndex.get(tag);
+      if (keys != null && keys.remove(key) && keys.isEmpty()) {
+        _tagIndex.remove(tag);
+      }
+    }
+  }
+
+  private void freeBlocks(Entry entry) {
+    for (int block : entry._blocks) {
+      if (_numFreeBlocks == _freeBlocks.length) {
+        int[] grown = new int[_freeBlocks.length * 2];
+        System.arraycopy(_freeBlocks, 0, grown, 0, _numFreeBlocks);
+        _freeBlocks = grown;
+      }
+      _freeBlocks[_numFreeBlocks++] = block;
+    }
+  }
+
+  // returns a view of a block positioned at its start and limited to its end
+  private ByteBuffer getBlock(int block) {
+    ByteBuffer segment = _segments.get(block / BLOCKS_PER_SEGMENT).duplicate();
+    int start = (block % BLOCKS_PER_SEGMENT) * BLOCK_SIZE;
+    segment.limit(start + BLOCK_SIZE).position(start);
+    return segment;
+  }
+
+  // segments are sized to the remaining budget so no more than it is ever reserved
+  private ByteBuffer createSegment(int index) throws IOException {
+    int blocks = Math.min(BLOCKS_PER_SEGMENT, _maxBlocks - index * BLOCKS_PER_SEGMENT);
+    int size = blocks * BLOCK_SIZE;
+    return _mappedFile == null ? ByteBuffer.allocateDirect(size) :
+        _mappedFile.map(MapMode.READ_WRITE, (long)index * BLOCKS_PER_SEGMENT * BLOCK_SIZE, size);
+  }
+}
@@ -0,0 +1,153 @@
+package org.gusdb.fgputil.cache;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.function.LongFunction;
+
+/**
+ * Replays recorded key traces against eviction policies and reports the hit
+ * rate each would have achieved at a given capacity.  A trace is a text file
+ * containing one requested key per line (blank lines are ignored), e.g. the
+ * SQL or query names logged by a production cache.
+ *
+ * @author rdoherty
+ */
+public class PolicySimulator {
+
+  /**
+   * Outcome of replaying a single trace against a single policy.
+   */
+  public static class Result {
+
+    private final String _policyName;
+    private final int _capacity;
+    private final long _requests;
+    private final long _hits;
+
+    public Result(String policyName, int capacity, long requests, long hits) {
+      _policyName = policyName;
+      _capacity = capacity;
+      _requests = requests;
+      _hits = hits;
+    }
+
+    public String getPolicyName() { return _policyName; }
+    public int getCapacity() { return _capacity; }
+    public long getRequests() { return _requests; }
+    public long getHits() { return _hits; }
+
+    public double getHitRate() {
+      return _requests == 0 ? 0 : (double)_hits / _requests;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%-16s capacity=%-8d requests=%-10d hits=%-10d hitRate=%.2f%%",
+          _policyName, _capacity, _requests, _hits, getHitRate() * 100);
+    }
+  }
+
+  /**
+   * Returns the policies this simulator compares by default, keyed by name.
+   *
+   * @return map from policy name to policy factory
+   */
+  public static <K> Map<String, LongFunction<EvictionPolicy<K>>> getDefaultPolicies() {
+    Map<String, LongFunction<EvictionPolicy<K>>> policies = new LinkedHashMap<>();
+    policies.put("LRU", LruPolicy::new);
+    policies.put("W-TinyLFU", WindowTinyLfuPolicy::new);
+    return policies;
+  }
+
+  /**
+   * Replays the passed trace against a new policy of the passed capacity,
+   * loading every miss and evicting as a cache would.
+   *
+   * @param trace sequence of requested keys
+   * @param capacity maximum number of entries
+   * @param policyName name of the policy (for reporting)
+   * @param policyFactory creates the policy given a capacity
+   * @return result of the replay
+   */
+  public static <K> Result replay(Iterable<K> trace, int capacity,
+      String policyName, LongFunction<EvictionPolicy<K>> policyFactory) {
+    EvictionPolicy<K> policy = policyFactory.apply(capacity);
+    Set<K> resident = new HashSet<>();
+    long requests = 0, hits = 0;
+    for (K key : trace) {
+      requests++;
+      if (resident.contains(key)) {
+        hits++;
+        policy.recordAccess(key);
+      }
+      else {
+        resident.add(key);
+        policy.recordInsertion(key, 1);
+        while (resident.size() > capacity) {
+          resident.remove(policy.evict());
+        }
+      }
+    }
+    return new Result(policyName, capacity, requests, hits);
+  }
+
+  /**
+   * Replays the passed trace against each of the default policies.
+   *
+   * @param trace sequence of requested keys
+   * @param capacity maximum number of entries
+   * @return one result per policy
+   */
+  public static <K> List<Result> replayAll(Iterable<K> trace, int capacity) {
+    List<Result> results = new ArrayList<>();
+    for (Entry<String, LongFunction<EvictionPolicy<K>>> policy : PolicySimulator.<K>getDefaultPolicies().entrySet()) {
+      results.add(replay(trace, capacity, policy.getKey(), policy.getValue()));
+    }
+    return results;
+  }
+
+  /**
+   * Reads a trace file containing one key per line.
+   *
+   * @param traceFile name of file to read
+   * @return list of keys in the trace
+   * @throws IOException if unable to read file
+   */
+  public static List<String> readTrace(String traceFile) throws IOException {
+    List<String> trace = new ArrayList<>();
+    try (BufferedReader in = Files.newBufferedReader(Paths.get(traceFile), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (!line.trim().isEmpty()) {
+          trace.add(line);
+        }
+      }
+    }
+    return trace;
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("USAGE: fgpJava " + PolicySimulator.class.getName() +
+          " <traceFile> <capacity> [<capacity> ...]");
+      System.exit(1);
+    }
+    List<String> trace = readTrace(args[0]);
+    System.out.println("Replaying " + trace.size() + " requests from " + args[0]);
+    for (int i = 1; i < args.length; i++) {
+      for (Result result : replayAll(trace, Integer.parseInt(args[i]))) {
+        System.out.println(result);
+      }
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package org.gusdb.fgputil.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Lossy, striped, multi-producer/single-consumer buffer used to record cache
+ * reads without taking a lock.  Each producing thread is hashed to one of a
+ * number of small ring buffers; if that ring is full, or another thread wins
+ * the race for the same slot, the element is simply dropped.  Dropping reads
+ * only degrades the accuracy of the eviction order, never correctness, which
+ * is what allows this buffer to avoid blocking.
+ *
+ * Draining must only be done by one thread at a time (i.e. under the owning
+ * cache's eviction lock).
+ *
+ * @author rdoherty
+ *
+ * @param <E> type of element buffered
+ */
+class ReadBuffer<E> {
+
+  // size of each ring; must be a power of two
+  private static final int STRIPE_CAPACITY = 16;
+  private static final int STRIPE_MASK = STRIPE_CAPACITY - 1;
+
+  // maximum number of rings regardless of core count
+  private static final int MAX_STRIPES = 64;
+
+  private static class Stripe<E> {
+    final AtomicReferenceArray<E> _ring = new AtomicReferenceArray<>(STRIPE_CAPACITY);
+    final AtomicLong _writeCounter = new AtomicLong();
+    // only written by the (single) draining thread
+    volatile long _readCounter = 0;
+  }
+
+  private final Stripe<E>[] _stripes;
+  private final int _stripeMask;
+
+  @SuppressWarnings("unchecked")
+  ReadBuffer() {
+    int numStripes = Integer.highestOneBit(Math.min(MAX_STRIPES,
+        Math.max(1, Runtime.getRuntime().availableProcessors() * 2)));
+    _stripes = new Stripe[numStripes];
+    for (int i = 0; i < numStripes; i++) {
+      _stripes[i] = new Stripe<>();
+    }
+    _stripeMask = numStripes - 1;
+  }
+
+  /**
+   * Records an element in this buffer if space is available.
+   *
+   * @param element element to record
+   * @return true if the stripe this thread writes to is full and should be
+   * drained, else false
+   */
+  boolean offer(E element) {
+    Stripe<E> stripe = _stripes[probe() & _stripeMask];
+    long head = stripe._readCounter;
+    long tail = stripe._writeCounter.get();
+    long size = tail - head;
+    if (size >= STRIPE_CAPACITY) {
+      // ring is full; drop this read and ask for a drain
+      return true;
+    }
+    if (stripe._writeCounter.compareAndSet(tail, tail + 1)) {
+      stripe._ring.lazySet((int)(tail & STRIPE_MASK), element);
+      return size + 1 >= STRIPE_CAPACITY;
+    }
+    // lost a race with another reader on this stripe; dropping is acceptable
+    return false;
+  }
+
+  /**
+   * Passes every published element to the consumer and clears the buffer.
+   * Must only be called by one thread at a time.
+   *
+   * @param consumer consumer of buffered elements
+   */
+  void drainTo(Consumer<E> consumer) {
+    for (Stripe<E> stripe : _stripes) {
+      long head = stripe._readCounter;
+      long tail = stripe._writeCounter.get();
+      for (; head < tail; head++) {
+        int index = (int)(head & STRIPE_MASK);
+        E element = stripe._ring.get(index);
+        if (element == null) {
+          // slot claimed but not yet published; pick it up next drain
+          break;
+        }
+        stripe._ring.lazySet(index, null);
+        consumer.accept(element);
+      }
+      stripe._readCounter = head;
+    }
+  }
+
+  // spreads thread IDs across stripes
+  private static int probe() {
+    long id = Thread.currentThread().getId();
+    return (int)((id * 0x9E3779B97F4A7C15L) >>> 32);
+  }
+}
@@ -0,0 +1,18 @@
+package org.gusdb.fgputil.cache;
+
+/**
+ * Reasons an entry may be removed from a cache, as reported in cache statistics.
+ *
+ * @author rdoherty
+ */
+public enum RemovalCause {
+
+  /** entry was removed to keep the cache within its capacity or maximum weight */
+  SIZE,
+
+  /** entry's lifetime, as determined by the cache's expiry, elapsed */
+  EXPIRED,
+
+  /** entry was removed by a call to <code>expireEntries()</code> */
+  EXPLICIT;
+}
@@ -0,0 +1,72 @@
+package org.gusdb.fgputil.cache;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.gusdb.fgputil.runtime.LatencyHistogram;
+
+/**
+ * Accumulates statistics for a single cache.  Counters are striped
+ * (<code>LongAdder</code>) so that recording from many threads at once does
+ * not contend; reading them is comparatively expensive and is only done when
+ * a snapshot is taken.
+ *
+ * @author rdoherty
+ */
+class StatsCounter {
+
+  private final LongAdder _hits = new LongAdder();
+  private final LongAdder _misses = new LongAdder();
+  private final LongAdder _loadSuccesses = new LongAdder();
+  private final LongAdder _loadFailures = new LongAdder();
+  private final LatencyHistogram _loadTimes = new LatencyHistogram();
+  private final Map<RemovalCause, LongAdder> _removals = new EnumMap<>(RemovalCause.class);
+  private final LongAdder _lockWaits = new LongAdder();
+  private final LongAdder _lockWaitTime = new LongAdder();
+
+  StatsCounter() {
+    for (RemovalCause cause : RemovalCause.values()) {
+      _removals.put(cause, new LongAdder());
+    }
+  }
+
+  void recordHits(int count) {
+    _hits.add(count);
+  }
+
+  void recordMisses(int count) {
+    _misses.add(count);
+  }
+
+  void recordLoadSuccess(long loadTimeNanos) {
+    _loadSuccesses.increment();
+    _loadTimes.record(loadTimeNanos);
+  }
+
+  void recordLoadFailure(long loadTimeNanos) {
+    _loadFailures.increment();
+    _loadTimes.record(loadTimeNanos);
+  }
+
+  void recordRemoval(RemovalCause cause) {
+    _removals.get(cause).increment();
+  }
+
+  void recordLockWait(long waitTimeNanos) {
+    _lockWaits.increment();
+    _lockWaitTime.add(waitTimeNanos);
+  }
+
+  CacheStats snapshot(String name, int size, long weightedSize) {
+    Map<RemovalCause, Long> removals = new EnumMap<>(RemovalCause.class);
+    for (Map.Entry<RemovalCause, LongAdder> entry : _removals.entrySet()) {
+      removals.put(entry.getKey(), entry.getValue().sum());
+    }
+    return new CacheStats(name, size, weightedSize, _hits.sum(), _misses.sum(),
+        _loadSuccesses.sum(), _loadFailures.sum(), _loadTimes.getTotal(),
+        _loadTimes.getPercentile(50), _loadTimes.getPercentile(90),
+        _loadTimes.getPercentile(99), _loadTimes.getMax(), removals,
+        _lockWaits.sum(), _lockWaitTime.sum());
+  }
+}
@@ -0,0 +1,98 @@
+package org.gusdb.fgputil.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.log4j.Logger;
+import org.gusdb.fgputil.events.Event;
+import org.gusdb.fgputil.events.EventListener;
+import org.gusdb.fgputil.events.Events;
+
+/**
+ * Connects tagged caches to the Events framework.  Caches registered here
+ * have entries invalidated by tag whenever a <code>TagInvalidationEvent</code>
+ * is triggered, so code changing underlying data need not know which caches
+ * hold values derived from it.  Caches are held weakly, so registration does
+ * not prevent an unreferenced cache from being collected.
+ *
+ * Typical usage:
+ * <pre>
+ * Events.init();
+ * TagInvalidationBridge.subscribe();
+ * TagInvalidationBridge.register(myCache);
+ * ...
+ * Events.trigger(new TagInvalidationEvent("table:apidb.organism"));
+ * </pre>
+ *
+ * @author rdoherty
+ */
+public class TagInvalidationBridge {
+
+  private static final Logger LOG = Logger.getLogger(TagInvalidationBridge.class);
+
+  private static final Map<InMemoryCache<?,?>, Boolean> CACHES = new WeakHashMap<>();
+
+  private static final EventListener LISTENER = new EventListener() {
+    @Override
+    public void eventTriggered(Event event) {
+      List<String> tags = ((TagInvalidationEvent)event).getTags();
+      int numRemoved = invalidateByTag(tags.toArray(new String[tags.size()]));
+      LOG.debug("Invalidated " + numRemoved + " cache entries with tags " + tags);
+    }
+  };
+
+  private TagInvalidationBridge() {}
+
+  /**
+   * Subscribes the bridge to <code>TagInvalidationEvent</code>s.  The Events
+   * framework must be initialized before calling this method.
+   */
+  public static void subscribe() {
+    Events.subscribe(LISTENER, TagInvalidationEvent.class);
+  }
+
+  /**
+   * Unsubscribes the bridge from <code>TagInvalidationEvent</code>s.
+   */
+  public static void unsubscribe() {
+    Events.unsubscribe(LISTENER);
+  }
+
+  /**
+   * Registers a cache whose entries should be invalidated by tag invalidation events.
+   *
+   * @param cache cache to register
+   */
+  public static synchronized void register(InMemoryCache<?,?> cache) {
+    CACHES.put(cache, Boolean.TRUE);
+  }
+
+  /**
+   * @param cache cache which should no longer be invalidated by events
+   */
+  public static synchronized void unregister(InMemoryCache<?,?> cache) {
+    CACHES.remove(cache);
+  }
+
+  /**
+   * Invalidates entries with any of the passed tags in all registered caches.
+   * This is what the bridge does when an event is triggered, but may also be
+   * called directly to invalidate synchronously.
+   *
+   * @param tags tags of entries to invalidate
+   * @return total number of entries removed
+   */
+  public static int invalidateByTag(String... tags) {
+    List<InMemoryCache<?,?>> caches;
+    synchronized (TagInvalidationBridge.class) {
+      caches = new ArrayList<>(CACHES.keySet());
+    }
+    int numRemoved = 0;
+    for (InMemoryCache<?,?> cache : caches) {
+      numRemoved += cache.invalidateByTag(tags);
+    }
+    return numRemoved;
+  }
+}
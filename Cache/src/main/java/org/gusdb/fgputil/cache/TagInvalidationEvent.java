@@ -0,0 +1,34 @@
+package org.gusdb.fgputil.cache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.gusdb.fgputil.events.Event;
+
+/**
+ * Event signaling that cached entries with any of a set of tags are out of
+ * date (e.g. because a table was updated).  When triggered, entries with those
+ * tags are invalidated in every cache registered with the
+ * <code>TagInvalidationBridge</code>.
+ *
+ * @author rdoherty
+ */
+public class TagInvalidationEvent extends Event {
+
+  private final List<String> _tags;
+
+  /**
+   * @param tags tags of entries to invalidate
+   */
+  public TagInvalidationEvent(String... tags) {
+    _tags = Collections.unmodifiableList(Arrays.asList(tags));
+  }
+
+  /**
+   * @return tags of entries to invalidate
+   */
+  public List<String> getTags() {
+    return _tags;
+  }
+}
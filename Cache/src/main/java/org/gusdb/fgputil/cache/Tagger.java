@@ -0,0 +1,32 @@
+package org.gusdb.fgputil.cache;
+
+import java.util.Collection;
+
+/**
+ * Assigns tags to cache entries.  Caches configured with a tagger (see
+ * <code>CacheConfig.setTagger</code>) index their entries by tag, so that
+ * every entry with a given tag (e.g. the name of a table a cached query reads,
+ * or a project ID) can be invalidated at once via
+ * <code>InMemoryCache.invalidateByTag</code>.
+ *
+ * Tags are assigned once per load, update or restoration of a value, on the
+ * thread producing the value.
+ *
+ * @author rdoherty
+ *
+ * @param <S> type of cache key
+ * @param <T> type of cached value
+ */
+@FunctionalInterface
+public interface Tagger<S,T> {
+
+  /**
+   * Returns the tags of an entry.
+   *
+   * @param key key of the entry
+   * @param value value of the entry
+   * @return tags of the entry; may be empty or null if none
+   */
+  public Collection<String> getTags(S key, T value);
+
+}
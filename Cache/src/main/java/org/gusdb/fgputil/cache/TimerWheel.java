@@ -0,0 +1,198 @@
+package org.gusdb.fgputil.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timer wheel used to expire cache entries in O(1) amortized
+ * time.  Keys are scheduled into buckets whose width grows with distance into
+ * the future (about a second, a minute, an hour, a day, and a week); as time
+ * advances, the buckets passed over are emptied, and keys are either expired
+ * or cascaded into finer-grained buckets.  Expiration is therefore accurate
+ * to roughly the width of the finest wheel (about one second), which is fine
+ * for proactive reclamation since cache reads check exact expiration times.
+ *
+ * This class is not thread-safe; it is used under a cache's eviction lock.
+ * Times are in nanoseconds, as returned by the cache's ticker, and are only
+ * ever compared by difference so that ticker overflow is harmless.
+ *
+ * @author rdoherty
+ *
+ * @param <K> type of key scheduled
+ */
+class TimerWheel<K> {
+
+  // number of buckets in each wheel; each must be a power of two
+  private static final int[] BUCKETS = { 64, 64, 32, 4, 1 };
+
+  // span of a single bucket in each wheel (plus the total span of the last)
+  private static final long[] SPANS = {
+      ceilingPowerOfTwo(TimeUnit.SECONDS.toNanos(1)), // 1.07s
+      ceilingPowerOfTwo(TimeUnit.MINUTES.toNanos(1)), // 1.14m
+      ceilingPowerOfTwo(TimeUnit.HOURS.toNanos(1)),   // 1.22h
+      ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1)),    // 1.63d
+      BUCKETS[3] * ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1)), // 6.5d
+      BUCKETS[3] * ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1))  // 6.5d
+  };
+
+  private static final long[] SHIFT = {
+      Long.numberOfTrailingZeros(SPANS[0]),
+      Long.numberOfTrailingZeros(SPANS[1]),
+      Long.numberOfTrailingZeros(SPANS[2]),
+      Long.numberOfTrailingZeros(SPANS[3]),
+      Long.numberOfTrailingZeros(SPANS[4])
+  };
+
+  // doubly linked list node; each bucket is a circular list headed by a sentinel
+  private static class Node<K> {
+    final K _key;
+    long _time;
+    Node<K> _prev;
+    Node<K> _next;
+    Node(K key) {
+      _key = key;
+    }
+  }
+
+  private final Node<K>[][] _wheel;
+  private final Map<K, Node<K>> _nodes = new HashMap<>();
+  private long _nanos;
+
+  @SuppressWarnings("unchecked")
+  TimerWheel(long currentTime) {
+    _nanos = currentTime;
+    _wheel = new Node[BUCKETS.length][];
+    for (int i = 0; i < BUCKETS.length; i++) {
+      _wheel[i] = new Node[BUCKETS[i]];
+      for (int j = 0; j < BUCKETS[i]; j++) {
+        Node<K> sentinel = new Node<>(null);
+        sentinel._prev = sentinel._next = sentinel;
+        _wheel[i][j] = sentinel;
+      }
+    }
+  }
+
+  /**
+   * Schedules the passed key to expire at the passed time, replacing any
+   * previous schedule for the key.
+   *
+   * @param key key to schedule
+   * @param time time at which key should expire
+   */
+  void schedule(K key, long time) {
+    Node<K> node = _nodes.get(key);
+    if (node == null) {
+      node = new Node<>(key);
+      _nodes.put(key, node);
+    }
+    else {
+      unlink(node);
+    }
+    // times already passed go in the current bucket so the next advance expires them
+    node._time = (time - _nanos > 0 ? time : _nanos);
+    link(findBucket(node._time), node);
+  }
+
+  /**
+   * Removes any schedule for the passed key.
+   *
+   * @param key key to deschedule
+   */
+  void deschedule(K key) {
+    Node<K> node = _nodes.remove(key);
+    if (node != null) {
+      unlink(node);
+    }
+  }
+
+  /**
+   * Advances the wheel to the passed time, passing each key whose time has
+   * come to the consumer.  Expired keys are no longer scheduled when passed,
+   * so the consumer may reschedule them (e.g. if their lifetime was extended).
+   *
+   * @param currentTime current time
+   * @param expiredKeyConsumer consumer of expired keys
+   */
+  void advance(long currentTime, Consumer<K> expiredKeyConsumer) {
+    long previousTime = _nanos;
+    _nanos = currentTime;
+    for (int i = 0; i < SHIFT.length; i++) {
+      long previousTicks = (previousTime >>> SHIFT[i]);
+      long currentTicks = (currentTime >>> SHIFT[i]);
+      if ((currentTicks - previousTicks) <= 0L) {
+        break;
+      }
+      expire(i, previousTicks, currentTicks - previousTicks, expiredKeyConsumer);
+    }
+  }
+
+  /**
+   * @return number of keys currently scheduled
+   */
+  int size() {
+    return _nodes.size();
+  }
+
+  // empties the buckets passed over in one wheel, expiring or cascading each node
+  private void expire(int index, long previousTicks, long delta, Consumer<K> expiredKeyConsumer) {
+    Node<K>[] timerWheel = _wheel[index];
+    int mask = timerWheel.length - 1;
+    int steps = (int)Math.min(1 + delta, timerWheel.length);
+    int start = (int)(previousTicks & mask);
+    int end = start + steps;
+    for (int i = start; i < end; i++) {
+      Node<K> sentinel = timerWheel[i & mask];
+      Node<K> node = sentinel._next;
+      // detach the bucket's list so rescheduled nodes are not revisited
+      sentinel._prev = sentinel._next = sentinel;
+      while (node != sentinel) {
+        Node<K> next = node._next;
+        node._prev = node._next = null;
+        if (node._time - _nanos > 0) {
+          link(findBucket(node._time), node);
+        }
+        else {
+          _nodes.remove(node._key);
+          expiredKeyConsumer.accept(node._key);
+        }
+        node = next;
+      }
+    }
+  }
+
+  // returns the sentinel of the bucket covering the passed time
+  private Node<K> findBucket(long time) {
+    long duration = time - _nanos;
+    int length = _wheel.length - 1;
+    for (int i = 0; i < length; i++) {
+      if (duration < SPANS[i + 1]) {
+        long ticks = (time >>> SHIFT[i]);
+        int index = (int)(ticks & (_wheel[i].length - 1));
+        return _wheel[i][index];
+      }
+    }
+    return _wheel[length][0];
+  }
+
+  // appends node to the end of the list headed by sentinel
+  private static <K> void link(Node<K> sentinel, Node<K> node) {
+    node._prev = sentinel._prev;
+    node._next = sentinel;
+    sentinel._prev._next = node;
+    sentinel._prev = node;
+  }
+
+  private static <K> void unlink(Node<K> node) {
+    if (node._next != null) {
+      node._prev._next = node._next;
+      node._next._prev = node._prev;
+      node._prev = node._next = null;
+    }
+  }
+
+  private static long ceilingPowerOfTwo(long value) {
+    return 1L << -Long.numberOfLeadingZeros(value - 1);
+  }
+}
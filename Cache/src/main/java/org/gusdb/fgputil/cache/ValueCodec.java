@@ -0,0 +1,55 @@
+package org.gusdb.fgputil.cache;
+
+import java.io.NotSerializableException;
+import java.io.Serializable;
+
+import org.gusdb.fgputil.IoUtil;
+
+/**
+ * Converts cached values to and from bytes so they can be stored outside the
+ * Java heap (see <code>CacheConfig.setOffHeapTier()</code>).
+ *
+ * @author rdoherty
+ *
+ * @param <T> type of cached value
+ */
+public interface ValueCodec<T> {
+
+  /**
+   * Returns a codec which uses Java serialization (via <code>IoUtil</code>).
+   * Values which are not <code>Serializable</code> cannot be encoded and so
+   * are simply not stored off-heap.
+   *
+   * @return serializing codec
+   */
+  public static <T> ValueCodec<T> serializing() {
+    return new ValueCodec<T>() {
+      @Override
+      public byte[] encode(T value) throws Exception {
+        if (!(value instanceof Serializable)) {
+          throw new NotSerializableException(value.getClass().getName());
+        }
+        return IoUtil.serialize((Serializable)value);
+      }
+      @SuppressWarnings("unchecked")
+      @Override
+      public T decode(byte[] bytes) throws Exception {
+        return (T)IoUtil.deserialize(bytes);
+      }
+    };
+  }
+
+  /**
+   * @param value value to encode
+   * @return bytes representing the value
+   * @throws Exception if value cannot be encoded
+   */
+  public byte[] encode(T value) throws Exception;
+
+  /**
+   * @param bytes bytes produced by <code>encode()</code>
+   * @return decoded value
+   * @throws Exception if bytes cannot be decoded
+   */
+  public T decode(byte[] bytes) throws Exception;
+}
@@ -0,0 +1,30 @@
+package org.gusdb.fgputil.cache;
+
+/**
+ * Calculates the weight of a cache entry.  Caches configured with a maximum
+ * weight (see <code>CacheConfig.setMaximumWeight</code>) evict entries until
+ * the total weight of their entries is within that maximum.  Weights are
+ * typically an estimate of memory consumed in bytes, but may be any
+ * non-negative measure meaningful to the application.
+ *
+ * Weights are calculated once per load or update of a value, on the thread
+ * producing the value, so a weigher may do moderately expensive work.
+ *
+ * @author rdoherty
+ *
+ * @param <S> type of cache key
+ * @param <T> type of cached value
+ */
+@FunctionalInterface
+public interface Weigher<S,T> {
+
+  /**
+   * Returns the weight of an entry.  Must not be negative.
+   *
+   * @param key key of the entry
+   * @param value value of the entry
+   * @return weight of the entry
+   */
+  public long weigh(S key, T value);
+
+}
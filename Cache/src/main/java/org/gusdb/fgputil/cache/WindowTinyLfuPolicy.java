@@ -0,0 +1,232 @@
+package org.gusdb.fgputil.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+/**
+ * Window TinyLFU eviction policy.  New keys enter a small LRU "window" (1% of
+ * capacity); the remainder of the cache is a segmented LRU made up of a
+ * probation segment and a protected segment (80% of the main space).  Keys
+ * read while on probation are promoted to the protected segment.  All
+ * segments are sized by weight, so this policy works equally well for caches
+ * bounded by entry count (every weight is 1) and by maximum weight.
+ *
+ * When the cache must shed an entry and the window is over its share, the
+ * window's least recently used key (the candidate) competes with the main
+ * space's least recently used key (the victim): whichever has been seen less
+ * often, as estimated by a count-min sketch of recent accesses, is evicted.
+ * One-off keys (e.g. from a crawler or a scan) therefore pass through the
+ * window without displacing the frequently used working set.
+ *
+ * @author rdoherty
+ *
+ * @param <K> type of cache key
+ */
+public class WindowTinyLfuPolicy<K> implements EvictionPolicy<K> {
+
+  // percentage of capacity given to the admission window
+  private static final int WINDOW_PERCENT = 1;
+
+  // percentage of the main space given to the protected segment
+  private static final int PROTECTED_PERCENT = 80;
+
+  // initial number of keys the frequency sketch is sized for; it grows with the cache
+  private static final int INITIAL_SKETCH_CAPACITY = 1024;
+
+  // an access-ordered map of keys to weights, plus the total of those weights
+  private static class Segment<K> {
+
+    final LinkedHashMap<K,Long> _weights = new LinkedHashMap<>(16, 0.75f, true);
+    long _totalWeight = 0;
+
+    boolean touch(K key) {
+      return _weights.get(key) != null;
+    }
+
+    void add(K key, long weight) {
+      _weights.put(key, weight);
+      _totalWeight += weight;
+    }
+
+    // returns the removed key's weight or null if not present
+    Long remove(K key) {
+      Long weight = _weights.remove(key);
+      if (weight != null) {
+        _totalWeight -= weight;
+      }
+      return weight;
+    }
+
+    boolean update(K key, long weight) {
+      Long oldWeight = _weights.replace(key, weight);
+      if (oldWeight == null) {
+        return false;
+      }
+      _totalWeight += weight - oldWeight;
+      return true;
+    }
+
+    K firstKey() {
+      Iterator<K> keys = _weights.keySet().iterator();
+      return keys.hasNext() ? keys.next() : null;
+    }
+
+    // moves the least recently used key of this segment to the back of another
+    K moveFirstTo(Segment<K> other) {
+      Iterator<Entry<K,Long>> entries = _weights.entrySet().iterator();
+      Entry<K,Long> first = entries.next();
+      entries.remove();
+      _totalWeight -= first.getValue();
+      if (other != null) {
+        other.add(first.getKey(), first.getValue());
+      }
+      return first.getKey();
+    }
+
+    boolean isEmpty() {
+      return _weights.isEmpty();
+    }
+
+    int size() {
+      return _weights.size();
+    }
+  }
+
+  private final long _maxWindow;
+  private final long _maxMain;
+  private final long _maxProtected;
+
+  private final Segment<K> _window = new Segment<>();
+  private final Segment<K> _probation = new Segment<>();
+  private final Segment<K> _protected = new Segment<>();
+
+  private FrequencySketch<K> _sketch;
+  private int _sketchCapacity;
+
+  /**
+   * @param maximum capacity or maximum weight of the cache using this policy
+   */
+  public WindowTinyLfuPolicy(long maximum) {
+    long max = Math.max(1, maximum);
+    _maxWindow = Math.max(1, max * WINDOW_PERCENT / 100);
+    _maxMain = max - _maxWindow;
+    _maxProtected = _maxMain * PROTECTED_PERCENT / 100;
+    _sketchCapacity = (int)Math.min(max, INITIAL_SKETCH_CAPACITY);
+    _sketch = new FrequencySketch<>(_sketchCapacity);
+  }
+
+  @Override
+  public void recordInsertion(K key, long weight) {
+    ensureSketchCapacity();
+    _sketch.increment(key);
+    _window.add(key, weight);
+    balanceWindow();
+  }
+
+  @Override
+  public void recordUpdate(K key, long weight) {
+    if (_window.update(key, weight)) {
+      balanceWindow();
+    }
+    else if (!_probation.update(key, weight) && _protected.update(key, weight)) {
+      balanceProtected();
+    }
+  }
+
+  @Override
+  public void recordAccess(K key) {
+    _sketch.increment(key);
+    if (_window.touch(key) || _protected.touch(key)) {
+      // reordered by the access-ordered maps
+      return;
+    }
+    Long weight = _probation.remove(key);
+    if (weight != null) {
+      _protected.add(key, weight);
+      balanceProtected();
+    }
+  }
+
+  @Override
+  public void recordRemoval(K key) {
+    if (_window.remove(key) == null && _probation.remove(key) == null) {
+      _protected.remove(key);
+    }
+  }
+
+  @Override
+  public K evict() {
+    if (_window._totalWeight > _maxWindow) {
+      K candidate = _window.firstKey();
+      K victim = mainVictim();
+      if (victim == null) {
+        return _window.moveFirstTo(null);
+      }
+      // admit the candidate only if it is more popular than the victim
+      if (_sketch.frequency(candidate) > _sketch.frequency(victim)) {
+        removeFromMain(victim);
+        _window.moveFirstTo(_probation);
+        return victim;
+      }
+      return _window.moveFirstTo(null);
+    }
+    K victim = mainVictim();
+    if (victim != null) {
+      removeFromMain(victim);
+      return victim;
+    }
+    return _window.isEmpty() ? null : _window.moveFirstTo(null);
+  }
+
+  @Override
+  public int size() {
+    return _window.size() + _probation.size() + _protected.size();
+  }
+
+  /**
+   * Returns the estimated recent access frequency of the passed key.
+   *
+   * @param key key to look up
+   * @return estimated frequency (saturates at 15)
+   */
+  public int getFrequency(K key) {
+    return _sketch.frequency(key);
+  }
+
+  // while the main space has room, window overflow moves there without competition
+  private void balanceWindow() {
+    while (_window._totalWeight > _maxWindow && !_window.isEmpty() &&
+        _probation._totalWeight + _protected._totalWeight < _maxMain) {
+      _window.moveFirstTo(_probation);
+    }
+  }
+
+  // demotes protected overflow back to probation
+  private void balanceProtected() {
+    while (_protected._totalWeight > _maxProtected && !_protected.isEmpty()) {
+      _protected.moveFirstTo(_probation);
+    }
+  }
+
+  // least recently used key of the main space, preferring probation
+  private K mainVictim() {
+    K victim = _probation.firstKey();
+    return victim != null ? victim : _protected.firstKey();
+  }
+
+  private void removeFromMain(K key) {
+    if (_probation.remove(key) == null) {
+      _protected.remove(key);
+    }
+  }
+
+  // Resizes the sketch once the number of keys far outgrows it.  Frequencies
+  //   gathered so far are lost, but this only happens while the cache fills.
+  private void ensureSketchCapacity() {
+    if (size() > 2L * _sketchCapacity && _sketchCapacity < (1 << 30)) {
+      _sketchCapacity *= 2;
+      _sketch = new FrequencySketch<>(_sketchCapacity);
+    }
+  }
+}
@@ -1,15 +1,31 @@
 package org.gusdb.fgputil.cache;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
 import org.gusdb.fgputil.FormatUtil;
+import org.gusdb.fgputil.cache.CacheConfig.Engine;
+import org.gusdb.fgputil.events.Events;
 import org.junit.Test;
 
 public class CacheTest {
@@ -101,4 +117,662 @@ public class CacheTest {
     while (completedCount.get() < numThreads) {}
     LOG.info("Number of ops: " + opOrder.size());
   }
+
+  @Test
+  public void concurrentEngineTest() throws Exception {
+    LOG.info("Starting concurrent engine test");
+    int numThreads = 100;
+    InMemoryCache<Integer,String> cache = new InMemoryCache<>(
+        new CacheConfig<Integer,String>().setCapacity(4).setNumToTrimOnCapacity(2).setEngine(Engine.CONCURRENT));
+    List<String> opOrder = new Vector<>();
+    AtomicInteger completedCount = new AtomicInteger(0);
+    Executor exec = Executors.newFixedThreadPool(10);
+    for (int i = 0; i < numThreads; i++) {
+      exec.execute(new Worker(cache, opOrder, completedCount));
+    }
+    while (completedCount.get() < numThreads) {}
+    cache.cleanUp();
+    assertTrue(cache.getSize() <= cache.getCapacity());
+    for (int i = 1; i <= 7; i++) {
+      assertEquals(String.valueOf(i), cache.getValue(i, new StringFetcher(opOrder)));
+    }
+  }
+
+  @Test
+  public void incrementalEvictionTest() throws Exception {
+    InMemoryCache<Integer,String> cache = new InMemoryCache<>(new CacheConfig<Integer,String>().setCapacity(5));
+    List<String> opOrder = new Vector<>();
+    StringFetcher fetcher = new StringFetcher(opOrder);
+    for (int i = 1; i <= 7; i++) {
+      cache.getValue(i, fetcher);
+      assertTrue(cache.getSize() <= 5);
+    }
+    assertEquals(5, cache.getSize());
+    // 1 and 2 were least recently used and should have been evicted; 3 should still be cached
+    opOrder.clear();
+    cache.getValue(3, fetcher);
+    cache.getValue(1, fetcher);
+    assertEquals("[ b1 ]", FormatUtil.arrayToString(opOrder.toArray(), ","));
+  }
+
+  @Test
+  public void chunkedEvictionTest() throws Exception {
+    // count evictions made on this thread
+    Thread caller = Thread.currentThread();
+    AtomicInteger callerEvictions = new AtomicInteger(0);
+    InMemoryCache<Integer,String> cache = new InMemoryCache<>(new CacheConfig<Integer,String>()
+        .setCapacity(100)
+        .setNumToTrimOnCapacity(80)
+        .setEvictionPolicy(capacity -> new LruPolicy<Integer>(capacity) {
+          @Override
+          public Integer evict() {
+            if (Thread.currentThread() == caller) {
+              callerEvictions.incrementAndGet();
+            }
+            return super.evict();
+          }
+        }));
+    StringFetcher fetcher = new StringFetcher(new Vector<>());
+    for (int i = 1; i <= 101; i++) {
+      cache.getValue(i, fetcher);
+    }
+    // the caller trims only part of the chunk; maintenance trims the rest
+    assertTrue(callerEvictions.get() > 0 && callerEvictions.get() < 80);
+    cache.cleanUp();
+    assertEquals(21, cache.getSize());
+  }
+
+  @Test
+  public void weightedCapacityTest() throws Exception {
+    InMemoryCache<Integer,String> cache = new InMemoryCache<>(new CacheConfig<Integer,String>()
+        .setMaximumWeight(100).setWeigher((key, value) -> value.length()));
+    ValueFactory<Integer,String> factory = key -> "x".repeat(key);
+    for (int i = 1; i <= 40; i++) {
+      assertEquals(i, cache.getValue(i, factory).length());
+      assertTrue(cache.getWeightedSize() <= 100);
+    }
+    // most recent values (40, 39) fit; a third would exceed the maximum
+    assertEquals(2, cache.getSize());
+    assertEquals(79, cache.getWeightedSize());
+  }
+
+  @Test
+  public void objectSizeWeigherTest() {
+    long longSize = ObjectSizeWeigher.estimateSize(Long.valueOf(1));
+    long stringSize = ObjectSizeWeigher.estimateSize("x".repeat(1000));
+    List<String> list = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      list.add("x".repeat(1000));
+    }
+    long listSize = ObjectSizeWeigher.estimateSize(list);
+    assertTrue(longSize > 0 && longSize < 32);
+    assertTrue(stringSize > 1000 && stringSize < 1100);
+    assertTrue(listSize > 100 * stringSize);
+  }
+
+  @Test
+  public void expireAfterWriteTest() throws Exception {
+    AtomicLong clock = new AtomicLong(0);
+    AtomicInteger loads = new AtomicInteger(0);
+    InMemoryCache<Integer,String> cache = new InMemoryCache<>(new CacheConfig<Integer,String>()
+        .setExpireAfterWrite(10, TimeUnit.SECONDS).setTicker(clock::get));
+    ValueFactory<Integer,String> factory = key -> key + "-" + loads.incrementAndGet();
+    assertEquals("1-1", cache.getValue(1, factory));
+    clock.set(TimeUnit.SECONDS.toNanos(9));
+    assertEquals("1-1", cache.getValue(1, factory));
+    cache.getValue(2, factory);
+    // entry 1 is reclaimed by maintenance without being requested again
+    clock.set(TimeUnit.SECONDS.toNanos(12));
+    cache.cleanUp();
+    assertEquals(1, cache.getSize());
+    assertEquals("1-3", cache.getValue(1, factory));
+    clock.set(TimeUnit.SECONDS.toNanos(60));
+    cache.cleanUp();
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  public void expireAfterAccessTest() throws Exception {
+    AtomicLong clock = new AtomicLong(0);
+    AtomicInteger loads = new AtomicInteger(0);
+    InMemoryCache<Integer,String> cache = new InMemoryCache<>(new CacheConfig<Integer,String>()
+        .setExpireAfterAccess(10, TimeUnit.SECONDS).setEngine(Engine.CONCURRENT).setTicker(clock::get));
+    ValueFactory<Integer,String> factory = key -> key + "-" + loads.incrementAndGet();
+    cache.getValue(1, factory);
+    // reads every 5 seconds keep the entry alive past its original lifetime
+    for (int i = 1; i <= 6; i++) {
+      clock.set(TimeUnit.SECONDS.toNanos(5 * i));
+      assertEquals("1-1", cache.getValue(1, factory));
+      cache.cleanUp();
+      assertEquals(1, cache.getSize());
+    }
+    clock.set(TimeUnit.SECONDS.toNanos(45));
+    cache.cleanUp();
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  public void variableExpiryTest() throws Exception {
+    AtomicLong clock = new AtomicLong(0);
+    // each entry lives as many minutes as its key
+    InMemoryCache<Integer,String> cache = new InMemoryCache<>(new CacheConfig<Integer,String>()
+        .setExpiry((key, value, currentTime) -> TimeUnit.MINUTES.toNanos(key)).setTicker(clock::get));
+    for (int i = 1; i <= 100; i++) {
+      cache.getValue(i, key -> String.valueOf(key));
+    }
+    for (int minute = 10; minute <= 100; minute += 10) {
+      clock.set(TimeUnit.MINUTES.toNanos(minute) + 1);
+      cache.cleanUp();
+      assertEquals(100 - minute, cache.getSize());
+    }
+  }
+
+  @Test
+  public void asyncRefreshTest() throws Exception {
+    List<Runnable> pendingRefreshes = new ArrayList<>();
+    AtomicInteger version = new AtomicInteger(1);
+    InMemoryCache<Integer,Integer> cache = new InMemoryCache<>(new CacheConfig<Integer,Integer>()
+        .setAsyncRefresh(true).setRefreshExecutor(pendingRefreshes::add));
+    ValueFactory<Integer,Integer> factory = new ValueFactory<Integer,Integer>() {
+      @Override
+      public Integer getNewValue(Integer key) {
+        return version.get();
+      }
+      @Override
+      public Integer getUpdatedValue(Integer key, Integer previousValue) {
+        return version.get();
+      }
+      @Override
+      public boolean valueNeedsUpdating(Integer value) {
+        return value < version.get();
+      }
+    };
+    assertEquals(Integer.valueOf(1), cache.getValue(1, factory));
+    version.set(2);
+    // stale value is served while a single refresh is pending
+    for (int i = 0; i < 5; i++) {
+      assertEquals(Integer.valueOf(1), cache.getValue(1, factory));
+    }
+    assertEquals(1, pendingRefreshes.size());
+    pendingRefreshes.remove(0).run();
+    assertEquals(Integer.valueOf(2), cache.getValue(1, factory));
+    assertEquals(0, pendingRefreshes.size());
+  }
+
+  @Test
+  public void refreshAfterWriteTest() throws Exception {
+    AtomicLong clock = new AtomicLong(0);
+    AtomicInteger loads = new AtomicInteger(0);
+    InMemoryCache<Integer,String> cache = new InMemoryCache<>(new CacheConfig<Integer,String>()
+        .setRefreshAfterWrite(5, TimeUnit.SECONDS).setExpireAfterWrite(10, TimeUnit.SECONDS)
+        .setRefreshExecutor(Runnable::run).setTicker(clock::get));
+    ValueFactory<Integer,String> factory = key -> key + "-" + loads.incrementAndGet();
+    assertEquals("1-1", cache.getValue(1, factory));
+    clock.set(TimeUnit.SECONDS.toNanos(4));
+    assertEquals("1-1", cache.getValue(1, factory));
+    // first read after the refresh interval triggers a reload but returns the current value
+    clock.set(TimeUnit.SECONDS.toNanos(6));
+    assertEquals("1-1", cache.getValue(1, factory));
+    assertEquals("1-2", cache.getValue(1, factory));
+    // refreshed value outlives the original write's expiration
+    clock.set(TimeUnit.SECONDS.toNanos(10));
+    assertEquals("1-2", cache.getValue(1, factory));
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void bulkLoadTest() throws Exception {
+    List<Collection<Integer>> batches = new ArrayList<>();
+    InMemoryCache<Integer,String> cache = new InMemoryCache<>();
+    BulkValueFactory<Integer,String> factory = keys -> {
+      batches.add(new ArrayList<>(keys));
+      Map<Integer,String> values = new HashMap<>();
+      for (Integer key : keys) {
+        // odd keys do not exist
+        if (key % 2 == 0) values.put(key, String.valueOf(key));
+      }
+      return values;
+    };
+    assertEquals("4", cache.getValue(4, factory));
+    Map<Integer,String> values = cache.getValues(Arrays.asList(6, 4, 3, 2, 6), factory);
+    // hit served from cache; all misses loaded in one call; order preserved
+    assertEquals(Arrays.asList(6, 4, 2), new ArrayList<>(values.keySet()));
+    assertEquals(2, batches.size());
+    assertEquals(Arrays.asList(6, 3, 2), batches.get(1));
+    assertEquals(3, cache.getSize());
+    cache.getValues(Arrays.asList(2, 4, 6), factory);
+    assertEquals(2, batches.size());
+  }
+
+  @Test
+  public void concurrentBulkLoadTest() throws Exception {
+    AtomicInteger loads = new AtomicInteger(0);
+    InMemoryCache<Integer,Integer> cache = new InMemoryCache<>(new CacheConfig<Integer,Integer>()
+        .setEngine(Engine.CONCURRENT));
+    BulkValueFactory<Integer,Integer> factory = keys -> {
+      Map<Integer,Integer> values = new HashMap<>();
+      for (Integer key : keys) {
+        loads.incrementAndGet();
+        values.put(key, key * 10);
+      }
+      return values;
+    };
+    List<Integer> keys = new ArrayList<>();
+    for (int i = 0; i < 200; i++) keys.add(i);
+    List<Thread> threads = new ArrayList<>();
+    Vector<Throwable> errors = new Vector<>();
+    for (int t = 0; t < 8; t++) {
+      Thread thread = new Thread(() -> {
+        try {
+          Map<Integer,Integer> values = cache.getValues(keys, factory);
+          assertEquals(200, values.size());
+          assertEquals(Integer.valueOf(1990), values.get(199));
+        }
+        catch (Throwable e) {
+          errors.add(e);
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) thread.join();
+    assertTrue(errors.isEmpty());
+    // single-flight: every key loaded exactly once across all threads
+    assertEquals(200, loads.get());
+  }
+
+  @Test
+  public void failureBackoffTest() throws Exception {
+    AtomicLong clock = new AtomicLong(0);
+    AtomicInteger attempts = new AtomicInteger(0);
+    AtomicInteger failuresRemaining = new AtomicInteger(3);
+    InMemoryCache<Integer,String> cache = new InMemoryCache<>(new CacheConfig<Integer,String>()
+        .setFailureBackoff(1, 4, TimeUnit.SECONDS).setTicker(clock::get));
+    ValueFactory<Integer,String> factory = key -> {
+      attempts.incrementAndGet();
+      if (failuresRemaining.getAndDecrement() > 0) {
+        throw new ValueProductionException("database unavailable");
+      }
+      return String.valueOf(key);
+    };
+    // failure is rethrown without retrying until 1s, then 2s, then 4s have passed
+    long[] retrySeconds = { 1, 3, 7 };
+    long now = 0;
+    for (int i = 0; i < retrySeconds.length; i++) {
+      for (; now < retrySeconds[i]; now++) {
+        clock.set(TimeUnit.SECONDS.toNanos(now));
+        try {
+          cache.getValue(1, factory);
+          throw new AssertionError("Expected failure");
+        }
+        catch (ValueProductionException e) {
+          assertEquals("database unavailable", e.getMessage());
+        }
+        assertEquals(i + 1, attempts.get());
+      }
+    }
+    clock.set(TimeUnit.SECONDS.toNanos(7));
+    assertEquals("1", cache.getValue(1, factory));
+    assertEquals(4, attempts.get());
+  }
+
+  @Test
+  public void statsTest() throws Exception {
+    AtomicLong clock = new AtomicLong(0);
+    InMemoryCache<Integer,String> cache = new InMemoryCache<>(new CacheConfig<Integer,String>()
+        .setName("statsTestCache").setCapacity(3).setExpireAfterWrite(1, TimeUnit.MINUTES).setTicker(clock::get));
+    ValueFactory<Integer,String> factory = key -> {
+      clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(key));
+      if (key == 0) throw new ValueProductionException("no zero");
+      return String.valueOf(key);
+    };
+    try {
+      cache.getValue(0, factory);
+    }
+    catch (ValueProductionException e) {
+      // expected
+    }
+    for (int key : new int[]{ 1, 2, 1, 3, 4, 4 }) {
+      cache.getValue(key, factory);
+    }
+    cache.expireEntries(4);
+    clock.addAndGet(TimeUnit.MINUTES.toNanos(2));
+    cache.cleanUp();
+
+    CacheStats stats = cache.getStats();
+    assertEquals("statsTestCache", stats.getName());
+    assertEquals(2, stats.getHitCount());
+    assertEquals(5, stats.getMissCount());
+    assertEquals(4, stats.getLoadSuccessCount());
+    assertEquals(1, stats.getLoadFailureCount());
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(10), stats.getTotalLoadTime());
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(4), stats.getLoadTimeMax());
+    assertEquals(Long.valueOf(1), stats.getRemovalCounts().get(RemovalCause.SIZE));
+    assertEquals(Long.valueOf(1), stats.getRemovalCounts().get(RemovalCause.EXPLICIT));
+    assertEquals(Long.valueOf(2), stats.getRemovalCounts().get(RemovalCause.EXPIRED));
+    assertEquals(0, stats.getSize());
+    assertEquals(5, stats.toJson().getLong("misses"));
+    assertTrue(CacheStats.getNamedCacheStats().containsKey("statsTestCache"));
+  }
+
+  @Test
+  public void offHeapTierTest() throws Exception {
+    AtomicInteger loads = new AtomicInteger(0);
+    InMemoryCache<Integer,String> cache = new InMemoryCache<>(new CacheConfig<Integer,String>()
+        .setCapacity(2).setOffHeapTier(100 * OffHeapStore.BLOCK_SIZE));
+    ValueFactory<Integer,String> factory = key -> {
+      loads.incrementAndGet();
+      return "x".repeat(key * 1000);
+    };
+    for (int key = 1; key <= 5; key++) {
+      cache.getValue(key, factory);
+    }
+    cache.cleanUp();
+    assertEquals(2, cache.getSize());
+    assertTrue(cache.getOffHeapBytes() > 0);
+    // evicted values are promoted from off-heap rather than reloaded
+    for (int key = 1; key <= 3; key++) {
+      assertEquals(key * 1000, cache.getValue(key, factory).length());
+    }
+    assertEquals(5, loads.get());
+    // explicitly expired values are discarded from both tiers
+    cache.expireEntries(1, 2, 3, 4, 5);
+    cache.cleanUp();
+    assertEquals(0, cache.getOffHeapBytes());
+    cache.getValue(1, factory);
+    assertEquals(6, loads.get());
+  }
+
+  @Test
+  public void snapshotTest() throws Exception {
+    Path snapshotDir = Files.createTempDirectory("cacheSnapshot");
+    Path snapshotFile = snapshotDir.resolve("cache.snapshot");
+    try {
+      AtomicInteger loads = new AtomicInteger(0);
+      ValueFactory<Integer,String> factory = key -> {
+        loads.incrementAndGet();
+        return "value" + key;
+      };
+      CacheConfig<Integer,String> config = new CacheConfig<Integer,String>()
+          .setSnapshotFile(snapshotFile)
+          .setSnapshotInterval(0, TimeUnit.MILLISECONDS)
+          .setExpireAfterWrite(1, TimeUnit.HOURS);
+      InMemoryCache<Integer,String> cache = new InMemoryCache<>(config);
+      for (int key = 1; key <= 3; key++) {
+        cache.getValue(key, factory);
+      }
+      assertEquals(3, cache.writeSnapshot());
+
+      // a new cache restores values on request instead of loading them
+      InMemoryCache<Integer,String> restarted = new InMemoryCache<>(config);
+      assertEquals(0, restarted.getSize());
+      assertEquals("value1", restarted.getValue(1, factory));
+      assertEquals(3, loads.get());
+
+      // entries not yet requested are carried into the next snapshot
+      assertEquals(3, restarted.writeSnapshot());
+
+      // restored values are revalidated, and expired entries are not restored
+      ValueFactory<Integer,String> staleFactory = new ValueFactory<Integer,String>() {
+        @Override
+        public String getNewValue(Integer key) {
+          return "new" + key;
+        }
+        @Override
+        public String getUpdatedValue(Integer key, String previousValue) {
+          return "updated" + key;
+        }
+        @Override
+        public boolean valueNeedsUpdating(String value) {
+          return value.startsWith("value");
+        }
+      };
+      assertEquals("updated3", restarted.getValue(3, staleFactory));
+      restarted.expireEntries(2);
+      assertEquals("new2", restarted.getValue(2, staleFactory));
+      assertEquals(3, loads.get());
+    }
+    finally {
+      Files.deleteIfExists(snapshotFile);
+      Files.delete(snapshotDir);
+    }
+  }
+
+  @Test
+  public void managedMapTest() throws Exception {
+    ManagedMap<Integer,Integer> map = new ManagedMap<>(100, InMemoryCache.INCREMENTAL_EVICTION);
+    assertEquals(null, map.get(1));
+    assertTrue(!map.containsKey(1));
+    assertEquals(null, map.put(1, 10));
+    assertEquals(Integer.valueOf(10), map.put(1, 11));
+    assertEquals(Integer.valueOf(11), map.putIfAbsent(1, 12));
+    assertTrue(!map.remove(1, 10));
+    assertTrue(map.replace(1, 11, 13));
+    assertEquals(Integer.valueOf(13), map.get(1));
+    assertEquals(null, map.computeIfPresent(2, (key, value) -> value + 1));
+    assertEquals(Integer.valueOf(4), map.computeIfAbsent(2, key -> key * 2));
+    assertEquals(null, map.compute(2, (key, value) -> null));
+    assertEquals(1, map.size());
+
+    // concurrent merges of the same keys are atomic
+    int numThreads = 8, numIncrements = 1000;
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < numThreads; i++) {
+      threads.add(new Thread(() -> {
+        for (int j = 0; j < numIncrements; j++) {
+          map.merge(j % 10 + 100, 1, Integer::sum);
+        }
+      }));
+    }
+    for (Thread thread : threads) thread.start();
+    for (Thread thread : threads) thread.join();
+    for (int key = 100; key < 110; key++) {
+      assertEquals(Integer.valueOf(numThreads * numIncrements / 10), map.get(key));
+    }
+
+    // iteration is supported, including removal
+    assertEquals(11, map.entrySet().size());
+    int sum = 0;
+    for (Iterator<Map.Entry<Integer,Integer>> iter = map.entrySet().iterator(); iter.hasNext(); ) {
+      Map.Entry<Integer,Integer> entry = iter.next();
+      sum += entry.getValue();
+      if (entry.getKey() >= 100) {
+        iter.remove();
+      }
+    }
+    assertEquals(13 + numThreads * numIncrements, sum);
+    assertEquals(1, map.size());
+    assertTrue(map.containsValue(13));
+    map.clear();
+    assertTrue(map.isEmpty());
+
+    // capacity is enforced as each write completes
+    for (int key = 0; key < 500; key++) {
+      map.put(key, key);
+      assertTrue(map.size() <= 100);
+    }
+    assertEquals(100, map.size());
+  }
+
+  @Test
+  public void asyncCacheTest() throws Exception {
+    AtomicInteger loads = new AtomicInteger(0);
+    Map<Integer, CompletableFuture<String>> pending = new ConcurrentHashMap<>();
+    AsyncValueFactory<Integer,String> factory = (key, executor) -> {
+      loads.incrementAndGet();
+      return pending.computeIfAbsent(key, k -> new CompletableFuture<>());
+    };
+    AsyncInMemoryCache<Integer,String> cache = new AsyncInMemoryCache<>();
+
+    // concurrent requests share the load in flight without waiting for it
+    CompletableFuture<String> first = cache.getValue(1, factory);
+    CompletableFuture<String> second = cache.getValue(1, factory);
+    assertEquals(1, loads.get());
+    assertTrue(!first.isDone() && !second.isDone());
+    pending.get(1).complete("one");
+    assertEquals("one", first.get());
+    assertEquals("one", second.get());
+    assertEquals("one", cache.getValue(1, factory).get());
+    assertEquals(1, loads.get());
+
+    // failed loads are reported and not cached
+    CompletableFuture<String> failed = cache.getValue(2, factory);
+    pending.remove(2).completeExceptionally(new ValueProductionException("no value"));
+    try {
+      failed.get();
+      assertTrue(false);
+    }
+    catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof ValueProductionException);
+    }
+    assertEquals(null, cache.getIfPresent(2));
+    cache.getValue(2, factory);
+    assertEquals(3, loads.get());
+
+    // synchronous factories run on the executor
+    assertEquals("3", cache.getValue(3, AsyncValueFactory.of(key -> String.valueOf(key))).get());
+    assertEquals(2, cache.getStats().getLoadSuccessCount());
+    assertEquals(1, cache.getStats().getLoadFailureCount());
+  }
+
+  @Test
+  public void tagInvalidationTest() throws Exception {
+    // even keys are tagged "even", and all keys with their tens digit
+    InMemoryCache<Integer,String> cache = new InMemoryCache<>(new CacheConfig<Integer,String>()
+        .setTagger((key, value) -> key % 2 == 0 ?
+            Arrays.asList("even", "tens" + key / 10) : Arrays.asList("tens" + key / 10)));
+    ValueFactory<Integer,String> factory = key -> String.valueOf(key);
+    for (int key = 0; key < 30; key++) {
+      cache.getValue(key, factory);
+    }
+    assertEquals(15, cache.invalidateByTag("even"));
+    assertEquals(15, cache.getSize());
+    assertEquals(0, cache.invalidateByTag("even"));
+    assertEquals(5, cache.invalidateByTag("tens1"));
+    assertEquals(4, cache.invalidateIf((key, value) -> value.endsWith("3") || value.endsWith("5")));
+    assertEquals(6, cache.getSize());
+
+    // triggering an event invalidates tagged entries in registered caches
+    Events.init();
+    try {
+      TagInvalidationBridge.subscribe();
+      TagInvalidationBridge.register(cache);
+      Events.triggerAndWait(new TagInvalidationEvent("tens2"), new Exception("Invalidation failed"));
+      assertEquals(3, cache.getSize());
+      TagInvalidationBridge.unregister(cache);
+    }
+    finally {
+      Events.shutDown();
+    }
+  }
+
+  @Test
+  public void tieredTagInvalidationTest() throws Exception {
+    Path snapshotDir = Files.createTempDirectory("cacheSnapshot");
+    Path snapshotFile = snapshotDir.resolve("cache.snapshot");
+    try {
+      AtomicInteger loads = new AtomicInteger(0);
+      ValueFactory<Integer,String> factory = key -> {
+        loads.incrementAndGet();
+        return "value" + key;
+      };
+      Tagger<Integer,String> tagger = (key, value) -> key % 2 == 0 ? Arrays.asList("even") : null;
+      InMemoryCache<Integer,String> cache = new InMemoryCache<>(new CacheConfig<Integer,String>()
+          .setCapacity(2).setOffHeapTier(100 * OffHeapStore.BLOCK_SIZE).setTagger(tagger));
+      for (int key = 1; key <= 6; key++) {
+        cache.getValue(key, factory);
+      }
+      cache.cleanUp();
+
+      // only tagged entries are removed from the off-heap tier
+      cache.invalidateByTag("even");
+      cache.invalidateIf((key, value) -> value.equals("value5"));
+      cache.cleanUp();
+      for (int key = 1; key <= 6; key++) {
+        cache.getValue(key, factory);
+      }
+      assertEquals(10, loads.get());
+
+      // only tagged entries are discarded from an unconsumed snapshot
+      CacheConfig<Integer,String> config = new CacheConfig<Integer,String>()
+          .setSnapshotFile(snapshotFile)
+          .setSnapshotInterval(0, TimeUnit.MILLISECONDS)
+          .setTagger(tagger);
+      InMemoryCache<Integer,String> snapshotted = new InMemoryCache<>(config);
+      for (int key = 1; key <= 6; key++) {
+        snapshotted.getValue(key, factory);
+      }
+      assertEquals(6, snapshotted.writeSnapshot());
+      InMemoryCache<Integer,String> restarted = new InMemoryCache<>(config);
+      restarted.invalidateByTag("even");
+      restarted.invalidateIf((key, value) -> value.equals("value1"));
+      for (int key = 1; key <= 6; key++) {
+        restarted.getValue(key, factory);
+      }
+      assertEquals(20, loads.get());
+    }
+    finally {
+      Files.deleteIfExists(snapshotFile);
+      Files.delete(snapshotDir);
+    }
+  }
+
+  @Test
+  public void warmUpTest() throws Exception {
+    List<Integer> keys = new ArrayList<>();
+    for (int key = 0; key < 100; key++) {
+      keys.add(key);
+    }
+    InMemoryCache<Integer,String> cache = new InMemoryCache<>(new CacheConfig<Integer,String>().setCapacity(200));
+    List<CacheWarmer.WarmUpProgress> reports = new Vector<>();
+    CacheWarmer.WarmUpProgress result = new CacheWarmer<>(cache, (Integer key) -> {
+      if (key == 13) throw new ValueProductionException("unlucky");
+      return String.valueOf(key);
+    }).setParallelism(4).setProgressListener(reports::add).warmUp(keys);
+    assertTrue(result.isFinished() && result.isComplete());
+    assertEquals(99, result.getLoaded());
+    assertEquals(1, result.getFailed());
+    assertEquals(99, cache.getSize());
+    assertTrue(reports.size() > 1 && reports.get(reports.size() - 1).isFinished());
+
+    // bulk factories load in batches
+    AtomicInteger calls = new AtomicInteger(0);
+    InMemoryCache<Integer,String> bulkCache = new InMemoryCache<>(new CacheConfig<Integer,String>().setCapacity(200));
+    result = new CacheWarmer<>(bulkCache, new BulkValueFactory<Integer,String>() {
+      @Override
+      public Map<Integer,String> getNewValues(Collection<Integer> batch) {
+        calls.incrementAndGet();
+        Map<Integer,String> values = new HashMap<>();
+        for (Integer key : batch) values.put(key, String.valueOf(key));
+        return values;
+      }
+    }).setBatchSize(25).warmUp(keys);
+    assertEquals(100, result.getLoaded());
+    assertEquals(4, calls.get());
+
+    // warm-up stops when its time budget runs out
+    result = new CacheWarmer<>(new InMemoryCache<Integer,String>(), (Integer key) -> {
+      try { Thread.sleep(20); } catch (InterruptedException e) { }
+      return String.valueOf(key);
+    }).setParallelism(1).setTimeBudget(100, TimeUnit.MILLISECONDS).warmUp(keys);
+    assertTrue(result.isFinished() && !result.isComplete());
+    assertTrue(result.getLoaded() < 100);
+  }
+
+  @Test
+  public void offHeapStoreTest() throws Exception {
+    OffHeapStore<String> store = new OffHeapStore<>(4 * OffHeapStore.BLOCK_SIZE, null);
+    byte[] threeBlocks = new byte[OffHeapStore.BLOCK_SIZE * 2 + 1];
+    threeBlocks[threeBlocks.length - 1] = 7;
+    assertTrue(store.put("a", threeBlocks, 0));
+    assertTrue(store.put("b", new byte[]{ 1, 2, 3 }, 0));
+    // budget exhausted; least recently used entry is discarded
+    assertTrue(store.put("c", new byte[OffHeapStore.BLOCK_SIZE], 0));
+    assertEquals(null, store.remove("a"));
+    assertEquals(3, store.remove("b")._bytes[2]);
+    assertTrue(!store.put("d", new byte[OffHeapStore.BLOCK_SIZE * 5], 0));
+    assertTrue(store.put("a", threeBlocks, 0));
+    assertEquals(7, store.remove("a")._bytes[threeBlocks.length - 1]);
+    assertEquals(OffHeapStore.BLOCK_SIZE, store.getUsedBytes());
+  }
 }
@@ -0,0 +1,71 @@
+package org.gusdb.fgputil.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+import org.gusdb.fgputil.cache.PolicySimulator.Result;
+import org.junit.Test;
+
+public class EvictionPolicyTest {
+
+  private static final Logger LOG = Logger.getLogger(EvictionPolicyTest.class);
+
+  // hot working set requested repeatedly, interrupted by bursts of one-off keys
+  private static List<String> getScanPollutedTrace() {
+    Random random = new Random(42);
+    List<String> trace = new ArrayList<>();
+    int scanKey = 0;
+    for (int round = 0; round < 50; round++) {
+      for (int i = 0; i < 500; i++) {
+        trace.add("hot-" + random.nextInt(80));
+      }
+      for (int i = 0; i < 300; i++) {
+        trace.add("scan-" + scanKey++);
+      }
+    }
+    return trace;
+  }
+
+  @Test
+  public void tinyLfuResistsScansTest() {
+    List<String> trace = getScanPollutedTrace();
+    List<Result> results = PolicySimulator.replayAll(trace, 100);
+    for (Result result : results) {
+      LOG.info(result);
+    }
+    Result lru = results.get(0);
+    Result tinyLfu = results.get(1);
+    assertEquals("LRU", lru.getPolicyName());
+    assertEquals("W-TinyLFU", tinyLfu.getPolicyName());
+    assertTrue(tinyLfu.getHitRate() > lru.getHitRate());
+  }
+
+  @Test
+  public void lruOrderTest() {
+    EvictionPolicy<Integer> policy = new LruPolicy<>(3);
+    policy.recordInsertion(1, 1);
+    policy.recordInsertion(2, 1);
+    policy.recordInsertion(3, 1);
+    policy.recordAccess(1);
+    policy.recordRemoval(2);
+    assertEquals(Integer.valueOf(3), policy.evict());
+    assertEquals(Integer.valueOf(1), policy.evict());
+    assertEquals(null, policy.evict());
+  }
+
+  @Test
+  public void tinyLfuCacheTest() throws Exception {
+    InMemoryCache<Integer,String> cache = new InMemoryCache<>(new CacheConfig<Integer,String>()
+        .setCapacity(10).setEvictionPolicy(WindowTinyLfuPolicy::new));
+    ValueFactory<Integer,String> factory = key -> String.valueOf(key);
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(String.valueOf(i % 37), cache.getValue(i % 37, factory));
+      assertTrue(cache.getSize() <= 10);
+    }
+  }
+}
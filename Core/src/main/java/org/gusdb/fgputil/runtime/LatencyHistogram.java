@@ -0,0 +1,149 @@
+package org.gusdb.fgputil.runtime;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe histogram of durations (or any non-negative long values) from
+ * which percentiles can be estimated.  Values are counted in log-linear
+ * buckets: each power of two is split into eight equal sub-buckets, so an
+ * estimated percentile is within 12.5% of the true value regardless of
+ * magnitude, while the histogram occupies a fixed ~4KB.  Recording a value is
+ * lock-free and allocation-free, so histograms may be updated on hot paths.
+ *
+ * @author rdoherty
+ */
+public class LatencyHistogram {
+
+  // number of sub-buckets each power of two is divided into (as bits)
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  private static final int NUM_BUCKETS = bucketIndex(Long.MAX_VALUE) + 1;
+
+  private final AtomicLongArray _buckets = new AtomicLongArray(NUM_BUCKETS);
+  private final LongAdder _count = new LongAdder();
+  private final LongAdder _total = new LongAdder();
+  private final AtomicLong _max = new AtomicLong(0);
+
+  /**
+   * Records a value.  Negative values are recorded as zero.
+   *
+   * @param value value to record (typically a duration)
+   */
+  public void record(long value) {
+    value = Math.max(0, value);
+    _buckets.incrementAndGet(bucketIndex(value));
+    _count.increment();
+    _total.add(value);
+    if (value > _max.get()) {
+      _max.accumulateAndGet(value, Math::max);
+    }
+  }
+
+  /**
+   * @return number of values recorded
+   */
+  public long getCount() {
+    return _count.sum();
+  }
+
+  /**
+   * @return sum of values recorded
+   */
+  public long getTotal() {
+    return _total.sum();
+  }
+
+  /**
+   * @return largest value recorded, or 0 if none
+   */
+  public long getMax() {
+    return _max.get();
+  }
+
+  /**
+   * @return mean of values recorded, or 0 if none
+   */
+  public double getMean() {
+    long count = getCount();
+    return count == 0 ? 0 : (double)getTotal() / count;
+  }
+
+  /**
+   * Estimates the value below which the passed percentage of recorded values
+   * fall.  The estimate is the upper bound of the bucket containing the
+   * percentile (but never more than the maximum recorded value).  Values
+   * recorded concurrently with this call may or may not be considered.
+   *
+   * @param percentile percentile to estimate, between 0 and 100
+   * @return estimated value at the percentile, or 0 if no values were recorded
+   */
+  public long getPercentile(double percentile) {
+    long[] counts = new long[NUM_BUCKETS];
+    long count = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      counts[i] = _buckets.get(i);
+      count += counts[i];
+    }
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long)Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(bucketUpperBound(i), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  /**
+   * @return summary of the values recorded so far
+   */
+  public LatencySummary getSummary() {
+    return new LatencySummary(this);
+  }
+
+  /**
+   * Records all values of the passed histogram in this one.
+   *
+   * @param other histogram whose values should be added to this one
+   */
+  public void add(LatencyHistogram other) {
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      long bucketCount = other._buckets.get(i);
+      if (bucketCount > 0) {
+        _buckets.addAndGet(i, bucketCount);
+      }
+    }
+    _count.add(other.getCount());
+    _total.add(other.getTotal());
+    _max.accumulateAndGet(other.getMax(), Math::max);
+  }
+
+  // values below SUB_BUCKETS get their own bucket; larger values are bucketed
+  //   by their highest set bit plus the SUB_BUCKET_BITS bits below it
+  private static int bucketIndex(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int)value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int)((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  private static long bucketUpperBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    long subBucket = index % SUB_BUCKETS;
+    long lowerBound = (1L << exponent) + (subBucket << (exponent - SUB_BUCKET_BITS));
+    long width = 1L << (exponent - SUB_BUCKET_BITS);
+    return lowerBound + width - 1;
+  }
+}
@@ -0,0 +1,79 @@
+package org.gusdb.fgputil.runtime;
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+
+/**
+ * Immutable summary of the values in a <code>LatencyHistogram</code> at the
+ * time it was taken: count, total, mean, maximum, and estimated median, 90th,
+ * 95th and 99th percentiles.  Values are in whatever unit was recorded.
+ *
+ * @author rdoherty
+ */
+public class LatencySummary {
+
+  private final long _count;
+  private final long _total;
+  private final long _max;
+  private final long _p50;
+  private final long _p90;
+  private final long _p95;
+  private final long _p99;
+
+  public LatencySummary(LatencyHistogram histogram) {
+    _count = histogram.getCount();
+    _total = histogram.getTotal();
+    _max = histogram.getMax();
+    _p50 = histogram.getPercentile(50);
+    _p90 = histogram.getPercentile(90);
+    _p95 = histogram.getPercentile(95);
+    _p99 = histogram.getPercentile(99);
+  }
+
+  /** @return number of values recorded */
+  public long getCount() { return _count; }
+  /** @return sum of values recorded */
+  public long getTotal() { return _total; }
+  /** @return largest value recorded */
+  public long getMax() { return _max; }
+  /** @return estimated median */
+  public long get50th() { return _p50; }
+  /** @return estimated 90th percentile */
+  public long get90th() { return _p90; }
+  /** @return estimated 95th percentile */
+  public long get95th() { return _p95; }
+  /** @return estimated 99th percentile */
+  public long get99th() { return _p99; }
+
+  /**
+   * @return mean of values recorded, or 0 if none
+   */
+  public double getMean() {
+    return _count == 0 ? 0 : (double)_total / _count;
+  }
+
+  /**
+   * Returns a JSON representation of this summary with durations converted
+   * to (fractional) milliseconds.
+   *
+   * @param recordedUnit unit of the values recorded
+   * @return JSON representation of this summary
+   */
+  public JSONObject toJson(TimeUnit recordedUnit) {
+    double nanosPerUnit = recordedUnit.toNanos(1);
+    return new JSONObject()
+      .put("count", _count)
+      .put("totalMillis", toMillis(_total, nanosPerUnit))
+      .put("meanMillis", toMillis(getMean(), nanosPerUnit))
+      .put("p50Millis", toMillis(_p50, nanosPerUnit))
+      .put("p90Millis", toMillis(_p90, nanosPerUnit))
+      .put("p95Millis", toMillis(_p95, nanosPerUnit))
+      .put("p99Millis", toMillis(_p99, nanosPerUnit))
+      .put("maxMillis", toMillis(_max, nanosPerUnit));
+  }
+
+  private static double toMillis(double value, double nanosPerUnit) {
+    return value * nanosPerUnit / 1000000;
+  }
+}
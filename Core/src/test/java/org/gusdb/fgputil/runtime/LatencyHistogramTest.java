@@ -0,0 +1,66 @@
+package org.gusdb.fgputil.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long i = 1; i <= 1000; i++) {
+      histogram.record(i * 1000);
+    }
+    assertEquals(1000, histogram.getCount());
+    assertEquals(1000000, histogram.getMax());
+    assertEquals(500500, histogram.getMean(), 0.001);
+    for (double percentile : new double[]{ 50, 90, 99 }) {
+      long expected = (long)(percentile * 10000);
+      long estimate = histogram.getPercentile(percentile);
+      assertTrue(estimate >= expected && estimate <= expected * 1.125);
+    }
+    assertEquals(1000000, histogram.getPercentile(100));
+  }
+
+  @Test
+  public void testSmallAndExtremeValues() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getPercentile(50));
+    histogram.record(-5);
+    histogram.record(3);
+    histogram.record(Long.MAX_VALUE);
+    assertEquals(0, histogram.getPercentile(10));
+    assertEquals(3, histogram.getPercentile(50));
+    assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+  }
+
+  @Test
+  public void testAdd() {
+    LatencyHistogram first = new LatencyHistogram();
+    LatencyHistogram second = new LatencyHistogram();
+    first.record(10);
+    second.record(20);
+    second.record(30);
+    first.add(second);
+    assertEquals(3, first.getCount());
+    assertEquals(60, first.getTotal());
+    assertEquals(30, first.getMax());
+  }
+
+  @Test
+  public void testSummary() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(2000000);
+    histogram.record(4000000);
+    LatencySummary summary = histogram.getSummary();
+    histogram.record(6000000);
+    assertEquals(2, summary.getCount());
+    assertEquals(4000000, summary.getMax());
+    assertEquals(3000000, summary.getMean(), 0.001);
+    assertEquals(3, summary.toJson(TimeUnit.NANOSECONDS).getDouble("meanMillis"), 0.001);
+  }
+}
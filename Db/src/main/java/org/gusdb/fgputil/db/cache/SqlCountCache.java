@@ -4,16 +4,21 @@ import static org.gusdb.fgputil.functional.Functions.fSwallow;
 
 import javax.sql.DataSource;
 
+import org.gusdb.fgputil.cache.CacheConfig;
 import org.gusdb.fgputil.db.runner.SingleLongResultSetHandler;
 
 public class SqlCountCache extends SqlResultCache<Long> {
 
   public SqlCountCache(DataSource ds) {
+    this(ds, new CacheConfig<>());
+  }
+
+  public SqlCountCache(DataSource ds, CacheConfig<SqlQueryKey,Long> config) {
     super(ds, fSwallow(rs -> {
       SingleLongResultSetHandler handler = new SingleLongResultSetHandler();
       handler.handleResult(rs);
       return handler.getRetrievedValue();
-    }));
+    }), config);
   }
 
 }
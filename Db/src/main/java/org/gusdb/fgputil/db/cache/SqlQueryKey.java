@@ -0,0 +1,118 @@
+package org.gusdb.fgputil.db.cache;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Key of a cached query result: the SQL, its bind values, and optionally
+ * their SQL types.  Two keys are equal if their SQL and bind values are
+ * equal, so queries differing only in parameters are cached separately
+ * without inlining literals into the SQL (which would defeat the database's
+ * plan cache).  The hash code is computed once, on construction.
+ *
+ * A key may also carry a time to live for the result it identifies, which
+ * overrides the cache's configured expiry; it is not part of the key's
+ * identity.  A result's lifetime is therefore set by the key that loaded it:
+ * a later request with an equal key but a different time to live is served
+ * the cached result until that result expires.
+ *
+ * @author rdoherty
+ */
+public class SqlQueryKey implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  // signifies the cache's configured expiry applies
+  static final long DEFAULT_TIME_TO_LIVE = -1;
+
+  private final String _sql;
+  private final Object[] _args;
+  private final Integer[] _types;
+  private final long _timeToLiveNanos;
+  private final int _hashCode;
+
+  /**
+   * Creates a key for SQL with no parameters.
+   *
+   * @param sql SQL of query
+   */
+  public SqlQueryKey(String sql) {
+    this(sql, new Object[0], null);
+  }
+
+  /**
+   * Creates a key for parameterized SQL.
+   *
+   * @param sql SQL of query, with a '?' for each bind value
+   * @param args bind values
+   * @param types SQL types of bind values (see java.sql.Types), or null to let the driver decide
+   */
+  public SqlQueryKey(String sql, Object[] args, Integer[] types) {
+    this(sql, args, types, DEFAULT_TIME_TO_LIVE);
+  }
+
+  /**
+   * Creates a key for parameterized SQL whose result should be cached for the
+   * passed duration rather than per the cache's configured expiry.
+   *
+   * @param sql SQL of query, with a '?' for each bind value
+   * @param args bind values
+   * @param types SQL types of bind values (see java.sql.Types), or null to let the driver decide
+   * @param timeToLive duration result should be cached
+   * @param unit unit of duration
+   */
+  public SqlQueryKey(String sql, Object[] args, Integer[] types, long timeToLive, TimeUnit unit) {
+    this(sql, args, types, unit.toNanos(Math.max(0, timeToLive)));
+  }
+
+  private SqlQueryKey(String sql, Object[] args, Integer[] types, long timeToLiveNanos) {
+    if (sql == null) throw new NullPointerException("SQL cannot be null.");
+    _sql = sql;
+    _args = (args == null ? new Object[0] : args.clone());
+    _types = (types == null ? null : types.clone());
+    _timeToLiveNanos = timeToLiveNanos;
+    _hashCode = 31 * (31 * _sql.hashCode() + Arrays.deepHashCode(_args)) + Arrays.hashCode(_types);
+  }
+
+  public String getSql() {
+    return _sql;
+  }
+
+  public Object[] getArgs() {
+    return _args.clone();
+  }
+
+  public Integer[] getTypes() {
+    return _types == null ? null : _types.clone();
+  }
+
+  /**
+   * @return time to live of this key's result in nanoseconds, or
+   * DEFAULT_TIME_TO_LIVE if the cache's configured expiry applies
+   */
+  long getTimeToLiveNanos() {
+    return _timeToLiveNanos;
+  }
+
+  @Override
+  public int hashCode() {
+    return _hashCode;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) return true;
+    if (!(obj instanceof SqlQueryKey)) return false;
+    SqlQueryKey other = (SqlQueryKey)obj;
+    return _hashCode == other._hashCode &&
+        _sql.equals(other._sql) &&
+        Arrays.deepEquals(_args, other._args) &&
+        Arrays.equals(_types, other._types);
+  }
+
+  @Override
+  public String toString() {
+    return _sql + " with args " + Arrays.toString(_args);
+  }
+}
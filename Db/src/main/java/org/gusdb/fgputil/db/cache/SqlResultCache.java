@@ -5,27 +5,89 @@ import java.util.function.Function;
 
 import javax.sql.DataSource;
 
+import org.gusdb.fgputil.cache.CacheConfig;
+import org.gusdb.fgputil.cache.Expiry;
 import org.gusdb.fgputil.cache.InMemoryCache;
 import org.gusdb.fgputil.cache.ValueFactory;
 import org.gusdb.fgputil.cache.ValueProductionException;
 import org.gusdb.fgputil.db.runner.SQLRunner;
 
-public class SqlResultCache<T> extends InMemoryCache<String,T> {
+/**
+ * Caches parsed results of SQL queries, keyed by SQL and bind values (see
+ * <code>SqlQueryKey</code>).  Queries are run through SQLRunner with bind
+ * variables, so the database can reuse plans across parameter values.  A
+ * key may carry its own time to live, overriding the configured expiry; keys'
+ * times to live are honored if an expiry is configured, or if the cache is
+ * created with <code>queryTimeToLive</code> set (otherwise no expiry is
+ * tracked at all).
+ * Configure the cache with <code>CacheConfig.setSnapshotFile()</code> to
+ * persist results across restarts; results restored from a snapshot are
+ * served without querying.
+ *
+ * @param <T> type of parsed result
+ */
+public class SqlResultCache<T> extends InMemoryCache<SqlQueryKey,T> {
 
   private final DataSource _ds;
   private final Function<ResultSet, T> _resultParser;
 
   public SqlResultCache(DataSource ds, Function<ResultSet,T> resultParser) {
+    this(ds, resultParser, new CacheConfig<>());
+  }
+
+  public SqlResultCache(DataSource ds, Function<ResultSet,T> resultParser, CacheConfig<SqlQueryKey,T> config) {
+    this(ds, resultParser, config, config.getExpiry() != null);
+  }
+
+  /**
+   * @param ds data source queries are run against
+   * @param resultParser parses query results into cached values
+   * @param config cache configuration; it is copied, not modified
+   * @param queryTimeToLive whether keys' own times to live should be honored
+   * even if no expiry is configured
+   */
+  public SqlResultCache(DataSource ds, Function<ResultSet,T> resultParser,
+      CacheConfig<SqlQueryKey,T> config, boolean queryTimeToLive) {
+    super(queryTimeToLive ? new CacheConfig<>(config).setExpiry(withQueryTimeToLive(config.getExpiry())) : config);
     _ds = ds;
     _resultParser = resultParser;
   }
 
   public T getItem(String sql, String sqlName) throws ValueProductionException {
-    return getValue(sql, getFetcher(sql, sqlName));
+    return getItem(new SqlQueryKey(sql), sqlName);
+  }
+
+  public T getItem(SqlQueryKey query, String sqlName) throws ValueProductionException {
+    return getValue(query, getFetcher(sqlName));
+  }
+
+  public ValueFactory<SqlQueryKey,T> getFetcher(String sqlName) {
+    return query -> new SQLRunner(_ds, query.getSql(), sqlName)
+        .executeQuery(query.getArgs(), query.getTypes(), rs -> _resultParser.apply(rs));
   }
 
-  public ValueFactory<String,T> getFetcher(String sql, String sqlName) {
-    return sql2 /* unused; will be same as sql */ ->
-      new SQLRunner(_ds, sql, sqlName).executeQuery(rs -> _resultParser.apply(rs));
+  // keys' own times to live take precedence over the configured expiry, if any
+  private static <T> Expiry<SqlQueryKey,T> withQueryTimeToLive(Expiry<SqlQueryKey,T> configured) {
+    return new Expiry<SqlQueryKey,T>() {
+      @Override
+      public long expireAfterCreate(SqlQueryKey key, T value, long currentTime) {
+        return key.getTimeToLiveNanos() != SqlQueryKey.DEFAULT_TIME_TO_LIVE ? key.getTimeToLiveNanos() :
+          configured != null ? configured.expireAfterCreate(key, value, currentTime) : Long.MAX_VALUE;
+      }
+      @Override
+      public long expireAfterUpdate(SqlQueryKey key, T value, long currentTime, long currentDuration) {
+        return key.getTimeToLiveNanos() != SqlQueryKey.DEFAULT_TIME_TO_LIVE ? key.getTimeToLiveNanos() :
+          configured != null ? configured.expireAfterUpdate(key, value, currentTime, currentDuration) : Long.MAX_VALUE;
+      }
+      @Override
+      public long expireAfterRead(SqlQueryKey key, T value, long currentTime, long currentDuration) {
+        return key.getTimeToLiveNanos() != SqlQueryKey.DEFAULT_TIME_TO_LIVE || configured == null ? currentDuration :
+          configured.expireAfterRead(key, value, currentTime, currentDuration);
+      }
+      @Override
+      public boolean isAccessBased() {
+        return configured != null && configured.isAccessBased();
+      }
+    };
   }
 }
@@ -2,17 +2,32 @@ package org.gusdb.fgputil.db.leakmonitor;
 
 import static org.gusdb.fgputil.FormatUtil.NL;
 
+import java.lang.StackWalker.StackFrame;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import org.gusdb.fgputil.EncryptionUtil;
 import org.gusdb.fgputil.FormatUtil;
 
 public class UnclosedObjectInfo {
 
-  private String _dbName;
-  private CloseableObjectType<?> _type;
-  private Date _timeOpened;
+  // hash reported for objects whose stack trace was not sampled
+  public static final String NOT_SAMPLED = "not-sampled";
+
+  private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+
+  // deeper frames (e.g. of the container) are not captured, bounding the cost of each open
+  private static final int MAX_FRAMES = 100;
+
+  private final String _dbName;
+  private final CloseableObjectType<?> _type;
+  private final Date _timeOpened;
+
+  // frames are captured on open, but only formatted and hashed when requested
+  //   (i.e. for objects reported as still open); null if not sampled
+  private final List<StackFrame> _frames;
   private String _stackTrace;
   private String _stackTraceHash;
 
@@ -21,22 +36,42 @@ public class UnclosedObjectInfo {
   }
 
   public UnclosedObjectInfo(String dbName, CloseableObjectType<?> type, Map<String, String> globalStacktraceMap) {
+    this(dbName, type, globalStacktraceMap, true);
+  }
+
+  public UnclosedObjectInfo(String dbName, CloseableObjectType<?> type,
+      Map<String, String> globalStacktraceMap, boolean captureStackTrace) {
     _dbName = dbName;
     _type = type;
     _timeOpened = new Date();
-    _stackTrace = FormatUtil.getCurrentStackTrace();
-    _stackTraceHash = EncryptionUtil.encrypt(_stackTrace);
+    _frames = captureStackTrace ? STACK_WALKER.walk(frames -> frames.limit(MAX_FRAMES).collect(Collectors.toList())) : null;
     // only add stack trace to global map if specified
-    if (globalStacktraceMap != null) {
-      globalStacktraceMap.put(_stackTraceHash, _stackTrace);
+    if (globalStacktraceMap != null && _frames != null) {
+      globalStacktraceMap.put(getStackTraceHash(), getStackTrace());
     }
   }
 
+  // formatted values are immutable, so a race at most formats them twice
   public String getStackTraceHash() {
+    if (_stackTraceHash == null) {
+      _stackTraceHash = (_frames == null ? NOT_SAMPLED : EncryptionUtil.encrypt(getStackTrace()));
+    }
     return _stackTraceHash;
   }
 
   public String getStackTrace() {
+    if (_stackTrace == null) {
+      if (_frames == null) {
+        _stackTrace = "Stack trace not sampled" + NL;
+      }
+      else {
+        StringBuilder sb = new StringBuilder(_type.getName()).append(" opened").append(NL);
+        for (StackFrame frame : _frames) {
+          sb.append("\tat ").append(frame.toStackTraceElement()).append(NL);
+        }
+        _stackTrace = sb.toString();
+      }
+    }
     return _stackTrace;
   }
 
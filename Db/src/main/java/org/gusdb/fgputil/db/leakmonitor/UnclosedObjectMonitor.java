@@ -21,8 +21,19 @@ public class UnclosedObjectMonitor<T> {
   public static class UnclosedObjectMonitorMap extends ArrayList<UnclosedObjectMonitor<?>> {
 
     public UnclosedObjectMonitorMap(String dbName, boolean recordAllStacktraces) {
+      this(dbName, recordAllStacktraces, 1);
+    }
+
+    /**
+     * @param dbName name of DB whose objects are monitored
+     * @param recordAllStacktraces whether to keep every distinct stack trace
+     * which opened an object, closed or not; if so, every stack trace is captured
+     * @param stackTraceSampleRate stack traces are captured for 1 in this many
+     * opened objects; 1 captures all, 0 none
+     */
+    public UnclosedObjectMonitorMap(String dbName, boolean recordAllStacktraces, int stackTraceSampleRate) {
       for (CloseableObjectType<?> type : CloseableObjectType.values()) {
-        add(new UnclosedObjectMonitor<>(type, dbName, recordAllStacktraces));
+        add(new UnclosedObjectMonitor<>(type, dbName, recordAllStacktraces, stackTraceSampleRate));
       }
     }
 
@@ -37,15 +48,18 @@ public class UnclosedObjectMonitor<T> {
   private final CloseableObjectType<T> _type;
   private final String _dbName;
   private final boolean _recordAllStacktraces;
+  private final int _stackTraceSampleRate;
   private final Map<T, UnclosedObjectInfo> _unclosedObjectMap = new ConcurrentHashMap<>();
   private final Map<String, String> _globalStacktraceMap = new ConcurrentHashMap<>();
   private final AtomicInteger _numOpened = new AtomicInteger(0);
   private final AtomicInteger _numClosed = new AtomicInteger(0);
 
-  private UnclosedObjectMonitor(CloseableObjectType<T> type, String dbName, boolean recordAllStacktraces) {
+  private UnclosedObjectMonitor(CloseableObjectType<T> type, String dbName,
+      boolean recordAllStacktraces, int stackTraceSampleRate) {
     _type = type;
     _dbName = dbName;
     _recordAllStacktraces = recordAllStacktraces;
+    _stackTraceSampleRate = recordAllStacktraces ? 1 : stackTraceSampleRate;
   }
 
   public CloseableObjectType<T> getType() {
@@ -54,9 +68,11 @@ public class UnclosedObjectMonitor<T> {
 
   public void registerOpenedObject(T obj) {
 
-    UnclosedObjectInfo info = (_recordAllStacktraces ?
-        new UnclosedObjectInfo(_dbName, _type, _globalStacktraceMap) :
-        new UnclosedObjectInfo(_dbName, _type));
+    // every object is tracked, but only sampled objects capture a stack trace
+    int numOpened = _numOpened.incrementAndGet();
+    boolean sampled = _stackTraceSampleRate > 0 && numOpened % _stackTraceSampleRate == 0;
+    UnclosedObjectInfo info = new UnclosedObjectInfo(_dbName, _type,
+        _recordAllStacktraces ? _globalStacktraceMap : null, sampled);
 
     if (LOG.isDebugEnabled()) {
       // log hash for this object; let caller know what was opened
@@ -65,7 +81,6 @@ public class UnclosedObjectMonitor<T> {
     }
 
     _unclosedObjectMap.put(obj, info);
-    _numOpened.incrementAndGet();
   }
 
   public void unregisterClosedObject(T obj) {
@@ -118,7 +133,12 @@ public class UnclosedObjectMonitor<T> {
         .append("================================").append(NL).append(NL)
         .append("  ").append(_numOpened.get()).append(" " + typeNamePlural + " opened").append(NL)
         .append("  ").append(_numClosed.get()).append(" " + typeNamePlural + " closed").append(NL)
-        .append("  ").append(rawInfoList.size()).append(" currently open " + typeNamePlural).append(NL).append(NL);
+        .append("  ").append(rawInfoList.size()).append(" currently open " + typeNamePlural).append(NL);
+    if (_stackTraceSampleRate != 1) {
+      sb.append("  Stack traces sampled for ").append(_stackTraceSampleRate == 0 ? "no" :
+        "1 in " + _stackTraceSampleRate).append(" " + typeNamePlural).append(NL);
+    }
+    sb.append(NL);
 
     // if no unclosed objects exist, skip unclosed section
     if (!rawInfoList.isEmpty()) {
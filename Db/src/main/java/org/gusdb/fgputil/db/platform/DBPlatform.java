@@ -137,6 +137,17 @@ public abstract class DBPlatform {
     public abstract boolean containsUncommittedActions(Connection c)
         throws SQLException, UnsupportedOperationException;
 
+    /**
+     * Whether this platform supports DB links, whose use can leave a
+     * distributed transaction open even on auto-commit connections until the
+     * connection explicitly commits.
+     *
+     * @return true if statements may reference DB links, else false (the default)
+     */
+    public boolean supportsDbLinks() {
+      return false;
+    }
+
     /**
      *
      *
@@ -403,4 +403,9 @@ public class Oracle extends DBPlatform {
       throw e;
     }
   }
+
+  @Override
+  public boolean supportsDbLinks() {
+    return true;
+  }
 }
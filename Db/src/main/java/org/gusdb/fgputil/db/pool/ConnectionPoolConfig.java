@@ -6,6 +6,16 @@ import org.json.JSONObject;
 
 public interface ConnectionPoolConfig {
 
+  /**
+   * Methods of validating pooled connections
+   */
+  enum ValidationMethod {
+    /** run the platform's validation query */
+    VALIDATION_QUERY,
+    /** call JDBC4 Connection.isValid(), which drivers may implement without a query */
+    IS_VALID;
+  }
+
   String getLogin();
   String getPassword();
   String getConnectionUrl();
@@ -25,6 +35,106 @@ public interface ConnectionPoolConfig {
   long getShowConnectionsInterval();
   long getShowConnectionsDuration();
 
+  /**
+   * Prepared statements (and callable statements) may be cached per pooled
+   * connection, keyed by SQL and result set options, so that repeated queries
+   * are not re-parsed by the database.  Statements closed by callers are
+   * returned to their connection's cache; when the cache is full, the least
+   * recently used idle statement is closed to make room.  Note the cache size
+   * also limits the number of statements a single connection may have open at
+   * once.
+   *
+   * @return maximum number of statements cached per connection, or 0 to
+   * disable statement caching
+   */
+  default int getStatementCacheSize() {
+    return 0;
+  }
+
+  /**
+   * @return method used to validate connections
+   */
+  default ValidationMethod getValidationMethod() {
+    return ValidationMethod.IS_VALID;
+  }
+
+  /**
+   * Connections borrowed from the pool are validated only if they have been
+   * idle for at least this many milliseconds.  Connections used recently are
+   * very likely still valid, so the default threshold of five seconds avoids
+   * nearly all validations (each a round trip on some drivers) under load.
+   *
+   * @return minimum idle time in milliseconds before a connection is validated
+   * on borrow, 0 to validate on every borrow, or a negative value to disable
+   * validation on borrow
+   */
+  default long getValidationIdleThreshold() {
+    return 5000;
+  }
+
+  /**
+   * @return true if connections should also be validated as they are returned
+   * to the pool
+   */
+  default boolean isTestOnReturn() {
+    return false;
+  }
+
+  /**
+   * If positive, a background thread validates idle connections at this
+   * interval, removing those no longer valid, so borrowers rarely encounter
+   * stale connections regardless of borrow-time validation.
+   *
+   * @return interval in milliseconds between validations of idle
+   * connections, or 0 to disable background validation
+   */
+  default long getTestWhileIdleInterval() {
+    return 0;
+  }
+
+  /**
+   * On platforms supporting DB links, a connection returned to the pool in
+   * auto-commit mode is explicitly committed to end any distributed
+   * transaction a DB link may have opened.  By default this is done whenever
+   * any statement was run on the connection.  If enabled, the commit is
+   * skipped unless a statement's SQL contains '@'; this is only safe if DB
+   * links are never reached indirectly, e.g. through synonyms or views.
+   *
+   * @return true if DB link use should be detected from '@' in SQL
+   */
+  default boolean isDbLinkDetectionBySql() {
+    return false;
+  }
+
+  /**
+   * Connections, statements and result sets are tracked until closed, so
+   * those left open can be reported along with the stack trace that opened
+   * them.  Stack frames are captured on every open (only those of objects
+   * reported as leaks are formatted), which busy applications may reduce by
+   * capturing them only for a sample of objects; leaks repeated often will
+   * still be reported with their origin.  Sampling is ignored if all stack
+   * traces are recorded.
+   *
+   * @return N, where stack traces are captured for 1 in N opened objects;
+   * 1 captures all, 0 none
+   */
+  default int getLeakMonitorSampleRate() {
+    return 1;
+  }
+
+  /**
+   * Connection hold times are attributed to the method that borrowed each
+   * connection (see <code>ConnectionPoolMetrics</code>), which is found by
+   * walking the borrowing thread's stack.  To limit that cost, callers are
+   * found only for a sample of borrows; hold times of other borrows count
+   * toward the pool's overall hold times only.
+   *
+   * @return N, where callers are found for 1 in N borrows; 1 finds all, 0 none
+   */
+  default int getCallerSampleRate() {
+    return 100;
+  }
+
   default JSONObject toJson() {
     return new JSONObject()
       .put("login", getLogin())
@@ -40,6 +150,14 @@ public interface ConnectionPoolConfig {
       .put("maxWait", getMaxWait())
       .put("showConnections", isShowConnections())
       .put("showConnectionsInterval", getShowConnectionsInterval())
-      .put("showConnectionsDuration", getShowConnectionsDuration());
+      .put("showConnectionsDuration", getShowConnectionsDuration())
+      .put("statementCacheSize", getStatementCacheSize())
+      .put("validationMethod", getValidationMethod())
+      .put("validationIdleThreshold", getValidationIdleThreshold())
+      .put("testOnReturn", isTestOnReturn())
+      .put("testWhileIdleInterval", getTestWhileIdleInterval())
+      .put("dbLinkDetectionBySql", isDbLinkDetectionBySql())
+      .put("leakMonitorSampleRate", getLeakMonitorSampleRate())
+      .put("callerSampleRate", getCallerSampleRate());
   }
 }
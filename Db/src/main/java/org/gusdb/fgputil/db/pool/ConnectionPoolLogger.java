@@ -23,10 +23,13 @@ public class ConnectionPoolLogger implements Runnable {
             " seconds, then shut down." : "."));
     long startTime = System.currentTimeMillis();
     while (!Thread.currentThread().isInterrupted() && !_shutdownFlag) {
+      ConnectionPoolStats stats = _dbInstance.getPoolStats();
       LOG.info(new StringBuilder()
         .append("[").append(_dbInstance.getIdentifier()).append("]")
-        .append(" Connections: Active = ").append(_dbInstance.getActiveCount())
-        .append(", Idle = ").append(_dbInstance.getIdleCount())
+        .append(" Connections: Active = ").append(stats.getNumActive())
+        .append(", Idle = ").append(stats.getNumIdle())
+        .append(", Borrow wait p99 = ").append(stats.getBorrowWaits().get99th() / 1000000).append("ms")
+        .append(", Exhaustions = ").append(stats.getExhaustionCount())
         .toString());
 
       long elapsedSecs = (System.currentTimeMillis() - startTime) / 1000;
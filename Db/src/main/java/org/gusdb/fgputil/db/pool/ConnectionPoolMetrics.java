@@ -0,0 +1,148 @@
+package org.gusdb.fgputil.db.pool;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.gusdb.fgputil.runtime.LatencyHistogram;
+
+/**
+ * Accumulates usage metrics for a connection pool: how long callers wait to
+ * borrow connections, how long they hold them (overall and per calling
+ * method), and how often borrows fail because the pool is exhausted.  All
+ * durations are in nanoseconds.  Recording is lock-free; snapshots are taken
+ * with <code>getStats()</code>.
+ *
+ * A caller is the first method on the borrowing thread's stack outside this
+ * library's DB classes and the JDK, e.g. the application method that ran an
+ * SQLRunner.  Since finding the caller walks the stack, callers are found
+ * only for a sample of borrows (1 in callerSampleRate), so per-caller hold
+ * times cover only those borrows.  To bound memory, at most MAX_CALLERS
+ * callers are tracked individually; hold times of further callers are
+ * recorded under OTHER_CALLER.
+ *
+ * @author rdoherty
+ */
+public class ConnectionPoolMetrics {
+
+  public static final int MAX_CALLERS = 500;
+  public static final String OTHER_CALLER = "<other>";
+  public static final String UNKNOWN_CALLER = "<unknown>";
+
+  private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+
+  private static final String[] INTERNAL_PACKAGES = {
+      "org.gusdb.fgputil.db.", "java.", "javax.", "jdk.", "sun.", "org.apache.commons."
+  };
+
+  private final int _callerSampleRate;
+  private final AtomicInteger _numBorrows = new AtomicInteger(0);
+  private final LatencyHistogram _borrowWaits = new LatencyHistogram();
+  private final LatencyHistogram _holdTimes = new LatencyHistogram();
+  private final Map<String, LatencyHistogram> _holdTimesByCaller = new ConcurrentHashMap<>();
+  private final LongAdder _borrowFailures = new LongAdder();
+  private final LongAdder _exhaustions = new LongAdder();
+
+  /**
+   * Creates metrics which find the caller of every borrow.
+   */
+  public ConnectionPoolMetrics() {
+    this(1);
+  }
+
+  /**
+   * @param callerSampleRate callers are found for 1 in this many borrows;
+   * 1 finds all, 0 none
+   */
+  public ConnectionPoolMetrics(int callerSampleRate) {
+    _callerSampleRate = callerSampleRate;
+  }
+
+  /**
+   * @return name of the method borrowing a connection on this thread if this
+   * borrow is sampled, else null
+   */
+  public String sampleCaller() {
+    int numBorrows = _numBorrows.incrementAndGet();
+    return _callerSampleRate > 0 && numBorrows % _callerSampleRate == 0 ? findCaller() : null;
+  }
+
+  /**
+   * @return name (class and method) of the method borrowing a connection on this thread
+   */
+  public static String findCaller() {
+    return STACK_WALKER.walk(frames -> frames
+        .filter(frame -> !isInternal(frame.getClassName()))
+        .findFirst()
+        .map(frame -> frame.getClassName() + "." + frame.getMethodName())
+        .orElse(UNKNOWN_CALLER));
+  }
+
+  private static boolean isInternal(String className) {
+    for (String pkg : INTERNAL_PACKAGES) {
+      if (className.startsWith(pkg)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Records a successful borrow.
+   *
+   * @param waitNanos time spent waiting for the connection
+   */
+  public void recordBorrow(long waitNanos) {
+    _borrowWaits.record(waitNanos);
+  }
+
+  /**
+   * Records a failed borrow.
+   *
+   * @param waitNanos time spent waiting before failure
+   * @param exhausted true if the borrow timed out waiting for a connection
+   * because all were in use
+   */
+  public void recordBorrowFailure(long waitNanos, boolean exhausted) {
+    _borrowWaits.record(waitNanos);
+    _borrowFailures.increment();
+    if (exhausted) {
+      _exhaustions.increment();
+    }
+  }
+
+  /**
+   * Records the return of a connection to the pool.
+   *
+   * @param caller name of the method which borrowed the connection, or null
+   * if not sampled
+   * @param holdNanos time between borrow and return
+   */
+  public void recordHold(String caller, long holdNanos) {
+    _holdTimes.record(holdNanos);
+    if (caller == null) {
+      return;
+    }
+    LatencyHistogram histogram = _holdTimesByCaller.get(caller);
+    if (histogram == null) {
+      histogram = _holdTimesByCaller.size() < MAX_CALLERS ?
+          _holdTimesByCaller.computeIfAbsent(caller, key -> new LatencyHistogram()) :
+          _holdTimesByCaller.computeIfAbsent(OTHER_CALLER, key -> new LatencyHistogram());
+    }
+    histogram.record(holdNanos);
+  }
+
+  /**
+   * Takes a snapshot of these metrics along with the passed pool state.
+   *
+   * @param numActive number of connections currently borrowed
+   * @param numIdle number of connections currently idle
+   * @param maxActive maximum number of connections the pool may open
+   * @return snapshot of pool metrics
+   */
+  public ConnectionPoolStats getStats(int numActive, int numIdle, int maxActive) {
+    return new ConnectionPoolStats(numActive, numIdle, maxActive, _borrowWaits.getSummary(),
+        _borrowFailures.sum(), _exhaustions.sum(), _holdTimes.getSummary(), _holdTimesByCaller);
+  }
+}
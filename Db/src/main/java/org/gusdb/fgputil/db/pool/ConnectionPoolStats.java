@@ -0,0 +1,94 @@
+package org.gusdb.fgputil.db.pool;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import org.gusdb.fgputil.json.ToJson;
+import org.gusdb.fgputil.runtime.LatencyHistogram;
+import org.gusdb.fgputil.runtime.LatencySummary;
+import org.json.JSONObject;
+
+/**
+ * Immutable snapshot of a connection pool's usage, taken by
+ * <code>DatabaseInstance.getPoolStats()</code>.  Counts are cumulative since
+ * the pool was created; durations are in nanoseconds (milliseconds in JSON).
+ *
+ * Borrow wait times show whether callers queue for connections; exhaustion
+ * counts show how often they gave up.  Together with hold times (which
+ * callers keep connections longest) they indicate whether maxActive is too
+ * small, or whether some callers hold connections longer than they should.
+ *
+ * @author rdoherty
+ */
+public class ConnectionPoolStats implements ToJson {
+
+  private final int _numActive;
+  private final int _numIdle;
+  private final int _maxActive;
+  private final LatencySummary _borrowWaits;
+  private final long _borrowFailureCount;
+  private final long _exhaustionCount;
+  private final LatencySummary _holdTimes;
+  private final Map<String, LatencySummary> _holdTimesByCaller;
+
+  ConnectionPoolStats(int numActive, int numIdle, int maxActive, LatencySummary borrowWaits,
+      long borrowFailureCount, long exhaustionCount, LatencySummary holdTimes,
+      Map<String, LatencyHistogram> holdTimesByCaller) {
+    _numActive = numActive;
+    _numIdle = numIdle;
+    _maxActive = maxActive;
+    _borrowWaits = borrowWaits;
+    _borrowFailureCount = borrowFailureCount;
+    _exhaustionCount = exhaustionCount;
+    _holdTimes = holdTimes;
+    Map<String, LatencySummary> byCaller = new LinkedHashMap<>();
+    holdTimesByCaller.entrySet().stream()
+      .map(entry -> Map.entry(entry.getKey(), entry.getValue().getSummary()))
+      .sorted(Comparator.comparingLong((Entry<String, LatencySummary> entry) -> entry.getValue().getTotal()).reversed())
+      .forEach(entry -> byCaller.put(entry.getKey(), entry.getValue()));
+    _holdTimesByCaller = Collections.unmodifiableMap(byCaller);
+  }
+
+  /** @return number of connections borrowed when the snapshot was taken */
+  public int getNumActive() { return _numActive; }
+  /** @return number of idle connections when the snapshot was taken */
+  public int getNumIdle() { return _numIdle; }
+  /** @return maximum number of connections the pool may open */
+  public int getMaxActive() { return _maxActive; }
+  /** @return time callers waited for connections, successful or not */
+  public LatencySummary getBorrowWaits() { return _borrowWaits; }
+  /** @return number of borrows which failed for any reason */
+  public long getBorrowFailureCount() { return _borrowFailureCount; }
+  /** @return number of borrows which timed out because all connections were in use */
+  public long getExhaustionCount() { return _exhaustionCount; }
+  /** @return time connections were held by callers */
+  public LatencySummary getHoldTimes() { return _holdTimes; }
+  /** @return time connections were held, by caller, in descending order of total time */
+  public Map<String, LatencySummary> getHoldTimesByCaller() { return _holdTimesByCaller; }
+
+  @Override
+  public JSONObject toJson() {
+    JSONObject byCaller = new JSONObject();
+    for (Entry<String, LatencySummary> entry : _holdTimesByCaller.entrySet()) {
+      byCaller.put(entry.getKey(), entry.getValue().toJson(TimeUnit.NANOSECONDS));
+    }
+    return new JSONObject()
+      .put("active", _numActive)
+      .put("idle", _numIdle)
+      .put("maxActive", _maxActive)
+      .put("borrowWait", _borrowWaits.toJson(TimeUnit.NANOSECONDS))
+      .put("borrowFailures", _borrowFailureCount)
+      .put("exhaustions", _exhaustionCount)
+      .put("holdTime", _holdTimes.toJson(TimeUnit.NANOSECONDS))
+      .put("holdTimeByCaller", byCaller);
+  }
+
+  @Override
+  public String toString() {
+    return toJson().toString(2);
+  }
+}
@@ -15,9 +15,16 @@ import java.util.concurrent.atomic.AtomicInteger;
 import javax.sql.DataSource;
 
 import org.apache.commons.dbcp2.BasicDataSource;
+import org.apache.commons.dbcp2.PoolableConnection;
+import org.apache.commons.dbcp2.PoolableConnectionFactory;
+import org.apache.commons.pool2.PooledObjectFactory;
+import org.apache.commons.pool2.impl.AbandonedConfig;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.apache.log4j.Logger;
 import org.gusdb.fgputil.db.SqlUtils;
 import org.gusdb.fgputil.db.platform.DBPlatform;
+import org.gusdb.fgputil.db.pool.ConnectionPoolConfig.ValidationMethod;
 import org.gusdb.fgputil.db.wrapper.DataSourceWrapper;
 
 public class DatabaseInstance implements Wrapper, AutoCloseable {
@@ -98,7 +105,7 @@ public class DatabaseInstance implements Wrapper, AutoCloseable {
     if (testOnInitialize) runValidationQuery();
   }
 
-  // since testOnBorrow and testOnReturn are set to true, need only fetch a connection to test
+  // fetches a connection and runs the platform's validation query on it
   private void runValidationQuery() {
     LOG.info("Testing connection to " + getIdentifier() + "...");
     Connection conn = null;
@@ -229,8 +236,20 @@ public class DatabaseInstance implements Wrapper, AutoCloseable {
     Properties props = new Properties();
     String connectionUrl = initializeDbDriver(platform.getDriverClassName(), dbConfig.getDriverInitClass(), props, dbConfig.getConnectionUrl());
 
-    // create connection pool and set basic properties
-    BasicDataSource connectionPool = new BasicDataSource();
+    // create connection pool and set basic properties; validation of
+    //   recently used connections is skipped if configured
+    long validationIdleThreshold = dbConfig.getValidationIdleThreshold();
+    BasicDataSource connectionPool = new BasicDataSource() {
+      @Override
+      protected GenericObjectPool<PoolableConnection> createObjectPool(PoolableConnectionFactory factory,
+          GenericObjectPoolConfig<PoolableConnection> poolConfig, AbandonedConfig abandonedConfig) {
+        PooledObjectFactory<PoolableConnection> poolFactory = validationIdleThreshold > 0 ?
+            new IdleValidationFactory<>(factory, validationIdleThreshold) : factory;
+        return abandonedConfig == null ?
+            new GenericObjectPool<>(poolFactory, poolConfig) :
+            new GenericObjectPool<>(poolFactory, poolConfig, abandonedConfig);
+      }
+    };
     connectionPool.setUrl(connectionUrl);
     connectionPool.setUsername(dbConfig.getLogin());
     connectionPool.setPassword(dbConfig.getPassword());
@@ -246,12 +265,27 @@ public class DatabaseInstance implements Wrapper, AutoCloseable {
     connectionPool.setMinIdle(dbConfig.getMinIdle());
     connectionPool.setMaxTotal(dbConfig.getMaxActive());
 
-    // configure validationQuery tests
-    connectionPool.setValidationQuery(platform.getValidationQuery());
-    connectionPool.setTestOnBorrow(true);
-    connectionPool.setTestOnReturn(true);
+    // configure connection validation; with no validation query, DBCP uses Connection.isValid()
+    if (dbConfig.getValidationMethod() == ValidationMethod.VALIDATION_QUERY) {
+      connectionPool.setValidationQuery(platform.getValidationQuery());
+    }
+    connectionPool.setTestOnBorrow(dbConfig.getValidationIdleThreshold() >= 0);
+    connectionPool.setTestOnReturn(dbConfig.isTestOnReturn());
+    if (dbConfig.getTestWhileIdleInterval() > 0) {
+      // evictor only validates; idle connections are not otherwise evicted
+      connectionPool.setTestWhileIdle(true);
+      connectionPool.setTimeBetweenEvictionRunsMillis(dbConfig.getTestWhileIdleInterval());
+      connectionPool.setNumTestsPerEvictionRun(dbConfig.getMaxIdle());
+      connectionPool.setMinEvictableIdleTimeMillis(-1);
+    }
     connectionPool.setAccessToUnderlyingConnectionAllowed(true);
 
+    // configure per-connection prepared statement caching
+    if (dbConfig.getStatementCacheSize() > 0) {
+      connectionPool.setPoolPreparedStatements(true);
+      connectionPool.setMaxOpenPreparedStatements(dbConfig.getStatementCacheSize());
+    }
+
     return connectionPool;
   }
 
@@ -393,6 +427,15 @@ public class DatabaseInstance implements Wrapper, AutoCloseable {
     return _dataSource.getConnectionsCurrentlyOpen();
   }
 
+  /**
+   * @return snapshot of this pool's borrow wait times, hold times and exhaustion events
+   */
+  public ConnectionPoolStats getPoolStats() {
+    checkInit();
+    return _dataSource.getPoolMetrics().getStats(
+        _connectionPool.getNumActive(), _connectionPool.getNumIdle(), _connectionPool.getMaxTotal());
+  }
+
   /**
    * @return the number of instances currently borrowed from this pool.
    */
@@ -472,6 +515,16 @@ public class DatabaseInstance implements Wrapper, AutoCloseable {
     return _connectionPool.getTestWhileIdle();
   }
 
+  /**
+   * @return the maximum number of prepared statements cached per connection,
+   * or 0 if statement caching is disabled
+   */
+  public int getStatementCacheSize() {
+    checkInit();
+    return _connectionPool.isPoolPreparedStatements() ?
+        _connectionPool.getMaxOpenPreparedStatements() : 0;
+  }
+
   @Override
   public <T> T unwrap(Class<T> iface) throws SQLException {
     throw new UnsupportedOperationException();
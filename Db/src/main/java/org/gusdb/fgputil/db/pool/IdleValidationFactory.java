@@ -0,0 +1,50 @@
+package org.gusdb.fgputil.db.pool;
+
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.PooledObjectFactory;
+
+/**
+ * Pooled object factory which delegates to another, but skips validation of
+ * objects that have been idle in the pool for less than a threshold.  Used to
+ * validate connections only when they have sat unused long enough to have
+ * plausibly gone stale (e.g. been dropped by a firewall or the database).
+ *
+ * @author rdoherty
+ *
+ * @param <T> type of pooled object
+ */
+class IdleValidationFactory<T> implements PooledObjectFactory<T> {
+
+  private final PooledObjectFactory<T> _factory;
+  private final long _idleThresholdMillis;
+
+  IdleValidationFactory(PooledObjectFactory<T> factory, long idleThresholdMillis) {
+    _factory = factory;
+    _idleThresholdMillis = idleThresholdMillis;
+  }
+
+  @Override
+  public boolean validateObject(PooledObject<T> p) {
+    return p.getIdleTimeMillis() < _idleThresholdMillis || _factory.validateObject(p);
+  }
+
+  @Override
+  public PooledObject<T> makeObject() throws Exception {
+    return _factory.makeObject();
+  }
+
+  @Override
+  public void destroyObject(PooledObject<T> p) throws Exception {
+    _factory.destroyObject(p);
+  }
+
+  @Override
+  public void activateObject(PooledObject<T> p) throws Exception {
+    _factory.activateObject(p);
+  }
+
+  @Override
+  public void passivateObject(PooledObject<T> p) throws Exception {
+    _factory.passivateObject(p);
+  }
+}
@@ -379,6 +379,7 @@ public class SQLRunner {
       // handle result of SQL
       T result = exec.handleResult();
       timer.resultsHandled();
+      timer.setRowCount(exec.getRowCount());
 
       // complete execution
       commit(conn);
@@ -8,6 +8,7 @@ import org.apache.log4j.Logger;
 import org.gusdb.fgputil.db.SqlUtils;
 import org.gusdb.fgputil.db.runner.SQLRunner.ArgumentBatch;
 import org.gusdb.fgputil.db.runner.SQLRunner.ResultSetHandler;
+import org.gusdb.fgputil.db.wrapper.AbstractResultSetWrapper;
 
 /**
  * Container class for a set of static PreparedStatementExecutor implementations
@@ -110,6 +111,13 @@ class SQLRunnerExecutors {
       return _lastExecutionTime;
     }
 
+    /**
+     * @return number of rows returned or affected by the SQL, or -1 if unknown
+     */
+    public long getRowCount() {
+      return -1;
+    }
+
     public void runWithTimer(PreparedStatement stmt) throws SQLException {
       long startTime = System.currentTimeMillis();
       run(stmt);
@@ -146,6 +154,7 @@ class SQLRunnerExecutors {
     public UpdateExecutor(Object[] args, Integer[] types) { super(args, types); }
     @Override public void run(PreparedStatement stmt) throws SQLException { _numUpdates = stmt.executeUpdate(); }
     @Override public Integer handleResult() throws SQLException, SQLRunnerException { return _numUpdates; }
+    @Override public long getRowCount() { return _numUpdates; }
   }
 
   /**
@@ -217,6 +226,8 @@ class SQLRunnerExecutors {
       return _numUpdates;
     }
 
+    @Override public long getRowCount() { return _numUpdates; }
+
     @Override
     public String getParamsToString() {
       return "{ batch of argument sets }";
@@ -234,7 +245,7 @@ class SQLRunnerExecutors {
     public static final int NO_FETCH_SIZE_OVERRIDE = -1;
 
     private ResultSetHandler<T> _handler;
-    private ResultSet _results;
+    private RowCountingResultSet _results;
     private int _fetchSize;
 
     public QueryExecutor(ResultSetHandler<T> handler, Object[] args, Integer[] types, int fetchSize) {
@@ -250,7 +261,7 @@ class SQLRunnerExecutors {
 
     @Override
     public void run(PreparedStatement stmt) throws SQLException {
-      _results = stmt.executeQuery();
+      _results = new RowCountingResultSet(stmt.executeQuery());
     }
 
     @Override
@@ -258,9 +269,53 @@ class SQLRunnerExecutors {
       return _handler.handleResult(_results);
     }
 
+    @Override
+    public long getRowCount() {
+      return _results == null ? -1 : _results.getRowCount();
+    }
+
     @Override
     public void closeQuietly() {
       SqlUtils.closeQuietly(_results);
     }
   }
+
+  /**
+   * Counts the rows a result handler reads, for query statistics.  The same
+   * instance is passed to the handler, logged and closed, so result set
+   * identity is consistent within a query; handlers needing the driver's
+   * result set (e.g. for vendor-specific APIs) must call unwrap() rather
+   * than cast.
+   */
+  private static class RowCountingResultSet extends AbstractResultSetWrapper {
+
+    private long _rowCount = 0;
+
+    public RowCountingResultSet(ResultSet underlyingResultSet) {
+      super(underlyingResultSet);
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+      return iface.isInstance(_underlyingResultSet)
+          ? iface.cast(_underlyingResultSet)
+          : _underlyingResultSet.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+      return iface.isInstance(_underlyingResultSet) || _underlyingResultSet.isWrapperFor(iface);
+    }
+
+    @Override
+    public boolean next() throws SQLException {
+      boolean hasNext = _underlyingResultSet.next();
+      if (hasNext) _rowCount++;
+      return hasNext;
+    }
+
+    public long getRowCount() {
+      return _rowCount;
+    }
+  }
 }
@@ -0,0 +1,98 @@
+package org.gusdb.fgputil.db.slowquery;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.gusdb.fgputil.db.slowquery.QueryLogger.QueryLogInfo;
+
+/**
+ * Tracks result sets whose processing has started but not ended.  Result sets
+ * are registered and removed without locks, and are also filed into buckets
+ * by start time, so finding those open longer than the leak threshold only
+ * visits buckets old enough to hold them rather than every open result set.
+ * Since whole buckets are swept, a leak may be reported up to one bucket
+ * duration after it passes the threshold.
+ *
+ * @author rdoherty
+ */
+class OpenResultSetRegistry {
+
+  private final long _leakThresholdMillis;
+  private final long _bucketMillis;
+
+  private final ConcurrentHashMap<ResultSet, QueryLogInfo> _openResultSets = new ConcurrentHashMap<>();
+  private final ConcurrentNavigableMap<Long, Set<ResultSet>> _buckets = new ConcurrentSkipListMap<>();
+
+  /**
+   * @param leakThresholdMillis result sets open longer than this are leaks
+   * @param bucketMillis width of each start time bucket
+   */
+  OpenResultSetRegistry(long leakThresholdMillis, long bucketMillis) {
+    _leakThresholdMillis = leakThresholdMillis;
+    _bucketMillis = bucketMillis;
+  }
+
+  void register(ResultSet resultSet, QueryLogInfo info) {
+    _openResultSets.put(resultSet, info);
+    long bucket = getBucket(info.startTime);
+    Set<ResultSet> resultSets;
+    do {
+      resultSets = _buckets.computeIfAbsent(bucket, k -> ConcurrentHashMap.newKeySet());
+      resultSets.add(resultSet);
+      // a sweep may have removed the bucket, possibly before seeing this result set;
+      //   if so, file it again so the next sweep finds it (sweeps report it only once)
+    } while (_buckets.get(bucket) != resultSets);
+  }
+
+  /**
+   * @param resultSet result set whose processing has ended
+   * @return info registered with the result set, or null if not registered
+   * (or already swept as a leak)
+   */
+  QueryLogInfo remove(ResultSet resultSet) {
+    QueryLogInfo info = _openResultSets.remove(resultSet);
+    if (info != null) {
+      Set<ResultSet> bucket = _buckets.get(getBucket(info.startTime));
+      if (bucket != null) {
+        bucket.remove(resultSet);
+      }
+    }
+    return info;
+  }
+
+  /**
+   * Removes and returns info about result sets in buckets wholly older than the
+   * leak threshold.
+   *
+   * @param now current time in ms
+   * @return info about leaked result sets
+   */
+  List<QueryLogInfo> sweep(long now) {
+    List<QueryLogInfo> leaks = new ArrayList<>();
+    long cutoffBucket = getBucket(now - _leakThresholdMillis);
+    Entry<Long, Set<ResultSet>> bucket;
+    while ((bucket = _buckets.headMap(cutoffBucket).pollFirstEntry()) != null) {
+      for (ResultSet resultSet : bucket.getValue()) {
+        QueryLogInfo info = _openResultSets.remove(resultSet);
+        if (info != null) {
+          leaks.add(info);
+        }
+      }
+    }
+    return leaks;
+  }
+
+  int size() {
+    return _openResultSets.size();
+  }
+
+  private long getBucket(long time) {
+    return Math.floorDiv(time, _bucketMillis);
+  }
+}
@@ -19,4 +19,15 @@ public interface QueryLogConfig {
    */
   default boolean isIgnoredBaseline(String sql) { return false; }
 
+  /**
+   * @return interval in seconds between logs of the queries which took the
+   * most total time (see <code>QueryLogger.getTopQueries()</code>); 0 disables
+   */
+  default int getQueryStatsDumpInterval() { return 0; }
+
+  /**
+   * @return maximum number of queries in each log of query statistics
+   */
+  default int getQueryStatsDumpSize() { return 20; }
+
 }
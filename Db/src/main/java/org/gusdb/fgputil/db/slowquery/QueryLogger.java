@@ -4,20 +4,36 @@ import static org.gusdb.fgputil.FormatUtil.getInnerClassLog4jName;
 
 import java.sql.ResultSet;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import org.apache.log4j.Logger;
+import org.gusdb.fgputil.cache.CacheConfig;
+import org.gusdb.fgputil.cache.CacheConfig.Engine;
+import org.gusdb.fgputil.cache.ManagedMap;
+import org.gusdb.fgputil.db.slowquery.QueryMetrics.Phase;
 import org.gusdb.fgputil.db.slowquery.SqlTimer.SqlTimerEvents;
+import org.gusdb.fgputil.runtime.LatencySummary;
 
 public class QueryLogger {
 
   private static final Logger LOG = Logger.getLogger(QueryLogger.class);
 
+  // result sets are considered leaked if open for more than an hour
+  private static final long LEAK_THRESHOLD_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+  // width of open result set buckets, and interval between leak sweeps
+  private static final long LEAK_SWEEP_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  // fingerprints with logged examples are remembered up to this number; a
+  //   fingerprint forgotten since its example was logged is logged again
+  private static final int MAX_EXAMPLE_FINGERPRINTS = 5000;
+
   /*****************************************************************************
    *
    * QueryLogger is a singleton that should be initialized exactly once on startup
@@ -35,6 +51,7 @@ public class QueryLogger {
       ExampleQueryLog.getLogger().debug("Initializing example query log");
       SlowQueryLog.getLogger().debug("Initializing slow query log");
       _instance = new QueryLogger(config);
+      _instance.startBackgroundTasks();
     }
   }
 
@@ -49,14 +66,60 @@ public class QueryLogger {
    ****************************************************************************/
 
   private final QueryLogConfig _config;
-  private final Set<String> _queryNames = new HashSet<>();
-  private final Map<ResultSet, QueryLogInfo> _queryLogInfos =
-      Collections.synchronizedMap(new HashMap<ResultSet, QueryLogInfo>());
+  private final Map<String, Boolean> _exampleFingerprints = new ManagedMap<>(new CacheConfig<String,Boolean>()
+      .setEngine(Engine.CONCURRENT)
+      .setCapacity(MAX_EXAMPLE_FINGERPRINTS));
+  private final OpenResultSetRegistry _queryLogInfos =
+      new OpenResultSetRegistry(LEAK_THRESHOLD_MILLIS, LEAK_SWEEP_INTERVAL_MILLIS);
+  private final QueryMetrics _queryMetrics = new QueryMetrics();
 
   private QueryLogger(QueryLogConfig config) {
     _config = config;
   }
 
+  // leaked result sets are found on a background thread rather than on each
+  //   close; query statistics are also dumped there if configured
+  private void startBackgroundTasks() {
+    ScheduledExecutorService exec = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "query-log-background");
+      thread.setDaemon(true);
+      return thread;
+    });
+    exec.scheduleWithFixedDelay(() -> {
+      try {
+        logOrphanedResultSets();
+      }
+      catch (Exception e) {
+        LOG.error("Unable to log orphaned result sets", e);
+      }
+    }, LEAK_SWEEP_INTERVAL_MILLIS, LEAK_SWEEP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    int dumpInterval = _config.getQueryStatsDumpInterval();
+    if (dumpInterval > 0) {
+      QueryStatsLog.getLogger().debug("Initializing query statistics log");
+      exec.scheduleWithFixedDelay(() -> {
+        try {
+          logTopQueries();
+        }
+        catch (Exception e) {
+          LOG.error("Unable to log query statistics", e);
+        }
+      }, dumpInterval, dumpInterval, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * Returns statistics of the named queries run through SQLRunner which took
+   * the most total time over the recent window (see <code>QueryMetrics</code>).
+   *
+   * @param maxQueries maximum number of queries to return
+   * @return statistics of queries in descending order of total time, or an
+   * empty list if the query logger has not been initialized
+   */
+  public static List<QueryStats> getTopQueries(int maxQueries) {
+    QueryLogger ql = _instance;
+    return ql == null ? Collections.emptyList() : ql._queryMetrics.getTopQueries(maxQueries);
+  }
+
   /** 
    * Track and log query time if you do not have a resultSet, eg, for an update or insert.  Call it after the execute.
    * 
@@ -82,7 +145,7 @@ public class QueryLogger {
   public static void logStartResultsProcessing(String sql, String name,
       long startTime, ResultSet resultSet) {
     performIfPresent(ql ->
-      ql._queryLogInfos.put(resultSet, new QueryLogInfo(sql, name, startTime, System.currentTimeMillis()))
+      ql._queryLogInfos.register(resultSet, new QueryLogInfo(sql, name, startTime, System.currentTimeMillis()))
     );
   }
 
@@ -93,17 +156,16 @@ public class QueryLogger {
    */
   public static void logEndResultsProcessing(ResultSet resultSet) {
     performIfPresent(ql -> {
-      QueryLogInfo info = ql._queryLogInfos.get(resultSet);
-      ql._queryLogInfos.remove(resultSet);
+      QueryLogInfo info = ql._queryLogInfos.remove(resultSet);
       if (info != null) {
         ql.logQueryTime(info.sql, info.name, info.startTime, info.firstPageTime, System.currentTimeMillis(), false);
       }
-      ql.logOrphanedResultSets();
     });
   }
 
   public static void submitTimer(SqlTimer timer) {
     performIfPresent(ql -> {
+      ql._queryMetrics.record(timer);
       Long[] times = timer.getTimes();
       ql.logQueryTime(timer.getSql(), timer.getSqlName(), 0,
           times[SqlTimerEvents.SQL_EXECUTED.ordinal()],
@@ -122,58 +184,61 @@ public class QueryLogger {
       new Exception().printStackTrace();
     }
     // convert the time to seconds, then log time & sql for slow query. goes to warn log
+    //   (logged queries are tagged with their fingerprint ID so variants can be grouped)
     if (lastPageSeconds >= _config.getSlow() && !_config.isIgnoredSlow(sql)) {
-      SlowQueryLog.getLogger().warn("SLOW QUERY LOG" + details + "\n" + sql);
+      String fingerprint = SqlFingerprint.normalize(sql);
+      SlowQueryLog.getLogger().warn("SLOW QUERY LOG" + details + fingerprintTag(fingerprint) + "\n" + sql);
     }
 
-    // log time for baseline query, and only sql for the first time goes to info log
+    // log time for baseline query, and only sql for the first query with each fingerprint goes to info log
     else if (lastPageSeconds >= _config.getBaseline() && !_config.isIgnoredBaseline(sql)) {
-      SlowQueryLog.getLogger().warn("     QUERY LOG" + details);
+      String fingerprint = SqlFingerprint.normalize(sql);
+      SlowQueryLog.getLogger().warn("     QUERY LOG" + details + fingerprintTag(fingerprint));
 
-      synchronized (_queryNames) {
-        if (!_queryNames.contains(name)) {
-          _queryNames.add(name);
-          ExampleQueryLog.getLogger().info("EXAMPLE QUERY" + details + "\n" + sql);
-        }
+      if (_exampleFingerprints.putIfAbsent(fingerprint, Boolean.TRUE) == null) {
+        ExampleQueryLog.getLogger().info("EXAMPLE QUERY" + details + fingerprintTag(fingerprint) + "\n" + sql);
       }
     }
   }
 
+  private static String fingerprintTag(String fingerprint) {
+    return " fp:" + SqlFingerprint.getId(fingerprint);
+  }
+
   /**
-   * Log orphaned result sets, ie, those that are closed but still in hash
+   * Log orphaned result sets, ie, those that have been open longer than the
+   * leak threshold without being closed
    */
   private void logOrphanedResultSets() {
-    Map<ResultSet,QueryLogInfo> closedResultSets = null; 
-    synchronized ( _queryLogInfos ){
-      if (_queryLogInfos.size() != 0) {
-        closedResultSets = new HashMap<>(); 
-        Set<ResultSet> resultSets = new HashSet<>(_queryLogInfos.keySet()); 
-        for (ResultSet rs : resultSets) {
-          QueryLogInfo info = _queryLogInfos.get(rs);
-          // consider a leak if open for more than an hour
-          if (System.currentTimeMillis() - info.startTime > 1000 * 3600) {
-            closedResultSets.put(rs, _queryLogInfos.get(rs));
-            _queryLogInfos.remove(rs);
-          }
-        }
-      }
+    for (QueryLogInfo info : _queryLogInfos.sweep(System.currentTimeMillis())) {
+      logQueryTime(info.sql, info.name, info.startTime, info.firstPageTime, System.currentTimeMillis(), true);
     }
-    if (closedResultSets != null) {
-      for (ResultSet rs : closedResultSets.keySet()) {
-        QueryLogInfo info = closedResultSets.get(rs);
-        logQueryTime(info.sql, info.name, info.startTime, info.firstPageTime, System.currentTimeMillis(), true);
-      }
+  }
+
+  /**
+   * Log the queries which took the most total time, one line per query
+   */
+  private void logTopQueries() {
+    List<QueryStats> topQueries = _queryMetrics.getTopQueries(_config.getQueryStatsDumpSize());
+    StringBuilder sb = new StringBuilder("TOP QUERIES BY TOTAL TIME (").append(topQueries.size()).append(")");
+    for (QueryStats query : topQueries) {
+      LatencySummary total = query.getPhase(Phase.TOTAL);
+      sb.append(String.format("%n  total: %10.3f count: %8d p50: %8.3f p95: %8.3f p99: %8.3f max: %8.3f execute p95: %8.3f rows: %10.1f [%s]%s",
+          total.getTotal() / 1e9, total.getCount(), total.get50th() / 1e9, total.get95th() / 1e9,
+          total.get99th() / 1e9, total.getMax() / 1e9, query.getPhase(Phase.EXECUTE).get95th() / 1e9,
+          query.getMeanRows(), query.getSqlName(), fingerprintTag(query.getFingerprint())));
     }
+    QueryStatsLog.getLogger().info(sb.toString());
   }
 
   /**
    * Helper class containing data about a single SQL execution
    */
-  private static class QueryLogInfo {
-    String sql;
-    String name;
-    long startTime;
-    long firstPageTime;
+  static class QueryLogInfo {
+    final String sql;
+    final String name;
+    final long startTime;
+    final long firstPageTime;
 
     public QueryLogInfo(String sql, String name, long startTime, long firstPageTime) {
       this.sql = sql;
@@ -192,6 +257,15 @@ public class QueryLogger {
     public static Logger getLogger() { return _logger; }
   }
 
+  /**
+   * Contains periodic statistics (in seconds) of the queries which took the most total time
+   */
+  static final class QueryStatsLog {
+    private static final Logger _logger = Logger.getLogger(getInnerClassLog4jName(QueryStatsLog.class));
+    private QueryStatsLog() {}
+    public static Logger getLogger() { return _logger; }
+  }
+
   /**
    * Allows logging of example queries to a separate logger (one line per query)
    */
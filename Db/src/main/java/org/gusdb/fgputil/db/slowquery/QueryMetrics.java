@@ -0,0 +1,251 @@
+package org.gusdb.fgputil.db.slowquery;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+import org.gusdb.fgputil.cache.CacheConfig;
+import org.gusdb.fgputil.cache.CacheConfig.Engine;
+import org.gusdb.fgputil.cache.ManagedMap;
+import org.gusdb.fgputil.db.slowquery.SqlTimer.SqlTimerEvents;
+import org.gusdb.fgputil.runtime.LatencyHistogram;
+
+/**
+ * Accumulates phase timings and row counts of SQL statements run through
+ * SQLRunner, per SQL fingerprint (see <code>SqlFingerprint</code>), over a
+ * rolling window.  Statements differing only in literal values are thus
+ * aggregated together; each fingerprint is labeled with the SQL name of the
+ * first statement recorded with it.
+ *
+ * The window is divided into a fixed number of intervals; each query keeps a
+ * set of histograms per interval, and an interval's histograms are replaced
+ * when the slot is reused, so statistics cover between (numIntervals - 1) and
+ * numIntervals intervals.  All durations are in nanoseconds.  Recording is
+ * lock-free; snapshots are taken with <code>getTopQueries()</code>.
+ *
+ * Each interval's histograms occupy ~20KB, so to bound memory at most
+ * MAX_QUERIES fingerprints are tracked individually; statistics of further
+ * fingerprints are recorded under OTHER_QUERIES.  Fingerprints with no
+ * intervals left in the window are dropped (at most once per interval, and
+ * when snapshots are taken) to make room for new ones.  Fingerprints of the
+ * most recently used MAX_CACHED_SQL distinct SQL strings (of up to
+ * MAX_CACHED_SQL_LENGTH characters) are cached so repeated SQL is not
+ * normalized on each execution.
+ *
+ * @author rdoherty
+ */
+public class QueryMetrics {
+
+  public static final int MAX_QUERIES = 200;
+  public static final String OTHER_QUERIES = "<other>";
+  public static final int MAX_CACHED_SQL = 2000;
+  public static final int MAX_CACHED_SQL_LENGTH = 4000;
+
+  public static final long DEFAULT_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(15);
+  public static final int DEFAULT_NUM_INTERVALS = 4;
+
+  /**
+   * Phases of a statement's execution, each ending with an SqlTimer event.
+   * TOTAL spans all phases, from start to completion.
+   */
+  public enum Phase {
+    PREPARE("prepare", SqlTimerEvents.STATEMENT_PREPARED),
+    BIND("bind", SqlTimerEvents.PARAMS_ASSIGNED),
+    EXECUTE("execute", SqlTimerEvents.SQL_EXECUTED),
+    HANDLE_RESULTS("handleResults", SqlTimerEvents.RESULTS_HANDLED),
+    TOTAL("total", SqlTimerEvents.COMPLETE);
+
+    private final String _jsonKey;
+    private final SqlTimerEvents _endEvent;
+
+    private Phase(String jsonKey, SqlTimerEvents endEvent) {
+      _jsonKey = jsonKey;
+      _endEvent = endEvent;
+    }
+
+    public String getJsonKey() {
+      return _jsonKey;
+    }
+
+    // duration of this phase given nanos between start and each event
+    private long getDuration(long[] nanoTimes) {
+      int end = _endEvent.ordinal();
+      return this == TOTAL || end == 0 ? nanoTimes[end] : nanoTimes[end] - nanoTimes[end - 1];
+    }
+  }
+
+  // statistics of one query during one interval of the window
+  static class Interval {
+
+    final long _index;
+    final LatencyHistogram[] _phases = new LatencyHistogram[Phase.values().length];
+    final LongAdder _rowCount = new LongAdder();
+    final LongAdder _numRowCounts = new LongAdder();
+    final AtomicLong _maxRows = new AtomicLong(0);
+
+    Interval(long index) {
+      _index = index;
+      for (int i = 0; i < _phases.length; i++) {
+        _phases[i] = new LatencyHistogram();
+      }
+    }
+
+    void record(long[] nanoTimes, long rowCount) {
+      for (Phase phase : Phase.values()) {
+        _phases[phase.ordinal()].record(phase.getDuration(nanoTimes));
+      }
+      if (rowCount >= 0) {
+        _rowCount.add(rowCount);
+        _numRowCounts.increment();
+        if (rowCount > _maxRows.get()) {
+          _maxRows.accumulateAndGet(rowCount, Math::max);
+        }
+      }
+    }
+  }
+
+  private final long _intervalMillis;
+  private final int _numIntervals;
+  private final LongSupplier _clock;
+  private final Map<String, Query> _queries = new ConcurrentHashMap<>();
+  private final Map<String, String> _fingerprints = new ManagedMap<>(new CacheConfig<String,String>()
+      .setEngine(Engine.CONCURRENT)
+      .setCapacity(MAX_CACHED_SQL));
+  private final AtomicLong _lastIdleCheckIndex = new AtomicLong(Long.MIN_VALUE);
+
+  // intervals of one fingerprint, labeled with the SQL name first seen with it
+  private static class Query {
+    final String _sqlName;
+    final AtomicReferenceArray<Interval> _intervals;
+    Query(String sqlName, int numIntervals) {
+      _sqlName = sqlName;
+      _intervals = new AtomicReferenceArray<>(numIntervals);
+    }
+  }
+
+  /**
+   * Creates metrics over a one hour window, in four intervals.
+   */
+  public QueryMetrics() {
+    this(DEFAULT_INTERVAL_MILLIS, DEFAULT_NUM_INTERVALS);
+  }
+
+  /**
+   * @param intervalMillis duration of each interval of the window
+   * @param numIntervals number of intervals in the window
+   */
+  public QueryMetrics(long intervalMillis, int numIntervals) {
+    this(intervalMillis, numIntervals, System::currentTimeMillis);
+  }
+
+  QueryMetrics(long intervalMillis, int numIntervals, LongSupplier clock) {
+    _intervalMillis = intervalMillis;
+    _numIntervals = numIntervals;
+    _clock = clock;
+  }
+
+  /**
+   * Records the timings and row count of a completed statement.
+   *
+   * @param timer timer of completed statement
+   */
+  public void record(SqlTimer timer) {
+    record(timer.getSqlName(), timer.getSql(), timer.getNanoTimes(), timer.getRowCount());
+  }
+
+  void record(String sqlName, String sql, long[] nanoTimes, long rowCount) {
+    String fingerprint = getFingerprint(sql);
+    long index = getCurrentIndex();
+    Query query = _queries.get(fingerprint);
+    if (query == null) {
+      if (_queries.size() >= MAX_QUERIES) {
+        removeIdleQueries(index);
+      }
+      query = _queries.size() < MAX_QUERIES ?
+          _queries.computeIfAbsent(fingerprint, key -> new Query(sqlName, _numIntervals)) :
+          _queries.computeIfAbsent(OTHER_QUERIES, key -> new Query(OTHER_QUERIES, _numIntervals));
+    }
+    getCurrentInterval(query._intervals, index).record(nanoTimes, rowCount);
+  }
+
+  // drops queries with no intervals in the window, at most once per interval
+  private void removeIdleQueries(long index) {
+    long lastIndex = _lastIdleCheckIndex.get();
+    if (lastIndex < index && _lastIdleCheckIndex.compareAndSet(lastIndex, index)) {
+      long oldestIndex = index - _numIntervals + 1;
+      _queries.entrySet().removeIf(query -> getIntervals(query.getValue(), oldestIndex).isEmpty());
+    }
+  }
+
+  private List<Interval> getIntervals(Query query, long oldestIndex) {
+    List<Interval> current = new ArrayList<>();
+    for (int i = 0; i < _numIntervals; i++) {
+      Interval interval = query._intervals.get(i);
+      if (interval != null && interval._index >= oldestIndex) {
+        current.add(interval);
+      }
+    }
+    return current;
+  }
+
+  private String getFingerprint(String sql) {
+    if (sql.length() > MAX_CACHED_SQL_LENGTH) {
+      return SqlFingerprint.normalize(sql);
+    }
+    return _fingerprints.computeIfAbsent(sql, SqlFingerprint::normalize);
+  }
+
+  // returns the interval with the passed index, replacing the slot's expired interval if necessary
+  private Interval getCurrentInterval(AtomicReferenceArray<Interval> intervals, long index) {
+    int slot = (int)Math.floorMod(index, (long)_numIntervals);
+    Interval interval = intervals.get(slot);
+    while (interval == null || interval._index < index) {
+      Interval fresh = new Interval(index);
+      if (intervals.compareAndSet(slot, interval, fresh)) {
+        return fresh;
+      }
+      interval = intervals.get(slot);
+    }
+    return interval;
+  }
+
+  private long getCurrentIndex() {
+    return Math.floorDiv(_clock.getAsLong(), _intervalMillis);
+  }
+
+  /**
+   * Takes snapshots of the queries with the greatest total time in the window,
+   * dropping queries with no executions in the window.
+   *
+   * @param maxQueries maximum number of queries to return
+   * @return snapshots of queries run during the window, in descending order of total time
+   */
+  public List<QueryStats> getTopQueries(int maxQueries) {
+    long oldestIndex = getCurrentIndex() - _numIntervals + 1;
+    List<QueryStats> stats = new ArrayList<>();
+    for (Iterator<Entry<String, Query>> queries = _queries.entrySet().iterator(); queries.hasNext(); ) {
+      Entry<String, Query> query = queries.next();
+      List<Interval> current = getIntervals(query.getValue(), oldestIndex);
+      if (current.isEmpty()) {
+        queries.remove();
+      }
+      else {
+        stats.add(new QueryStats(query.getValue()._sqlName, query.getKey(), current));
+      }
+    }
+    return stats.stream()
+      .sorted(Comparator.comparingLong((QueryStats query) -> query.getPhase(Phase.TOTAL).getTotal()).reversed())
+      .limit(maxQueries)
+      .collect(Collectors.toList());
+  }
+}
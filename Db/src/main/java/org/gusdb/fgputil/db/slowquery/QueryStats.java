@@ -0,0 +1,98 @@
+package org.gusdb.fgputil.db.slowquery;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.gusdb.fgputil.db.slowquery.QueryMetrics.Interval;
+import org.gusdb.fgputil.db.slowquery.QueryMetrics.Phase;
+import org.gusdb.fgputil.json.ToJson;
+import org.gusdb.fgputil.runtime.LatencyHistogram;
+import org.gusdb.fgputil.runtime.LatencySummary;
+import org.json.JSONObject;
+
+/**
+ * Immutable snapshot of the executions of one query fingerprint over the
+ * rolling window of a <code>QueryMetrics</code>: time spent in each phase and
+ * rows returned or affected.  Durations are in nanoseconds (milliseconds in JSON).
+ *
+ * @author rdoherty
+ */
+public class QueryStats implements ToJson {
+
+  private final String _sqlName;
+  private final String _fingerprint;
+  private final Map<Phase, LatencySummary> _phases = new EnumMap<>(Phase.class);
+  private final long _rowCount;
+  private final long _numRowCounts;
+  private final long _maxRows;
+
+  QueryStats(String sqlName, String fingerprint, List<Interval> intervals) {
+    _sqlName = sqlName;
+    _fingerprint = fingerprint;
+    long rowCount = 0, numRowCounts = 0, maxRows = 0;
+    for (Phase phase : Phase.values()) {
+      LatencyHistogram merged = new LatencyHistogram();
+      for (Interval interval : intervals) {
+        merged.add(interval._phases[phase.ordinal()]);
+      }
+      _phases.put(phase, merged.getSummary());
+    }
+    for (Interval interval : intervals) {
+      rowCount += interval._rowCount.sum();
+      numRowCounts += interval._numRowCounts.sum();
+      maxRows = Math.max(maxRows, interval._maxRows.get());
+    }
+    _rowCount = rowCount;
+    _numRowCounts = numRowCounts;
+    _maxRows = maxRows;
+  }
+
+  /** @return name of the first query recorded with this fingerprint */
+  public String getSqlName() { return _sqlName; }
+  /** @return normalized SQL of the query (see SqlFingerprint) */
+  public String getFingerprint() { return _fingerprint; }
+  /** @return number of executions of the query */
+  public long getExecutionCount() { return _phases.get(Phase.TOTAL).getCount(); }
+  /** @return total rows returned or affected, over executions where known */
+  public long getRowCount() { return _rowCount; }
+  /** @return most rows returned or affected by one execution */
+  public long getMaxRows() { return _maxRows; }
+
+  /**
+   * @param phase phase of execution
+   * @return time spent in the passed phase
+   */
+  public LatencySummary getPhase(Phase phase) {
+    return _phases.get(phase);
+  }
+
+  /**
+   * @return mean rows returned or affected, over executions where known, or 0 if none
+   */
+  public double getMeanRows() {
+    return _numRowCounts == 0 ? 0 : (double)_rowCount / _numRowCounts;
+  }
+
+  @Override
+  public JSONObject toJson() {
+    JSONObject json = new JSONObject()
+      .put("sqlName", _sqlName)
+      .put("fingerprint", _fingerprint)
+      .put("executions", getExecutionCount())
+      .put("rows", new JSONObject()
+        .put("total", _rowCount)
+        .put("mean", getMeanRows())
+        .put("max", _maxRows));
+    for (Phase phase : Phase.values()) {
+      json.put(phase.getJsonKey(), _phases.get(phase).toJson(TimeUnit.NANOSECONDS));
+    }
+    return json;
+  }
+
+  @Override
+  public String toString() {
+    return toJson().toString(2);
+  }
+}
@@ -0,0 +1,203 @@
+package org.gusdb.fgputil.db.slowquery;
+
+/**
+ * Normalizes SQL into a fingerprint shared by statements which differ only
+ * in literal values, so such statements can be aggregated and logged
+ * together.  In a single pass over the SQL:
+ * <ul>
+ *   <li>string and numeric literals are replaced with <code>?</code></li>
+ *   <li>lists of literals or bind markers in IN clauses are collapsed to a
+ *       single <code>?</code></li>
+ *   <li>comments are removed and runs of whitespace collapsed to one space</li>
+ *   <li>text outside quoted identifiers is lower-cased</li>
+ * </ul>
+ * Fingerprints are intended for grouping, not for execution.
+ *
+ * @author rdoherty
+ */
+public class SqlFingerprint {
+
+  private SqlFingerprint() {}
+
+  /**
+   * @param sql SQL to normalize
+   * @return fingerprint of the passed SQL
+   */
+  public static String normalize(String sql) {
+    int length = sql.length();
+    StringBuilder out = new StringBuilder(length);
+    boolean inList = false;       // inside the parentheses of an IN clause
+    boolean pendingComma = false; // comma seen in IN list but not yet written
+    int i = 0;
+    while (i < length) {
+      char c = sql.charAt(i);
+
+      // whitespace and comments collapse to a single space
+      if (Character.isWhitespace(c) || startsComment(sql, i)) {
+        i = skipWhitespaceAndComments(sql, i);
+        if (out.length() > 0 && !pendingComma) {
+          appendSpace(out);
+        }
+        continue;
+      }
+
+      boolean literal = (c == '\'' || (isDigit(c) && !endsWithIdentifierChar(out)) ||
+          (c == '?' && inList));
+      if (literal) {
+        i = (c == '\'' ? skipString(sql, i) : c == '?' ? i + 1 : skipNumber(sql, i));
+        if (inList && (pendingComma || endsWithListMarker(out))) {
+          // further values of an IN list are dropped
+          pendingComma = false;
+          continue;
+        }
+        out.append('?');
+        continue;
+      }
+
+      if (pendingComma) {
+        // IN list contains something other than values; keep the comma
+        trimSpace(out);
+        out.append(", ");
+        pendingComma = false;
+      }
+
+      if (c == ',' && inList && endsWithListMarker(out)) {
+        pendingComma = true;
+        i++;
+        continue;
+      }
+
+      // an IN list holds only values; anything else (e.g. a subquery) ends it
+      if (c == ',' || c == ')') {
+        trimSpace(out);
+      }
+      inList = (c == '(' && endsWithIn(out));
+
+      if (c == '"') {
+        // quoted identifiers are kept verbatim
+        int end = sql.indexOf('"', i + 1);
+        end = (end < 0 ? length : end + 1);
+        out.append(sql, i, end);
+        i = end;
+        continue;
+      }
+
+      out.append(Character.toLowerCase(c));
+      i++;
+    }
+    trimSpace(out);
+    return out.toString();
+  }
+
+  /**
+   * @param fingerprint fingerprint of SQL
+   * @return short ID for the fingerprint, suitable for log lines
+   */
+  public static String getId(String fingerprint) {
+    return String.format("%08x", fingerprint.hashCode());
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isIdentifierChar(char c) {
+    return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '#' || c == '.' || c == '"';
+  }
+
+  private static boolean endsWithIdentifierChar(StringBuilder out) {
+    return out.length() > 0 && isIdentifierChar(out.charAt(out.length() - 1));
+  }
+
+  // true if the last non-space character written is the '?' of an IN list value
+  private static boolean endsWithListMarker(StringBuilder out) {
+    int last = out.length() - 1;
+    if (last >= 0 && out.charAt(last) == ' ') last--;
+    return last >= 0 && out.charAt(last) == '?';
+  }
+
+  // true if the last word written is "in"
+  private static boolean endsWithIn(StringBuilder out) {
+    int end = out.length();
+    if (end > 0 && out.charAt(end - 1) == ' ') end--;
+    return end >= 2 && out.charAt(end - 1) == 'n' && out.charAt(end - 2) == 'i' &&
+        (end == 2 || !isIdentifierChar(out.charAt(end - 3)));
+  }
+
+  private static void appendSpace(StringBuilder out) {
+    char last = out.charAt(out.length() - 1);
+    if (last != ' ' && last != '(') {
+      out.append(' ');
+    }
+  }
+
+  private static void trimSpace(StringBuilder out) {
+    int last = out.length() - 1;
+    if (last >= 0 && out.charAt(last) == ' ') {
+      out.setLength(last);
+    }
+  }
+
+  private static boolean startsComment(String sql, int i) {
+    return i + 1 < sql.length() && (
+        (sql.charAt(i) == '-' && sql.charAt(i + 1) == '-') ||
+        (sql.charAt(i) == '/' && sql.charAt(i + 1) == '*'));
+  }
+
+  private static int skipWhitespaceAndComments(String sql, int i) {
+    int length = sql.length();
+    while (i < length) {
+      if (Character.isWhitespace(sql.charAt(i))) {
+        i++;
+      }
+      else if (startsComment(sql, i)) {
+        if (sql.charAt(i) == '-') {
+          int end = sql.indexOf('\n', i);
+          i = (end < 0 ? length : end + 1);
+        }
+        else {
+          int end = sql.indexOf("*/", i + 2);
+          i = (end < 0 ? length : end + 2);
+        }
+      }
+      else {
+        break;
+      }
+    }
+    return i;
+  }
+
+  // skips a quoted string, including doubled quotes within it
+  private static int skipString(String sql, int i) {
+    int length = sql.length();
+    i++;
+    while (i < length) {
+      if (sql.charAt(i) == '\'') {
+        if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+          i += 2;
+          continue;
+        }
+        return i + 1;
+      }
+      i++;
+    }
+    return length;
+  }
+
+  // skips digits, a decimal point and an exponent
+  private static int skipNumber(String sql, int i) {
+    int length = sql.length();
+    while (i < length && (isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+      i++;
+    }
+    if (i < length && (sql.charAt(i) == 'e' || sql.charAt(i) == 'E')) {
+      int j = i + 1;
+      if (j < length && (sql.charAt(j) == '+' || sql.charAt(j) == '-')) j++;
+      if (j < length && isDigit(sql.charAt(j))) {
+        i = j;
+        while (i < length && isDigit(sql.charAt(i))) i++;
+      }
+    }
+    return i;
+  }
+}
@@ -4,8 +4,10 @@ import org.gusdb.fgputil.Timer;
 
 /**
  * An extension of the Timer class that records timestamps of each step in the
- * sequence of operations that occur over the course of an SQL statement
- * 
+ * sequence of operations that occur over the course of an SQL statement.
+ * Timestamps are kept both in milliseconds since the timer was (re)started
+ * and, for aggregate statistics, in nanoseconds.
+ *
  * @author rdoherty
  */
 public class SqlTimer extends Timer {
@@ -21,6 +23,9 @@ public class SqlTimer extends Timer {
   private String _sql;
   private String _sqlName;
   private Long[] _times = new Long[SqlTimerEvents.values().length];
+  private long _startNanos = System.nanoTime();
+  private long[] _nanos = new long[SqlTimerEvents.values().length];
+  private long _rowCount = -1;
 
   public SqlTimer(String sql, String sqlName) {
     _sql = sql;
@@ -31,26 +36,34 @@ public class SqlTimer extends Timer {
   public void restart() {
     super.restart();
     _times = new Long[SqlTimerEvents.values().length];
+    _startNanos = System.nanoTime();
+    _nanos = new long[SqlTimerEvents.values().length];
+    _rowCount = -1;
   }
 
   public void statementPrepared() {
     _times[SqlTimerEvents.STATEMENT_PREPARED.ordinal()] = getElapsed();
+    _nanos[SqlTimerEvents.STATEMENT_PREPARED.ordinal()] = System.nanoTime() - _startNanos;
   }
 
   public void paramsAssigned() {
     _times[SqlTimerEvents.PARAMS_ASSIGNED.ordinal()] = getElapsed();
+    _nanos[SqlTimerEvents.PARAMS_ASSIGNED.ordinal()] = System.nanoTime() - _startNanos;
   }
 
   public void sqlExecuted() {
     _times[SqlTimerEvents.SQL_EXECUTED.ordinal()] = getElapsed();
+    _nanos[SqlTimerEvents.SQL_EXECUTED.ordinal()] = System.nanoTime() - _startNanos;
   }
 
   public void resultsHandled() {
     _times[SqlTimerEvents.RESULTS_HANDLED.ordinal()] = getElapsed();
+    _nanos[SqlTimerEvents.RESULTS_HANDLED.ordinal()] = System.nanoTime() - _startNanos;
   }
 
   public void complete() {
     _times[SqlTimerEvents.COMPLETE.ordinal()] = getElapsed();
+    _nanos[SqlTimerEvents.COMPLETE.ordinal()] = System.nanoTime() - _startNanos;
   }
 
   public String getSql() {
@@ -64,4 +77,26 @@ public class SqlTimer extends Timer {
   public Long[] getTimes() {
     return _times;
   }
+
+  /**
+   * @return nanoseconds between start and each event, indexed by event
+   * ordinal; events not (yet) reached have value 0
+   */
+  public long[] getNanoTimes() {
+    return _nanos;
+  }
+
+  /**
+   * @param rowCount number of rows returned or affected by the statement
+   */
+  public void setRowCount(long rowCount) {
+    _rowCount = rowCount;
+  }
+
+  /**
+   * @return number of rows returned or affected by the statement, or -1 if unknown
+   */
+  public long getRowCount() {
+    return _rowCount;
+  }
 }
@@ -14,8 +14,26 @@ import org.gusdb.fgputil.db.leakmonitor.UnclosedObjectMonitor;
 import org.gusdb.fgputil.db.leakmonitor.UnclosedObjectMonitor.UnclosedObjectMonitorMap;
 import org.gusdb.fgputil.db.platform.DBPlatform;
 import org.gusdb.fgputil.db.pool.ConnectionPoolConfig;
+import org.gusdb.fgputil.db.pool.ConnectionPoolMetrics;
 import org.gusdb.fgputil.db.pool.DbDriverInitializer;
 
+/**
+ * Wraps pooled connections, tracking statements opened on them and resetting
+ * connection state before returning them to the pool.
+ *
+ * To avoid needless round trips on close, the wrapper tracks what callers have
+ * done with the connection: whether any statements were created, whether any
+ * may have used a DB link, and changes to auto-commit and read-only modes.
+ * Connections are assumed to be in the configured default state when wrapped
+ * (the pool resets them on borrow), so close() commits only if statements were
+ * run and restores only the modes callers changed.  On auto-commit connections
+ * the explicit commit needed to end distributed transactions is issued only if
+ * the platform supports DB links and a statement was run; if configured (see
+ * ConnectionPoolConfig.isDbLinkDetectionBySql()), only if a statement's SQL
+ * referenced a DB link directly (or was not known to the wrapper).  If a
+ * caller unwraps the underlying connection, its state can no longer be
+ * tracked, and close() resets everything.
+ */
 public class ConnectionWrapper extends AbstractConnectionWrapper {
 
   private static final Logger LOG = Logger.getLogger(ConnectionWrapper.class);
@@ -26,9 +44,28 @@ public class ConnectionWrapper extends AbstractConnectionWrapper {
   private final DBPlatform _underlyingPlatform;
   private final UnclosedObjectMonitorMap _unclosedObjectMonitorMap;
   private final UnclosedObjectMonitor<Connection> _unclosedObjectMonitor;
+  private final ConnectionPoolMetrics _poolMetrics;
+  private final String _caller;
+  private final long _borrowTime;
+  private boolean _closed = false;
+
+  // state tracked to avoid unneeded calls on close
+  private boolean _statementsCreated = false;
+  private boolean _dbLinkPossible = false;
+  private Boolean _autoCommit = null; // null if not set by caller
+  private Boolean _readOnly = null;   // null if not set by caller
+  private boolean _stateUnknown = false;
 
   public ConnectionWrapper(Connection underlyingConnection, ConnectionPoolConfig dbConfig, UnclosedObjectMonitorMap unclosedObjectMonitorMap) {
+    this(underlyingConnection, dbConfig, unclosedObjectMonitorMap, new ConnectionPoolMetrics());
+  }
+
+  public ConnectionWrapper(Connection underlyingConnection, ConnectionPoolConfig dbConfig,
+      UnclosedObjectMonitorMap unclosedObjectMonitorMap, ConnectionPoolMetrics poolMetrics) {
     super(underlyingConnection);
+    _poolMetrics = poolMetrics;
+    _caller = poolMetrics.sampleCaller();
+    _borrowTime = System.nanoTime();
     _dbConfig = dbConfig;
     _underlyingPlatform = dbConfig.getPlatformEnum().getPlatformInstance();
     _unclosedObjectMonitorMap = unclosedObjectMonitorMap;
@@ -55,21 +92,12 @@ public class ConnectionWrapper extends AbstractConnectionWrapper {
         SqlUtils.attemptRollback(_underlyingConnection);
       }
   
-      // committing will cause op completion on the DB side (e.g. of in-use DB links)
-      if (_underlyingConnection.getAutoCommit()) {
-        // must turn auto-commit off to explicitly commit per JDBC spec
-        _underlyingConnection.setAutoCommit(false);
-        _underlyingConnection.commit();
-        _underlyingConnection.setAutoCommit(true);
+      if (_stateUnknown) {
+        resetAllState();
       }
       else {
-        _underlyingConnection.commit();
+        resetChangedState();
       }
-  
-      // reset connection-specific values back to default in case client code changed them
-      _underlyingConnection.setAutoCommit(_dbConfig.getDefaultAutoCommit());
-      _underlyingConnection.setReadOnly(_dbConfig.getDefaultReadOnly());
-  
     }
     catch (Exception e) {
       LOG.error("Error during pre-close logic for DB connections", e);
@@ -79,6 +107,10 @@ public class ConnectionWrapper extends AbstractConnectionWrapper {
       // close the underlying connection using possibly custom logic
       DbDriverInitializer dbManager = DbDriverInitializer.getInstance(_dbConfig.getDriverInitClass());
       dbManager.closeConnection(_underlyingConnection, _dbConfig);
+      if (!_closed) {
+        _closed = true;
+        _poolMetrics.recordHold(_caller, System.nanoTime() - _borrowTime);
+      }
     }
   
     if (uncommittedChangesPresent) {
@@ -86,6 +118,74 @@ public class ConnectionWrapper extends AbstractConnectionWrapper {
     }
   }
 
+  // full reset, used when caller may have changed state without our knowledge
+  private void resetAllState() throws SQLException {
+    // committing will cause op completion on the DB side (e.g. of in-use DB links)
+    if (_underlyingConnection.getAutoCommit()) {
+      // must turn auto-commit off to explicitly commit per JDBC spec
+      _underlyingConnection.setAutoCommit(false);
+      _underlyingConnection.commit();
+      _underlyingConnection.setAutoCommit(true);
+    }
+    else {
+      _underlyingConnection.commit();
+    }
+
+    // reset connection-specific values back to default in case client code changed them
+    _underlyingConnection.setAutoCommit(_dbConfig.getDefaultAutoCommit());
+    _underlyingConnection.setReadOnly(_dbConfig.getDefaultReadOnly());
+  }
+
+  // resets only the state that tracked calls may have changed
+  private void resetChangedState() throws SQLException {
+    boolean defaultAutoCommit = _dbConfig.getDefaultAutoCommit();
+    boolean autoCommit = (_autoCommit == null ? defaultAutoCommit : _autoCommit);
+    if (_statementsCreated) {
+      if (!autoCommit) {
+        _underlyingConnection.commit();
+      }
+      else if (_dbLinkPossible) {
+        // must turn auto-commit off to explicitly commit per JDBC spec
+        _underlyingConnection.setAutoCommit(false);
+        _underlyingConnection.commit();
+        _underlyingConnection.setAutoCommit(true);
+      }
+    }
+    if (autoCommit != defaultAutoCommit) {
+      _underlyingConnection.setAutoCommit(defaultAutoCommit);
+    }
+    if (_readOnly != null && _readOnly != _dbConfig.getDefaultReadOnly()) {
+      _underlyingConnection.setReadOnly(_dbConfig.getDefaultReadOnly());
+    }
+  }
+
+  // records that a statement was created for the passed SQL (null if not yet known)
+  private void trackStatement(String sql) {
+    _statementsCreated = true;
+    if (!_dbLinkPossible && _underlyingPlatform.supportsDbLinks() &&
+        (!_dbConfig.isDbLinkDetectionBySql() || sql == null || sql.indexOf('@') != -1)) {
+      _dbLinkPossible = true;
+    }
+  }
+
+  @Override
+  public void setAutoCommit(boolean autoCommit) throws SQLException {
+    _underlyingConnection.setAutoCommit(autoCommit);
+    _autoCommit = autoCommit;
+  }
+
+  @Override
+  public void setReadOnly(boolean readOnly) throws SQLException {
+    _underlyingConnection.setReadOnly(readOnly);
+    _readOnly = readOnly;
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    _stateUnknown = true;
+    return super.unwrap(iface);
+  }
+
   /*
    *  Please see Redmine #18073 for why we do this check and why it is handled the way it is
    */
@@ -116,72 +216,84 @@ public class ConnectionWrapper extends AbstractConnectionWrapper {
 
   @Override
   public Statement createStatement() throws SQLException {
+    trackStatement(null);
     Statement statement = super.createStatement();
     return new StatementWrapper(applyFetchSize(statement), this);
   }
 
   @Override
   public PreparedStatement prepareStatement(String sql) throws SQLException {
+    trackStatement(sql);
     PreparedStatement statement = _underlyingConnection.prepareStatement(sql);
     return new PreparedStatementWrapper(applyFetchSize(statement), this);
   }
 
   @Override
   public CallableStatement prepareCall(String sql) throws SQLException {
+    trackStatement(sql);
     CallableStatement statement = _underlyingConnection.prepareCall(sql);
     return new CallableStatementWrapper(applyFetchSize(statement), this);
   }
 
   @Override
   public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+    trackStatement(null);
     Statement statement = super.createStatement(resultSetType, resultSetConcurrency);
     return new StatementWrapper(applyFetchSize(statement), this);
   }
 
   @Override
   public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+    trackStatement(sql);
     PreparedStatement statement = super.prepareStatement(sql, resultSetType, resultSetConcurrency);
     return new PreparedStatementWrapper(applyFetchSize(statement), this);
   }
 
   @Override
   public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+    trackStatement(sql);
     CallableStatement statement = super.prepareCall(sql, resultSetType, resultSetConcurrency);
     return new CallableStatementWrapper(applyFetchSize(statement), this);
   }
 
   @Override
   public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+    trackStatement(null);
     Statement statement = super.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
     return new StatementWrapper(applyFetchSize(statement), this);
   }
 
   @Override
   public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+    trackStatement(sql);
     PreparedStatement statement = super.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
     return new PreparedStatementWrapper(applyFetchSize(statement), this);
   }
 
   @Override
   public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+    trackStatement(sql);
     CallableStatement statement = super.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
     return new CallableStatementWrapper(applyFetchSize(statement), this);
   }
 
   @Override
   public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+    trackStatement(sql);
     PreparedStatement statement = super.prepareStatement(sql, autoGeneratedKeys);
     return new PreparedStatementWrapper(applyFetchSize(statement), this);
   }
 
   @Override
   public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+    trackStatement(sql);
     PreparedStatement statement = super.prepareStatement(sql, columnIndexes);
     return new PreparedStatementWrapper(applyFetchSize(statement), this);
   }
 
   @Override
   public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+    trackStatement(sql);
     PreparedStatement statement = super.prepareStatement(sql, columnNames);
     return new PreparedStatementWrapper(applyFetchSize(statement), this);
   }
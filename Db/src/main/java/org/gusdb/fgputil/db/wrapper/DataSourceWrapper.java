@@ -2,6 +2,8 @@ package org.gusdb.fgputil.db.wrapper;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
 
 import javax.sql.DataSource;
 
@@ -9,11 +11,13 @@ import org.gusdb.fgputil.db.leakmonitor.CloseableObjectType;
 import org.gusdb.fgputil.db.leakmonitor.UnclosedObjectMonitor;
 import org.gusdb.fgputil.db.leakmonitor.UnclosedObjectMonitor.UnclosedObjectMonitorMap;
 import org.gusdb.fgputil.db.pool.ConnectionPoolConfig;
+import org.gusdb.fgputil.db.pool.ConnectionPoolMetrics;
 
 public class DataSourceWrapper extends AbstractDataSourceWrapper {
 
   private final ConnectionPoolConfig _dbConfig;
   private final UnclosedObjectMonitorMap _unclosedObjectMonitorMap;
+  private final ConnectionPoolMetrics _poolMetrics;
 
   public DataSourceWrapper(String dbName, DataSource underlyingDataSource, ConnectionPoolConfig dbConfig) {
     this(dbName, underlyingDataSource, dbConfig, false);
@@ -23,17 +27,49 @@ public class DataSourceWrapper extends AbstractDataSourceWrapper {
       ConnectionPoolConfig dbConfig, boolean recordAllStacktraces) {
     super(underlyingDataSource);
     _dbConfig = dbConfig;
-    _unclosedObjectMonitorMap = new UnclosedObjectMonitorMap(dbName, recordAllStacktraces);
+    _unclosedObjectMonitorMap = new UnclosedObjectMonitorMap(dbName, recordAllStacktraces,
+        dbConfig.getLeakMonitorSampleRate());
+    _poolMetrics = new ConnectionPoolMetrics(dbConfig.getCallerSampleRate());
   }
 
   @Override
   public Connection getConnection() throws SQLException {
-    return new ConnectionWrapper(super.getConnection(), _dbConfig, _unclosedObjectMonitorMap);
+    long start = System.nanoTime();
+    try {
+      Connection conn = super.getConnection();
+      _poolMetrics.recordBorrow(System.nanoTime() - start);
+      return new ConnectionWrapper(conn, _dbConfig, _unclosedObjectMonitorMap, _poolMetrics);
+    }
+    catch (SQLException e) {
+      recordBorrowFailure(start, e);
+      throw e;
+    }
   }
 
   @Override
   public Connection getConnection(String username, String password) throws SQLException {
-    return new ConnectionWrapper(super.getConnection(username, password), _dbConfig, _unclosedObjectMonitorMap);
+    long start = System.nanoTime();
+    try {
+      Connection conn = super.getConnection(username, password);
+      _poolMetrics.recordBorrow(System.nanoTime() - start);
+      return new ConnectionWrapper(conn, _dbConfig, _unclosedObjectMonitorMap, _poolMetrics);
+    }
+    catch (SQLException e) {
+      recordBorrowFailure(start, e);
+      throw e;
+    }
+  }
+
+  // the pool reports exhaustion as a NoSuchElementException after waiting maxWait
+  private void recordBorrowFailure(long start, SQLException e) {
+    long waitNanos = System.nanoTime() - start;
+    long maxWait = _dbConfig.getMaxWait();
+    _poolMetrics.recordBorrowFailure(waitNanos, e.getCause() instanceof NoSuchElementException &&
+        maxWait >= 0 && waitNanos >= TimeUnit.MILLISECONDS.toNanos(maxWait));
+  }
+
+  public ConnectionPoolMetrics getPoolMetrics() {
+    return _poolMetrics;
   }
 
   private UnclosedObjectMonitor<Connection> getConnectionMonitor() {
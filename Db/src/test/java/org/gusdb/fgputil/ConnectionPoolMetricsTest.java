@@ -0,0 +1,72 @@
+package org.gusdb.fgputil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.gusdb.fgputil.db.platform.SupportedPlatform;
+import org.gusdb.fgputil.db.pool.ConnectionPoolStats;
+import org.gusdb.fgputil.db.pool.SimpleDbConfig;
+import org.gusdb.fgputil.db.wrapper.DataSourceWrapper;
+import org.gusdb.fgputil.runtime.LatencySummary;
+import org.junit.Test;
+
+/**
+ * Lives in org.gusdb.fgputil rather than with the pool classes in
+ * org.gusdb.fgputil.db.pool on purpose: ConnectionPoolMetrics skips stack
+ * frames of classes under org.gusdb.fgputil.db. when finding the caller, so a
+ * test inside those packages would never be seen as the caller borrowing
+ * connections.
+ */
+public class ConnectionPoolMetricsTest {
+
+  private static final String URL = "jdbc:hsqldb:mem:poolMetricsDb";
+  private static final long MAX_WAIT = 100;
+
+  @Test
+  public void testPoolMetrics() throws Exception {
+    try (BasicDataSource pool = new BasicDataSource()) {
+      pool.setUrl(URL);
+      pool.setUsername("SA");
+      pool.setPassword("");
+      pool.setMaxTotal(1);
+      pool.setMaxWaitMillis(MAX_WAIT);
+      DataSourceWrapper ds = new DataSourceWrapper("poolMetricsDb", pool, new SimpleDbConfig() {
+        @Override public SupportedPlatform getPlatformEnum() { return SupportedPlatform.POSTGRESQL; }
+        @Override public int getConnectionPoolSize()         { return 1; }
+        @Override public String getLogin()                   { return "SA"; }
+        @Override public String getPassword()                { return ""; }
+        @Override public String getConnectionUrl()           { return URL; }
+        @Override public int getDefaultFetchSize()           { return 0; }
+        @Override public long getMaxWait()                   { return MAX_WAIT; }
+        @Override public int getCallerSampleRate()           { return 1; }
+      });
+
+      try (Connection conn = ds.getConnection()) {
+        Thread.sleep(20);
+        try (Connection conn2 = ds.getConnection()) {
+          fail("Pool of one connection should have been exhausted");
+        }
+        catch (SQLException e) {
+          // expected
+        }
+      }
+
+      ConnectionPoolStats stats = ds.getPoolMetrics().getStats(pool.getNumActive(), pool.getNumIdle(), pool.getMaxTotal());
+      assertEquals(2, stats.getBorrowWaits().getCount());
+      assertTrue(stats.getBorrowWaits().getMax() >= MAX_WAIT * 1000000);
+      assertEquals(1, stats.getBorrowFailureCount());
+      assertEquals(1, stats.getExhaustionCount());
+      assertEquals(1, stats.getHoldTimes().getCount());
+
+      LatencySummary callerHolds = stats.getHoldTimesByCaller().get(getClass().getName() + ".testPoolMetrics");
+      assertEquals(1, callerHolds.getCount());
+      assertTrue(callerHolds.getTotal() >= (20 + MAX_WAIT) * 1000000);
+      assertEquals(1, stats.toJson().getJSONObject("holdTimeByCaller").length());
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package org.gusdb.fgputil.db.cache;
+
+import static org.gusdb.fgputil.functional.Functions.fSwallow;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Types;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.gusdb.fgputil.cache.CacheConfig;
+import org.gusdb.fgputil.db.SqlScriptRunner;
+import org.gusdb.fgputil.db.runner.SQLRunner;
+import org.gusdb.fgputil.test.TestUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SqlResultCacheTest {
+
+  private static final String DB_SETUP_SCRIPT = "org/gusdb/fgputil/db/runner/testDbSetup.sql";
+
+  private static final String COUNT_BY_NAME = "select count(1) from users where name = ?";
+  private static final String INSERT_USER = "insert into users values (?, ?, ?)";
+  private static final String DROP_USER_TABLE = "drop table users";
+
+  private DataSource _ds;
+
+  @Before
+  public void setUpTests() throws Exception {
+    _ds = TestUtil.getTestDataSource("sqlResultCacheDb");
+    SqlScriptRunner.runSqlScript(_ds, DB_SETUP_SCRIPT);
+  }
+
+  @After
+  public void tearDownTests() {
+    new SQLRunner(_ds, DROP_USER_TABLE).executeStatement();
+  }
+
+  @Test
+  public void testBindValueKeys() throws Exception {
+    SqlCountCache cache = new SqlCountCache(_ds);
+    Integer[] types = new Integer[] { Types.VARCHAR };
+    assertEquals(Long.valueOf(1), cache.getItem(new SqlQueryKey(COUNT_BY_NAME, new Object[] { "ryan" }, types), "count-by-name"));
+    assertEquals(Long.valueOf(0), cache.getItem(new SqlQueryKey(COUNT_BY_NAME, new Object[] { "bob" }, types), "count-by-name"));
+    assertEquals(2, cache.getSize());
+
+    // equal keys hit the cache even after the underlying data changes
+    new SQLRunner(_ds, INSERT_USER).executeUpdate(new Object[] { 4, "bob", "bob" });
+    assertEquals(Long.valueOf(0), cache.getItem(new SqlQueryKey(COUNT_BY_NAME, new Object[] { "bob" }, types), "count-by-name"));
+    assertTrue(new SqlQueryKey(COUNT_BY_NAME, new Object[] { "bob" }, types)
+        .equals(new SqlQueryKey(COUNT_BY_NAME, new Object[] { "bob" }, types, 1, TimeUnit.MINUTES)));
+  }
+
+  @Test
+  public void testQueryTimeToLive() throws Exception {
+    AtomicLong clock = new AtomicLong(0);
+    SqlCountCache cache = new SqlCountCache(_ds, new CacheConfig<SqlQueryKey,Long>()
+        .setExpireAfterWrite(1, TimeUnit.HOURS)
+        .setTicker(clock::get));
+    SqlQueryKey shortLived = new SqlQueryKey(COUNT_BY_NAME, new Object[] { "bob" }, null, 1, TimeUnit.MINUTES);
+    SqlQueryKey longLived = new SqlQueryKey("select count(1) from users where id > ?", new Object[] { 0 }, null);
+    assertEquals(Long.valueOf(0), cache.getItem(shortLived, "short"));
+    assertEquals(Long.valueOf(3), cache.getItem(longLived, "long"));
+    new SQLRunner(_ds, INSERT_USER).executeUpdate(new Object[] { 4, "bob", "bob" });
+
+    // per-query lifetime elapses before the configured one
+    clock.addAndGet(TimeUnit.MINUTES.toNanos(2));
+    assertEquals(Long.valueOf(1), cache.getItem(shortLived, "short"));
+    assertEquals(Long.valueOf(3), cache.getItem(longLived, "long"));
+    clock.addAndGet(TimeUnit.HOURS.toNanos(1));
+    assertEquals(Long.valueOf(4), cache.getItem(longLived, "long"));
+  }
+
+  @Test
+  public void testQueryTimeToLiveWithoutExpiry() throws Exception {
+    AtomicLong clock = new AtomicLong(0);
+    CacheConfig<SqlQueryKey,Long> config = new CacheConfig<SqlQueryKey,Long>().setTicker(clock::get);
+    SqlResultCache<Long> cache = new SqlResultCache<>(_ds, fSwallow(rs -> {
+      rs.next();
+      return rs.getLong(1);
+    }), config, true);
+    // the passed configuration is not modified
+    assertNull(config.getExpiry());
+    SqlQueryKey shortLived = new SqlQueryKey(COUNT_BY_NAME, new Object[] { "bob" }, null, 1, TimeUnit.MINUTES);
+    SqlQueryKey unlimited = new SqlQueryKey("select count(1) from users where id > ?", new Object[] { 0 }, null);
+    assertEquals(Long.valueOf(0), cache.getItem(shortLived, "short"));
+    assertEquals(Long.valueOf(3), cache.getItem(unlimited, "unlimited"));
+    new SQLRunner(_ds, INSERT_USER).executeUpdate(new Object[] { 4, "bob", "bob" });
+    clock.addAndGet(TimeUnit.DAYS.toNanos(1));
+    assertEquals(Long.valueOf(1), cache.getItem(shortLived, "short"));
+    assertEquals(Long.valueOf(3), cache.getItem(unlimited, "unlimited"));
+  }
+}
@@ -0,0 +1,61 @@
+package org.gusdb.fgputil.db.leakmonitor;
+
+import static org.gusdb.fgputil.test.TestUtil.newStub;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.gusdb.fgputil.db.leakmonitor.UnclosedObjectMonitor.UnclosedObjectMonitorMap;
+import org.junit.Test;
+
+public class UnclosedObjectMonitorTest {
+
+  @Test
+  public void testSampledStackTraces() {
+    UnclosedObjectMonitor<ResultSet> monitor =
+        new UnclosedObjectMonitorMap("testDb", false, 2).get(CloseableObjectType.ResultSet);
+    List<ResultSet> resultSets = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      ResultSet rs = newStub(ResultSet.class);
+      resultSets.add(rs);
+      monitor.registerOpenedObject(rs);
+    }
+    assertEquals(4, monitor.getNumCurrentlyOpen());
+
+    String info = monitor.getUnclosedObjectInfo();
+    assertTrue(info.contains("Stack traces sampled for 1 in 2 ResultSets"));
+    assertTrue(info.contains("2 : " + UnclosedObjectInfo.NOT_SAMPLED));
+    assertTrue(info.contains("testSampledStackTraces"));
+
+    for (ResultSet rs : resultSets) {
+      monitor.unregisterClosedObject(rs);
+    }
+    assertEquals(4, monitor.getNumOpened());
+    assertEquals(4, monitor.getNumClosed());
+    assertEquals(0, monitor.getNumCurrentlyOpen());
+  }
+
+  @Test
+  public void testNoStackTraces() {
+    UnclosedObjectMonitor<ResultSet> monitor =
+        new UnclosedObjectMonitorMap("testDb", false, 0).get(CloseableObjectType.ResultSet);
+    monitor.registerOpenedObject(newStub(ResultSet.class));
+    monitor.registerOpenedObject(newStub(ResultSet.class));
+    String info = monitor.getUnclosedObjectInfo();
+    assertTrue(info.contains("2 : " + UnclosedObjectInfo.NOT_SAMPLED));
+    assertTrue(!info.contains("testNoStackTraces"));
+  }
+
+  @Test
+  public void testRecordAllStackTracesOverridesSampling() {
+    UnclosedObjectMonitor<ResultSet> monitor =
+        new UnclosedObjectMonitorMap("testDb", true, 0).get(CloseableObjectType.ResultSet);
+    monitor.registerOpenedObject(newStub(ResultSet.class));
+    String info = monitor.getUnclosedObjectInfo();
+    assertTrue(!info.contains(UnclosedObjectInfo.NOT_SAMPLED));
+    assertTrue(info.contains("testRecordAllStackTracesOverridesSampling"));
+  }
+}
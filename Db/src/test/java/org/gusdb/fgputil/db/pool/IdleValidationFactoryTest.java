@@ -0,0 +1,41 @@
+package org.gusdb.fgputil.db.pool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.pool2.BasePooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.junit.Test;
+
+public class IdleValidationFactoryTest {
+
+  // factory whose objects are always invalid, counting validations
+  private static class CountingFactory extends BasePooledObjectFactory<Object> {
+    final AtomicInteger numValidations = new AtomicInteger();
+    @Override public Object create() { return new Object(); }
+    @Override public PooledObject<Object> wrap(Object obj) { return new DefaultPooledObject<>(obj); }
+    @Override public boolean validateObject(PooledObject<Object> p) {
+      numValidations.incrementAndGet();
+      return false;
+    }
+  }
+
+  @Test
+  public void testIdleThreshold() throws Exception {
+    CountingFactory factory = new CountingFactory();
+    PooledObject<Object> obj = factory.makeObject();
+
+    // recently used objects are not validated
+    assertTrue(new IdleValidationFactory<>(factory, 60000).validateObject(obj));
+    assertEquals(0, factory.numValidations.get());
+
+    // objects idle past the threshold are
+    Thread.sleep(50);
+    assertFalse(new IdleValidationFactory<>(factory, 20).validateObject(obj));
+    assertEquals(1, factory.numValidations.get());
+  }
+}
@@ -1,6 +1,8 @@
 package org.gusdb.fgputil.db.runner;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
 
 import java.sql.Types;
 import java.util.Collection;
@@ -8,6 +10,7 @@ import java.util.Collection;
 import javax.sql.DataSource;
 
 import org.gusdb.fgputil.db.SqlScriptRunner;
+import org.hsqldb.jdbc.JDBCResultSet;
 import org.gusdb.fgputil.test.TestUtil;
 import org.junit.After;
 import org.junit.Before;
@@ -69,6 +72,19 @@ public class SQLRunnerQueryTest {
     assertEquals(_handler.getResults().get(0).values().iterator().next(), 3L);
   }
 
+  @Test
+  public void testHandlerCanUnwrapResultSet() {
+    SQLRunner db = new SQLRunner(_ds, COUNT_ROWS);
+    db.executeQuery(rs -> {
+      assertTrue(rs.isWrapperFor(JDBCResultSet.class));
+      JDBCResultSet driverResults = rs.unwrap(JDBCResultSet.class);
+      assertNotSame(rs, driverResults);
+      assertTrue(driverResults.next());
+      assertEquals(3L, driverResults.getLong(1));
+      return null;
+    });
+  }
+
   @Test
   public void testBatchUpdate() {
     SQLRunner db = new SQLRunner(_ds, INSERT_USER);
@@ -0,0 +1,60 @@
+package org.gusdb.fgputil.db.slowquery;
+
+import static org.gusdb.fgputil.test.TestUtil.newStub;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.ResultSet;
+import java.util.List;
+
+import org.gusdb.fgputil.db.slowquery.QueryLogger.QueryLogInfo;
+import org.junit.Test;
+
+public class OpenResultSetRegistryTest {
+
+  private static final long THRESHOLD = 1000;
+  private static final long BUCKET = 100;
+
+  private static QueryLogInfo newInfo(String name, long startTime) {
+    return new QueryLogInfo("select 1", name, startTime, startTime);
+  }
+
+  @Test
+  public void testRemove() {
+    OpenResultSetRegistry registry = new OpenResultSetRegistry(THRESHOLD, BUCKET);
+    ResultSet rs = newStub(ResultSet.class);
+    QueryLogInfo info = newInfo("q", 5000);
+    registry.register(rs, info);
+    assertEquals(1, registry.size());
+    assertSame(info, registry.remove(rs));
+    assertNull(registry.remove(rs));
+    assertEquals(0, registry.size());
+    assertTrue(registry.sweep(10000).isEmpty());
+  }
+
+  @Test
+  public void testSweep() {
+    OpenResultSetRegistry registry = new OpenResultSetRegistry(THRESHOLD, BUCKET);
+    ResultSet old = newStub(ResultSet.class), closed = newStub(ResultSet.class), recent = newStub(ResultSet.class);
+    registry.register(old, newInfo("old", 5000));
+    registry.register(closed, newInfo("closed", 5010));
+    registry.register(recent, newInfo("recent", 5500));
+    registry.remove(closed);
+
+    // old bucket [5000,5100) not wholly past threshold until 6100
+    assertTrue(registry.sweep(6050).isEmpty());
+
+    List<QueryLogInfo> leaks = registry.sweep(6100);
+    assertEquals(1, leaks.size());
+    assertEquals("old", leaks.get(0).name);
+    assertNull(registry.remove(old));
+    assertEquals(1, registry.size());
+
+    // swept buckets are not visited again
+    assertTrue(registry.sweep(6100).isEmpty());
+    assertEquals("recent", registry.sweep(7000).get(0).name);
+    assertEquals(0, registry.size());
+  }
+}
@@ -0,0 +1,112 @@
+package org.gusdb.fgputil.db.slowquery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.gusdb.fgputil.db.slowquery.QueryMetrics.Phase;
+import org.junit.Test;
+
+public class QueryMetricsTest {
+
+  // nanos between start and prepare, bind, execute, results handled and complete
+  private static long[] times(long prepare, long bind, long execute, long handle) {
+    long[] times = new long[5];
+    times[0] = prepare;
+    times[1] = times[0] + bind;
+    times[2] = times[1] + execute;
+    times[3] = times[2] + handle;
+    times[4] = times[3];
+    return times;
+  }
+
+  @Test
+  public void testPhasesAndRows() {
+    QueryMetrics metrics = new QueryMetrics(1000, 4, () -> 0);
+    metrics.record("q", "select * from q", times(1, 2, 100, 10), 5);
+    metrics.record("q", "select * from q", times(1, 2, 100, 10), 15);
+    metrics.record("q", "select * from q", times(1, 2, 100, 10), -1);
+
+    QueryStats stats = metrics.getTopQueries(10).get(0);
+    assertEquals("q", stats.getSqlName());
+    assertEquals(3, stats.getExecutionCount());
+    assertEquals(1, stats.getPhase(Phase.PREPARE).getMax());
+    assertEquals(2, stats.getPhase(Phase.BIND).getMax());
+    assertEquals(100, stats.getPhase(Phase.EXECUTE).getMax());
+    assertEquals(10, stats.getPhase(Phase.HANDLE_RESULTS).getMax());
+    assertEquals(339, stats.getPhase(Phase.TOTAL).getTotal());
+    assertEquals(20, stats.getRowCount());
+    assertEquals(10, stats.getMeanRows(), 0.001);
+    assertEquals(15, stats.getMaxRows());
+    assertTrue(stats.toJson().getJSONObject("execute").has("p95Millis"));
+  }
+
+  @Test
+  public void testTopQueries() {
+    QueryMetrics metrics = new QueryMetrics(1000, 4, () -> 0);
+    metrics.record("fast", "select * from fast", times(0, 0, 10, 0), 1);
+    metrics.record("slow", "select * from slow", times(0, 0, 1000, 0), 1);
+    metrics.record("frequent", "select * from frequent", times(0, 0, 400, 0), 1);
+    metrics.record("frequent", "select * from frequent", times(0, 0, 400, 0), 1);
+    metrics.record("frequent", "select * from frequent", times(0, 0, 400, 0), 1);
+    List<QueryStats> top = metrics.getTopQueries(2);
+    assertEquals(2, top.size());
+    assertEquals("slow", top.get(1).getSqlName());
+    assertEquals("frequent", top.get(0).getSqlName());
+  }
+
+  @Test
+  public void testFingerprintAggregation() {
+    QueryMetrics metrics = new QueryMetrics(1000, 4, () -> 0);
+    metrics.record("first", "select * from t where id in (1, 2)", times(0, 0, 10, 0), 1);
+    metrics.record("second", "SELECT *  FROM t WHERE id IN (3, 4, 5)", times(0, 0, 10, 0), 1);
+    List<QueryStats> top = metrics.getTopQueries(10);
+    assertEquals(1, top.size());
+    assertEquals("first", top.get(0).getSqlName());
+    assertEquals("select * from t where id in (?)", top.get(0).getFingerprint());
+    assertEquals(2, top.get(0).getExecutionCount());
+  }
+
+  @Test
+  public void testRollingWindow() {
+    AtomicLong now = new AtomicLong(0);
+    QueryMetrics metrics = new QueryMetrics(1000, 3, now::get);
+    metrics.record("q", "select * from q", times(0, 0, 10, 0), 1);
+    now.set(1500);
+    metrics.record("q", "select * from q", times(0, 0, 10, 0), 1);
+    assertEquals(2, metrics.getTopQueries(1).get(0).getExecutionCount());
+
+    // first interval leaves the window
+    now.set(3000);
+    assertEquals(1, metrics.getTopQueries(1).get(0).getExecutionCount());
+
+    // its slot is reused for the new interval
+    metrics.record("q", "select * from q", times(0, 0, 10, 0), 1);
+    assertEquals(2, metrics.getTopQueries(1).get(0).getExecutionCount());
+
+    now.set(10000);
+    assertTrue(metrics.getTopQueries(1).isEmpty());
+  }
+
+  @Test
+  public void testIdleQueriesReleased() {
+    AtomicLong now = new AtomicLong(0);
+    QueryMetrics metrics = new QueryMetrics(1000, 2, now::get);
+    for (int i = 0; i < QueryMetrics.MAX_QUERIES; i++) {
+      metrics.record("q" + i, "select * from t" + i, times(0, 0, 10, 0), 1);
+    }
+    metrics.record("late", "select * from late", times(0, 0, 10, 0), 1);
+    assertEquals(QueryMetrics.OTHER_QUERIES, metrics.getTopQueries(1000).stream()
+        .filter(query -> query.getFingerprint().equals(QueryMetrics.OTHER_QUERIES))
+        .findFirst().get().getSqlName());
+
+    // once earlier queries leave the window, new fingerprints are tracked individually
+    now.set(5000);
+    metrics.record("later", "select * from later", times(0, 0, 10, 0), 1);
+    List<QueryStats> top = metrics.getTopQueries(1000);
+    assertEquals(1, top.size());
+    assertEquals("later", top.get(0).getSqlName());
+  }
+}
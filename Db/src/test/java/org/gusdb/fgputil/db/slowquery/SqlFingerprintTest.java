@@ -0,0 +1,53 @@
+package org.gusdb.fgputil.db.slowquery;
+
+import static org.gusdb.fgputil.db.slowquery.SqlFingerprint.normalize;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+
+public class SqlFingerprintTest {
+
+  @Test
+  public void testLiterals() {
+    assertEquals("select * from users where name = ? and age > ? and score < ?",
+        normalize("select * from users where name = 'O''Brien' and age > 30 and score < 1.5e-3"));
+  }
+
+  @Test
+  public void testIdentifiersKept() {
+    assertEquals("select t1.col2, \"MixedCase\" from tab3 t1 where x = ?",
+        normalize("SELECT t1.col2, \"MixedCase\" FROM tab3 t1 WHERE x = 7"));
+  }
+
+  @Test
+  public void testWhitespaceAndComments() {
+    assertEquals("select a from b where c = ?",
+        normalize("  select /*+ index(b) */ a\n\tfrom   b -- trailing\n where c = ?  "));
+  }
+
+  @Test
+  public void testInLists() {
+    assertEquals("select * from u where id in (?) and s not in (?)",
+        normalize("select * from u where id IN (1, 2,3 , 4) and s not in ('a','b')"));
+    assertEquals(normalize("select * from u where id in (?, ?, ?)"),
+        normalize("select * from u where id in (?)"));
+  }
+
+  @Test
+  public void testNonValueLists() {
+    assertEquals("select * from u where id in (select id from v where x = ?)",
+        normalize("select * from u where id in (select id from v where x = 1)"));
+    assertEquals("select * from u where id in (?, x)",
+        normalize("select * from u where id in (1, x)"));
+    assertEquals("insert into t (a, b) values (?, ?)",
+        normalize("insert into t (a, b) values (1, 'two')"));
+    assertEquals("select * from a join (select ?, ? from b) c",
+        normalize("select * from a join (select 1, 2 from b) c"));
+  }
+
+  @Test
+  public void testDistinctShapes() {
+    assertNotEquals(normalize("select a from t where x = 1"), normalize("select b from t where x = 1"));
+  }
+}
@@ -0,0 +1,144 @@
+package org.gusdb.fgputil.db.wrapper;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.gusdb.fgputil.db.leakmonitor.UnclosedObjectMonitor.UnclosedObjectMonitorMap;
+import org.gusdb.fgputil.db.platform.SupportedPlatform;
+import org.gusdb.fgputil.db.pool.SimpleDbConfig;
+import org.gusdb.fgputil.test.TestUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConnectionWrapperTest {
+
+  private static final String SELECT = "select count(*) from information_schema.tables";
+
+  // connection methods which change or commit state
+  private static final List<String> STATE_METHODS = Arrays.asList("commit", "setAutoCommit", "setReadOnly");
+
+  private DataSource _ds;
+  private List<String> _calls;
+
+  @Before
+  public void setUpTests() {
+    _ds = TestUtil.getTestDataSource("connectionWrapperDb");
+    _calls = new ArrayList<>();
+  }
+
+  @Test
+  public void testUnusedConnection() throws Exception {
+    ConnectionWrapper conn = getConnection(SupportedPlatform.POSTGRESQL);
+    assertEquals(List.of(), closeAndGetCalls(conn));
+  }
+
+  @Test
+  public void testAutoCommitQuery() throws Exception {
+    ConnectionWrapper conn = getConnection(SupportedPlatform.POSTGRESQL);
+    runQuery(conn, SELECT);
+    assertEquals(List.of(), closeAndGetCalls(conn));
+  }
+
+  @Test
+  public void testTransaction() throws Exception {
+    ConnectionWrapper conn = getConnection(SupportedPlatform.POSTGRESQL);
+    conn.setAutoCommit(false);
+    runQuery(conn, SELECT);
+    assertEquals(List.of("commit", "setAutoCommit(true)"), closeAndGetCalls(conn));
+  }
+
+  @Test
+  public void testReadOnly() throws Exception {
+    ConnectionWrapper conn = getConnection(SupportedPlatform.POSTGRESQL);
+    conn.setReadOnly(true);
+    assertEquals(List.of("setReadOnly(false)"), closeAndGetCalls(conn));
+  }
+
+  @Test
+  public void testDbLinkQuery() throws Exception {
+    // platform without DB links ignores '@'
+    ConnectionWrapper conn = getConnection(SupportedPlatform.POSTGRESQL);
+    runQuery(conn, SELECT + " where table_name <> 'a@b'");
+    assertEquals(List.of(), closeAndGetCalls(conn));
+
+    // platform with DB links must end any distributed transaction, even if
+    //   the SQL does not reference a link directly (e.g. through a synonym)
+    conn = getConnection(SupportedPlatform.ORACLE);
+    runQuery(conn, SELECT);
+    assertEquals(List.of("setAutoCommit(false)", "commit", "setAutoCommit(true)"), closeAndGetCalls(conn));
+  }
+
+  @Test
+  public void testDbLinkDetectionBySql() throws Exception {
+    SimpleDbConfig config = new SimpleDbConfig() {
+      @Override public SupportedPlatform getPlatformEnum() { return SupportedPlatform.ORACLE; }
+      @Override public int getConnectionPoolSize()         { return 1; }
+      @Override public String getLogin()                   { return "SA"; }
+      @Override public String getPassword()                { return ""; }
+      @Override public String getConnectionUrl()           { return ""; }
+      @Override public int getDefaultFetchSize()           { return 0; }
+      @Override public boolean isDbLinkDetectionBySql()    { return true; }
+    };
+    ConnectionWrapper conn = getConnection(config);
+    runQuery(conn, SELECT);
+    assertEquals(List.of(), closeAndGetCalls(conn));
+
+    conn = getConnection(config);
+    runQuery(conn, SELECT + " where table_name <> 'a@b'");
+    assertEquals(List.of("setAutoCommit(false)", "commit", "setAutoCommit(true)"), closeAndGetCalls(conn));
+  }
+
+  @Test
+  public void testUnwrappedConnection() throws Exception {
+    ConnectionWrapper conn = getConnection(SupportedPlatform.POSTGRESQL);
+    conn.unwrap(Connection.class);
+    assertEquals(List.of("setAutoCommit(false)", "commit", "setAutoCommit(true)",
+        "setAutoCommit(true)", "setReadOnly(false)"), closeAndGetCalls(conn));
+  }
+
+  private ConnectionWrapper getConnection(SupportedPlatform platform) throws Exception {
+    return getConnection(SimpleDbConfig.create(platform, "", "SA", ""));
+  }
+
+  private ConnectionWrapper getConnection(SimpleDbConfig config) throws Exception {
+    Connection underlying = _ds.getConnection();
+    // record calls which change connection state
+    Connection recorder = (Connection)Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+          if (STATE_METHODS.contains(method.getName())) {
+            _calls.add(method.getName() + (args == null ? "" : "(" + args[0] + ")"));
+          }
+          try {
+            return method.invoke(underlying, args);
+          }
+          catch (InvocationTargetException e) {
+            throw e.getCause();
+          }
+        });
+    return new ConnectionWrapper(recorder, config,
+        new UnclosedObjectMonitorMap("connectionWrapperDb", false));
+  }
+
+  private List<String> closeAndGetCalls(ConnectionWrapper conn) throws Exception {
+    _calls.clear();
+    conn.close();
+    return _calls;
+  }
+
+  private static void runQuery(Connection conn, String sql) throws Exception {
+    try (PreparedStatement stmt = conn.prepareStatement(sql);
+         ResultSet rs = stmt.executeQuery()) {
+      rs.next();
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package org.gusdb.fgputil.db.wrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.apache.commons.dbcp2.DelegatingStatement;
+import org.gusdb.fgputil.db.leakmonitor.CloseableObjectType;
+import org.gusdb.fgputil.db.leakmonitor.UnclosedObjectMonitor;
+import org.gusdb.fgputil.db.platform.SupportedPlatform;
+import org.gusdb.fgputil.db.pool.SimpleDbConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StatementCacheTest {
+
+  private static final String URL = "jdbc:hsqldb:mem:statementCacheDb";
+  private static final String SQL = "select count(*) from information_schema.tables where table_name = ?";
+
+  private BasicDataSource _pool;
+  private DataSourceWrapper _ds;
+
+  @Before
+  public void setUpTests() {
+    // configure the pool as DatabaseInstance does for a config with a statement cache
+    _pool = new BasicDataSource();
+    _pool.setUrl(URL);
+    _pool.setUsername("SA");
+    _pool.setPassword("");
+    _pool.setMaxTotal(1);
+    _pool.setPoolPreparedStatements(true);
+    _pool.setMaxOpenPreparedStatements(2);
+    _ds = new DataSourceWrapper("statementCacheDb", _pool,
+        SimpleDbConfig.create(SupportedPlatform.POSTGRESQL, URL, "SA", ""));
+  }
+
+  @After
+  public void tearDownTests() throws Exception {
+    _pool.close();
+  }
+
+  @Test
+  public void testStatementReuse() throws Exception {
+    Statement first, second, scrollable;
+    UnclosedObjectMonitor<PreparedStatement> monitor;
+    try (Connection conn = _ds.getConnection()) {
+      try (PreparedStatementWrapper stmt = (PreparedStatementWrapper)conn.prepareStatement(SQL)) {
+        first = getDriverStatement(stmt);
+        execute(stmt);
+      }
+      try (PreparedStatementWrapper stmt = (PreparedStatementWrapper)conn.prepareStatement(
+          SQL, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY)) {
+        scrollable = getDriverStatement(stmt);
+        execute(stmt);
+      }
+    }
+    // statements are cached with the pooled connection, so survive its return to the pool
+    try (Connection conn = _ds.getConnection();
+         PreparedStatementWrapper stmt = (PreparedStatementWrapper)conn.prepareStatement(SQL)) {
+      monitor = ((ConnectionWrapper)conn).getUnclosedObjectMonitorMap().get(CloseableObjectType.PreparedStatement);
+      second = getDriverStatement(stmt);
+      execute(stmt);
+    }
+    assertSame(first, second);
+    assertNotSame(first, scrollable);
+    assertEquals(3, monitor.getNumOpened());
+    assertEquals(0, monitor.getNumCurrentlyOpen());
+  }
+
+  @Test
+  public void testStaleWrapperClose() throws Exception {
+    try (Connection conn = _ds.getConnection()) {
+      PreparedStatement stale = conn.prepareStatement(SQL);
+      stale.close();
+      try (PreparedStatement current = conn.prepareStatement(SQL)) {
+        // closing the stale wrapper again must not affect the reused statement
+        stale.close();
+        assertTrue(stale.isClosed());
+        assertFalse(current.isClosed());
+        execute(current);
+      }
+    }
+  }
+
+  // the pool wraps cached statements anew each time they are handed out
+  private static Statement getDriverStatement(PreparedStatementWrapper stmt) {
+    return ((DelegatingStatement)stmt._underlyingPreparedStatement).getInnermostDelegate();
+  }
+
+  private static void execute(PreparedStatement stmt) throws Exception {
+    stmt.setString(1, "TABLES");
+    try (ResultSet rs = stmt.executeQuery()) {
+      assertTrue(rs.next());
+    }
+  }
+}
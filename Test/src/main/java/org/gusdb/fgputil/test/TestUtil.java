@@ -4,6 +4,7 @@ import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.lang.reflect.Proxy;
 import java.net.URL;
 
 import javax.sql.DataSource;
@@ -72,4 +73,20 @@ public final class TestUtil {
     return ds;
   }
 
+  /**
+   * Creates a stub implementing the passed interface, for tests which only need
+   * distinct instances (e.g. as map keys).  Instances are equal only to
+   * themselves; all other methods return null, so must not be called if they
+   * return primitives.
+   *
+   * @param iface interface to implement
+   * @return new stub
+   */
+  public static <T> T newStub(Class<T> iface) {
+    return iface.cast(Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[]{ iface },
+        (proxy, method, args) ->
+          method.getName().equals("hashCode") ? System.identityHashCode(proxy) :
+          method.getName().equals("equals") ? proxy == args[0] : null));
+  }
+
 }